@@ -27,8 +27,6 @@ NEW_SESSION_WAIT_TIMEOUT=${NEW_SESSION_WAIT_TIMEOUT:-600000}
 WAIT_FOR_AVAILABLE_NODES=${WAIT_FOR_AVAILABLE_NODES:-true}
 # Time in ms to wait for a container to start
 TIME_TO_WAIT_TO_START=${TIME_TO_WAIT_TO_START:-180000}
-# Maximum amount of times a test request is processed before starting a new node
-MAX_TIMES_TO_PROCESS_REQUEST=${MAX_TIMES_TO_PROCESS_REQUEST:-30}
 # How often should Zalenium check the status of the current containers/pods. See checkContainers() in AutoStartProxySet
 CHECK_CONTAINERS_INTERVAL=${CHECK_CONTAINERS_INTERVAL:-5000}
 # Timeout for a proxy during cleanup tasks. See isCleaningUp() in DockerSeleniumRemoteProxy
@@ -0,0 +1,58 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+import de.zalando.ep.zalenium.proxy.DockeredSeleniumStarter;
+
+/**
+ * Capabilities as sent by docker-selenium nodes when registering, and by a typical CI test when requesting a session.
+ */
+final class BenchmarkCapabilities {
+
+    private BenchmarkCapabilities() {
+    }
+
+    static Map<String, Object> node(String browserName, String version) {
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put(CapabilityType.BROWSER_NAME, browserName);
+        capabilities.put(CapabilityType.PLATFORM_NAME, Platform.LINUX);
+        capabilities.put(CapabilityType.VERSION, version);
+        capabilities.put(RegistrationRequest.MAX_INSTANCES, 1);
+        capabilities.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, getScreenResolution());
+        capabilities.put(ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX,
+                DockeredSeleniumStarter.getConfiguredTimeZone().getID());
+        return capabilities;
+    }
+
+    static Map<String, Object> chromeNode() {
+        return node(BrowserType.CHROME, "62.0.3202.94");
+    }
+
+    static Map<String, Object> firefoxNode() {
+        return node(BrowserType.FIREFOX, "57.0");
+    }
+
+    static Map<String, Object> request(String browserName) {
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put(CapabilityType.BROWSER_NAME, browserName);
+        capabilities.put(CapabilityType.PLATFORM_NAME, Platform.ANY.name());
+        capabilities.put(ZaleniumCapabilityType.TEST_NAME_NO_PREFIX, "checkoutWithSavedAddress");
+        capabilities.put(ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX, "checkout-pipeline-1234");
+        capabilities.put(ZaleniumCapabilityType.RECORD_VIDEO_NO_PREFIX, true);
+        capabilities.put(ZaleniumCapabilityType.IDLE_TIMEOUT_NO_PREFIX, 90);
+        capabilities.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, getScreenResolution());
+        return capabilities;
+    }
+
+    private static String getScreenResolution() {
+        return String.format("%sx%s", DockeredSeleniumStarter.getConfiguredScreenSize().getWidth(),
+                DockeredSeleniumStarter.getConfiguredScreenSize().getHeight());
+    }
+}
@@ -0,0 +1,80 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.remote.BrowserType;
+
+import de.zalando.ep.zalenium.matcher.DockerSeleniumCapabilityMatcher;
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityMatcher;
+
+/**
+ * Cost of matching a single request against a single node. The matchers prefix the Zalenium capabilities of the maps
+ * they get, so after the first invocation the maps stay as they would be while a request waits in the queue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CapabilityMatcherBenchmark {
+
+    private final DockerSeleniumCapabilityMatcher dockerSeleniumCapabilityMatcher =
+            new DockerSeleniumCapabilityMatcher();
+    private final ZaleniumCapabilityMatcher zaleniumCapabilityMatcher = new ZaleniumCapabilityMatcher();
+    private Map<String, Object> chromeNode;
+    private Map<String, Object> firefoxNode;
+    private Map<String, Object> chromeRequest;
+    private Map<String, Object> safariRequest;
+
+    @Setup
+    public void setUp() {
+        chromeNode = BenchmarkCapabilities.chromeNode();
+        firefoxNode = BenchmarkCapabilities.firefoxNode();
+        chromeRequest = BenchmarkCapabilities.request(BrowserType.CHROME);
+        safariRequest = BenchmarkCapabilities.request(BrowserType.SAFARI);
+    }
+
+    @Benchmark
+    public boolean dockerSeleniumMatch() {
+        return dockerSeleniumCapabilityMatcher.matches(chromeNode, chromeRequest);
+    }
+
+    @Benchmark
+    public boolean dockerSeleniumMismatch() {
+        return dockerSeleniumCapabilityMatcher.matches(firefoxNode, chromeRequest);
+    }
+
+    @Benchmark
+    public boolean zaleniumMatch() {
+        // A browser docker-selenium does not provide goes to the cloud testing provider
+        return zaleniumCapabilityMatcher.matches(chromeNode, safariRequest);
+    }
+
+    @Benchmark
+    public boolean zaleniumMismatch() {
+        return zaleniumCapabilityMatcher.matches(chromeNode, chromeRequest);
+    }
+
+    @Benchmark
+    public boolean routeQueuedRequest() {
+        return ZaleniumCapabilityMatcher.isSupportedByDockerSelenium(safariRequest);
+    }
+
+    @Benchmark
+    public boolean routeNewRequest() {
+        // A map not classified before, as when the request is admitted
+        return ZaleniumCapabilityMatcher.isSupportedByDockerSelenium(BenchmarkCapabilities.request(BrowserType.SAFARI));
+    }
+}
@@ -0,0 +1,111 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.selenium.MutableCapabilities;
+import org.openqa.selenium.remote.BrowserType;
+
+import de.zalando.ep.zalenium.container.ContainerCreationStatus;
+import de.zalando.ep.zalenium.container.ContainerFactory;
+import de.zalando.ep.zalenium.container.DockerContainerClient;
+import de.zalando.ep.zalenium.proxy.AutoStartProxySet;
+import de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy;
+import de.zalando.ep.zalenium.proxy.DockeredSeleniumStarter;
+import de.zalando.ep.zalenium.util.DockerContainerMock;
+import de.zalando.ep.zalenium.util.SimpleRegistry;
+import de.zalando.ep.zalenium.util.TestUtils;
+
+/**
+ * Cost of looking for a free slot in a proxy set of docker-selenium nodes, half Chrome and half Firefox. All the nodes
+ * are running a test, which is when the matcher visits the most proxies: a saturated grid with a long queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProxySetBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int nodes;
+
+    private Supplier<DockerContainerClient> originalDockerContainerClient;
+    private AutoStartProxySet proxySet;
+    private Map<String, Object> chromeRequest;
+    private Map<String, Object> safariRequest;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        originalDockerContainerClient = ContainerFactory.getDockerContainerClient();
+        DockerContainerClient containerClient = DockerContainerMock.getRegisterOnlyDockerContainerClient();
+        ContainerFactory.setDockerContainerClient(() -> containerClient);
+
+        // All the nodes register with the same container name, only one tracked container is needed.
+        String containerName = DockeredSeleniumStarter.getContainerName();
+        DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
+        Mockito.when(starter.startDockerSeleniumContainer(ArgumentMatchers.any()))
+                .thenReturn(new ContainerCreationStatus(true, containerName, containerName, "40000"));
+        Mockito.when(starter.containerHasStarted(ArgumentMatchers.any())).thenReturn(true);
+        proxySet = new AutoStartProxySet(false, 1, nodes + 1, 180000, false, starter,
+                Clock.systemDefaultZone(), (int) TimeUnit.HOURS.toMillis(1));
+        while (proxySet.getStartedContainers().isEmpty()) {
+            Thread.sleep(10);
+        }
+
+        SimpleRegistry registry = new SimpleRegistry();
+        for (int i = 0; i < nodes; i++) {
+            boolean chrome = i % 2 == 0;
+            RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(40000 + i,
+                    DockerSeleniumRemoteProxy.class.getCanonicalName());
+            request.getConfiguration().capabilities.clear();
+            request.getConfiguration().capabilities.add(new MutableCapabilities(chrome ?
+                    BenchmarkCapabilities.chromeNode() : BenchmarkCapabilities.firefoxNode()));
+            DockerSeleniumRemoteProxy proxy = DockerSeleniumRemoteProxy.getNewInstance(request, registry);
+            TestSession session = proxy.getNewSession(
+                    BenchmarkCapabilities.request(chrome ? BrowserType.CHROME : BrowserType.FIREFOX));
+            if (session == null) {
+                throw new IllegalStateException("Could not start a session in " + proxy);
+            }
+            proxySet.add(proxy);
+        }
+
+        chromeRequest = BenchmarkCapabilities.request(BrowserType.CHROME);
+        safariRequest = BenchmarkCapabilities.request(BrowserType.SAFARI);
+    }
+
+    @TearDown
+    public void tearDown() {
+        proxySet.teardown();
+        ContainerFactory.setDockerContainerClient(originalDockerContainerClient);
+    }
+
+    @Benchmark
+    public TestSession allNodesBusy() {
+        return proxySet.assignSession(chromeRequest);
+    }
+
+    @Benchmark
+    public TestSession noNodeForTheBrowser() {
+        return proxySet.assignSession(safariRequest);
+    }
+}
@@ -0,0 +1,83 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.remote.BrowserType;
+
+import de.zalando.ep.zalenium.proxy.SessionRequestFilter;
+
+/**
+ * Cost of the bookkeeping done for every request waiting for a container, with the given amount of requests waiting.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionRequestFilterBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int waitingRequests;
+
+    private SessionRequestFilter filter;
+    private List<Map<String, Object>> requests;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        filter = new SessionRequestFilter();
+        requests = new ArrayList<>();
+        for (int i = 0; i < waitingRequests; i++) {
+            Map<String, Object> request = BenchmarkCapabilities.request(i % 2 == 0 ? BrowserType.CHROME :
+                    BrowserType.FIREFOX);
+            filter.requestHasBeenProcessed(request);
+            requests.add(request);
+        }
+    }
+
+    /*
+        A container is started for a request that is already waiting.
+     */
+    @Benchmark
+    public void requestHasBeenProcessed() {
+        filter.requestHasBeenProcessed(nextRequest());
+    }
+
+    /*
+        A waiting request gets its session, it is tracked again afterwards to keep the amount of waiting requests.
+     */
+    @Benchmark
+    public void testSessionHasStarted() {
+        Map<String, Object> request = nextRequest();
+        filter.testSessionHasStarted(request);
+        filter.requestHasBeenProcessed(request);
+    }
+
+    /*
+        Every request was processed lately, the cleanup stops at the first one.
+     */
+    @Benchmark
+    public void cleanProcessedCapabilities() {
+        filter.cleanProcessedCapabilities();
+    }
+
+    private Map<String, Object> nextRequest() {
+        next = (next + 1) % requests.size();
+        return requests.get(next);
+    }
+}
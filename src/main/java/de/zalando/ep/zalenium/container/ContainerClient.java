@@ -28,4 +28,21 @@ public interface ContainerClient {
     boolean isReady(ContainerCreationStatus container);
     
     boolean isTerminated(ContainerCreationStatus container);
+
+    /**
+     * Starts notifying the listener about terminated containers as they happen, for clients that can. The others
+     * return false, and the containers have to be checked with {@link #isTerminated(ContainerCreationStatus)}.
+     * A client notifies a single listener, watching again replaces it.
+     *
+     * @return true when the listener will be notified.
+     */
+    default boolean watchContainers(ContainerTerminationListener listener) {
+        return false;
+    }
+
+    /**
+     * Stops notifying the listener given to {@link #watchContainers(ContainerTerminationListener)}.
+     */
+    default void stopWatching() {
+    }
 }
@@ -0,0 +1,15 @@
+package de.zalando.ep.zalenium.container;
+
+/**
+ * Notified by a {@link ContainerClient} when a container terminates, see
+ * {@link ContainerClient#watchContainers(ContainerTerminationListener)}.
+ */
+@FunctionalInterface
+public interface ContainerTerminationListener {
+
+    /**
+     * @param containerId id of the container that terminated. It can be any container, not only the ones started
+     *                    by Zalenium, and the same container can be reported more than once.
+     */
+    void containerTerminated(String containerId);
+}
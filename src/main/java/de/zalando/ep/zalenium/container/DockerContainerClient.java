@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -17,6 +18,8 @@ import com.google.common.base.Strings;
 import com.spotify.docker.client.AnsiProgressHandler;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.EventStream;
 import com.spotify.docker.client.LogStream;
 import com.spotify.docker.client.messages.PortBinding;
 import de.zalando.ep.zalenium.streams.InputStreamGroupIterator;
@@ -38,6 +41,7 @@ import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
 import com.spotify.docker.client.messages.ContainerInfo;
 import com.spotify.docker.client.messages.ContainerMount;
+import com.spotify.docker.client.messages.Event;
 import com.spotify.docker.client.messages.ExecCreation;
 import com.spotify.docker.client.messages.HostConfig;
 import com.spotify.docker.client.messages.Image;
@@ -71,6 +75,7 @@ public class DockerContainerClient implements ContainerClient {
      * Number of times to attempt to create a container when the generated name is not unique.
      */
     private static final int NAME_COLLISION_RETRIES = 10;
+    private static final int EVENTS_RECONNECT_DELAY_SECONDS = 5;
     private static Environment env = defaultEnvironment;
     private static String seleniumContainerCpuLimit;
     private static String seleniumContainerMemoryLimit;
@@ -95,6 +100,9 @@ public class DockerContainerClient implements ContainerClient {
     private AtomicBoolean pullSeleniumImageChecked = new AtomicBoolean(false);
     private AtomicBoolean isZaleniumPrivilegedChecked = new AtomicBoolean(false);
     private AtomicBoolean storageOptsLoaded = new AtomicBoolean(false);
+    private volatile Thread eventsWatcher;
+    private volatile ContainerTerminationListener terminationListener;
+    private volatile EventStream currentEvents;
     private AtomicBoolean mntFoldersAndHttpEnvVarsChecked = new AtomicBoolean(false);
     private AtomicBoolean seleniumContainerLabelsChecked = new AtomicBoolean(false);
 
@@ -672,5 +680,79 @@ public class DockerContainerClient implements ContainerClient {
             return false;
         }
     }
-}
 
+    /*
+        The stream only sends the containers that died or were removed. Docker sends a start event as soon as the
+        container process runs, long before the node inside it is ready, so the start of a node is still known by its
+        registration.
+     */
+    @Override
+    public synchronized boolean watchContainers(ContainerTerminationListener listener) {
+        // A single watcher per client, watching again only replaces the listener
+        terminationListener = listener;
+        if (eventsWatcher == null) {
+            eventsWatcher = new Thread(this::watchContainerEvents, "DockerContainerClient events");
+            eventsWatcher.setDaemon(true);
+            eventsWatcher.start();
+        }
+        return true;
+    }
+
+    /*
+        Reading the events blocks without reacting to the interruption, the stream is closed to wake the watcher up.
+     */
+    @Override
+    public synchronized void stopWatching() {
+        terminationListener = null;
+        if (eventsWatcher == null) {
+            return;
+        }
+        eventsWatcher.interrupt();
+        eventsWatcher = null;
+        EventStream events = currentEvents;
+        if (events != null) {
+            events.close();
+        }
+    }
+
+    private void watchContainerEvents() {
+        long since = System.currentTimeMillis() / 1000;
+        while (isCurrentWatcher()) {
+            // Reconnecting from the time of the last event, the events of that second come again, which is harmless
+            try (EventStream events = dockerClient.events(EventsParam.type(Event.Type.CONTAINER),
+                    EventsParam.event("die"), EventsParam.event("destroy"), EventsParam.since(since))) {
+                currentEvents = events;
+                while (isCurrentWatcher() && events.hasNext()) {
+                    Event event = events.next();
+                    if (event.time() != null) {
+                        since = event.time().getTime() / 1000;
+                    }
+                    String containerId = event.actor() != null ? event.actor().id() : event.id();
+                    ContainerTerminationListener listener = terminationListener;
+                    // A watcher that was stopped while reading does not notify anymore
+                    if (containerId != null && listener != null && isCurrentWatcher()) {
+                        listener.containerTerminated(containerId);
+                    }
+                }
+                logger.debug("Docker events stream closed, reconnecting.");
+            } catch (DockerException | RuntimeException e) {
+                if (!isCurrentWatcher()) {
+                    break;
+                }
+                logger.warn("Failed reading the Docker events, reconnecting in {} seconds.",
+                        EVENTS_RECONNECT_DELAY_SECONDS, e);
+                try {
+                    TimeUnit.SECONDS.sleep(EVENTS_RECONNECT_DELAY_SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean isCurrentWatcher() {
+        return eventsWatcher == Thread.currentThread() && !Thread.currentThread().isInterrupted();
+    }
+}
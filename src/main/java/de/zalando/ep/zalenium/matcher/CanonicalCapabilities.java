@@ -0,0 +1,242 @@
+package de.zalando.ep.zalenium.matcher;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.Dimension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Immutable, parsed view of the Zalenium custom capabilities of a capability map. Prefixed and non prefixed names are
+ * treated the same, the non prefixed one wins when both are present.
+ *
+ * Requested capabilities are normalized once, when the registry admits the request, and the registry, the matcher,
+ * the starter and the proxy get the same instance afterwards, instead of prefixing and parsing the capability maps on
+ * every match. Node capabilities are normalized the first time they are looked up through {@link #ofNode(Map)}.
+ * Instances are kept by identity of the capability map for as long as the map is reachable, changes made to a map
+ * after its first lookup are not seen. Requests get a request id, which stays the same for the whole life of the
+ * request, unlike its identity hash code that can be reused by another map after a garbage collection.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CanonicalCapabilities {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CanonicalCapabilities.class.getName());
+    private static final List<String> SCREEN_RESOLUTION_NAMES = Arrays.asList(
+            ZaleniumCapabilityType.SCREEN_RESOLUTION, ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX,
+            ZaleniumCapabilityType.RESOLUTION, ZaleniumCapabilityType.RESOLUTION_NO_PREFIX,
+            ZaleniumCapabilityType.SCREEN_RESOLUTION_DASH, ZaleniumCapabilityType.SCREEN_RESOLUTION_DASH_NO_PREFIX);
+    // Used only to label or configure the test, they play no role when matching a request to a node.
+    private static final Set<String> METADATA_NAMES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            ZaleniumCapabilityType.TEST_NAME_NO_PREFIX,
+            ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX,
+            ZaleniumCapabilityType.TEST_FILE_NAME_TEMPLATE_NO_PREFIX,
+            ZaleniumCapabilityType.IDLE_TIMEOUT_NO_PREFIX,
+            ZaleniumCapabilityType.RECORD_VIDEO_NO_PREFIX,
+            ZaleniumCapabilityType.NEW_SESSION_WAIT_TIMEOUT_SECONDS_NO_PREFIX)));
+    private static final Set<String> AVAILABLE_TIME_ZONES =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList(TimeZone.getAvailableIDs())));
+    // Weak keys are compared by identity.
+    private static final ConcurrentMap<Map<String, Object>, CanonicalCapabilities> requests =
+            new MapMaker().weakKeys().makeMap();
+    private static final ConcurrentMap<Map<String, Object>, CanonicalCapabilities> nodes =
+            new MapMaker().weakKeys().makeMap();
+    private static final AtomicLong requestIds = new AtomicLong();
+
+    // Null for node capabilities
+    private final Long requestId;
+    private final String testName;
+    private final String buildName;
+    private final String testFileNameTemplate;
+    private final Long idleTimeout;
+    private final Long newSessionWaitTimeout;
+    private final Boolean recordVideo;
+    private final String screenResolution;
+    private final Dimension screenSize;
+    private final String timeZoneId;
+    private final TimeZone timeZone;
+    private final CapabilityFingerprint fingerprint;
+
+    private CanonicalCapabilities(Map<String, Object> capabilities, Long requestId) {
+        this.requestId = requestId;
+        testName = getString(capabilities, ZaleniumCapabilityType.TEST_NAME_NO_PREFIX);
+        buildName = getString(capabilities, ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX);
+        testFileNameTemplate = getString(capabilities, ZaleniumCapabilityType.TEST_FILE_NAME_TEMPLATE_NO_PREFIX);
+        idleTimeout = parseSeconds(capabilities, ZaleniumCapabilityType.IDLE_TIMEOUT_NO_PREFIX);
+        newSessionWaitTimeout = parseSeconds(capabilities, ZaleniumCapabilityType.NEW_SESSION_WAIT_TIMEOUT_SECONDS_NO_PREFIX);
+        String recordVideoValue = getString(capabilities, ZaleniumCapabilityType.RECORD_VIDEO_NO_PREFIX);
+        recordVideo = recordVideoValue == null ? null : Boolean.parseBoolean(recordVideoValue);
+        String resolution = null;
+        for (String screenResolutionName : SCREEN_RESOLUTION_NAMES) {
+            if (capabilities.get(screenResolutionName) != null) {
+                resolution = capabilities.get(screenResolutionName).toString();
+            }
+        }
+        screenResolution = resolution;
+        screenSize = parseScreenSize(resolution);
+        timeZoneId = getString(capabilities, ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX);
+        timeZone = timeZoneId != null && AVAILABLE_TIME_ZONES.contains(timeZoneId) ?
+                TimeZone.getTimeZone(timeZoneId) : null;
+        fingerprint = new CapabilityFingerprint(capabilities);
+    }
+
+    /**
+     * @return the instance created on the first lookup of the requested capabilities.
+     */
+    public static CanonicalCapabilities of(Map<String, Object> requestedCapabilities) {
+        return requests.computeIfAbsent(requestedCapabilities,
+                capabilities -> new CanonicalCapabilities(capabilities, requestIds.incrementAndGet()));
+    }
+
+    /**
+     * @return the instance created on the first lookup of the node capabilities, it has no request id.
+     */
+    public static CanonicalCapabilities ofNode(Map<String, Object> nodeCapabilities) {
+        return nodes.computeIfAbsent(nodeCapabilities, capabilities -> new CanonicalCapabilities(capabilities, null));
+    }
+
+    /**
+     * @return an id assigned on the first lookup of the requested capabilities.
+     * @throws IllegalStateException for node capabilities.
+     */
+    public long getRequestId() {
+        if (requestId == null) {
+            throw new IllegalStateException("Node capabilities have no request id");
+        }
+        return requestId;
+    }
+
+    public String getTestName() {
+        return testName;
+    }
+
+    public String getBuildName() {
+        return buildName;
+    }
+
+    public String getTestFileNameTemplate() {
+        return testFileNameTemplate;
+    }
+
+    /**
+     * @return the idle timeout in seconds, null when it was not requested or it is not a positive number.
+     */
+    public Long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @return the new session wait timeout in seconds, null when it was not requested or it is not a positive number.
+     */
+    public Long getNewSessionWaitTimeout() {
+        return newSessionWaitTimeout;
+    }
+
+    /**
+     * @return null when video recording was not requested explicitly.
+     */
+    public Boolean getRecordVideo() {
+        return recordVideo;
+    }
+
+    /**
+     * @return the screen resolution as passed, under any of its names.
+     */
+    public String getScreenResolution() {
+        return screenResolution;
+    }
+
+    /**
+     * @return null when no screen resolution was passed or it is not valid.
+     */
+    public Dimension getScreenSize() {
+        return screenSize;
+    }
+
+    public String getTimeZoneId() {
+        return timeZoneId;
+    }
+
+    /**
+     * @return null when no time zone was passed or it is not a known time zone.
+     */
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    /**
+     * @return the capabilities that can change a match, computed on the first lookup of the map.
+     */
+    public CapabilityFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return true for the capabilities used only to label or configure the test, prefixed or not.
+     */
+    public static boolean isMetadata(String name) {
+        String unprefixedName = name.startsWith(ZaleniumCapabilityType.CUSTOM_CAPABILITY_PREFIX) ?
+                name.substring(ZaleniumCapabilityType.CUSTOM_CAPABILITY_PREFIX.length()) : name;
+        return METADATA_NAMES.contains(unprefixedName);
+    }
+
+    @Override
+    public String toString() {
+        return "CanonicalCapabilities [requestId=" + requestId + ", testName=" + testName + ", buildName=" + buildName + ", idleTimeout="
+                + idleTimeout + ", newSessionWaitTimeout=" + newSessionWaitTimeout + ", recordVideo=" + recordVideo + ", screenResolution=" + screenResolution
+                + ", timeZone=" + timeZoneId + "]";
+    }
+
+    private static String getString(Map<String, Object> capabilities, String nameWithoutPrefix) {
+        Object value = capabilities.get(nameWithoutPrefix);
+        if (value == null) {
+            value = capabilities.get(ZaleniumCapabilityType.CUSTOM_CAPABILITY_PREFIX.concat(nameWithoutPrefix));
+        }
+        return value == null ? null : value.toString();
+    }
+
+    private static Long parseSeconds(Map<String, Object> capabilities, String nameWithoutPrefix) {
+        String value = getString(capabilities, nameWithoutPrefix);
+        if (value == null) {
+            return null;
+        }
+        try {
+            // Clients serializing numbers as doubles send 120.0
+            double seconds = Double.parseDouble(value);
+            return Double.isFinite(seconds) && seconds >= 1 ? (long) seconds : null;
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid {} capability {}, the default will be used.", nameWithoutPrefix, value);
+            return null;
+        }
+    }
+
+    private static Dimension parseScreenSize(String screenResolution) {
+        if (screenResolution == null) {
+            return null;
+        }
+        int separator = screenResolution.indexOf('x');
+        try {
+            int screenWidth = Integer.parseInt(screenResolution.substring(0, separator));
+            int screenHeight = Integer.parseInt(screenResolution.substring(separator + 1));
+            if (screenWidth > 0 && screenHeight > 0) {
+                return new Dimension(screenWidth, screenHeight);
+            }
+            LOGGER.debug("One of the values provided for screenResolution is negative, " +
+                    "defaults will be used. Passed value -> " + screenResolution);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Values provided for screenResolution are not valid integers or " +
+                    "either the width or the height is missing, defaults will be used. Passed value -> "
+                    + screenResolution);
+        }
+        return null;
+    }
+}
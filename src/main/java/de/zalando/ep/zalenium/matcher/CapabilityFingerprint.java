@@ -0,0 +1,56 @@
+package de.zalando.ep.zalenium.matcher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copy of the capabilities that can change a match verdict, the test metadata is left out, see
+ * {@link CanonicalCapabilities#isMetadata(String)}. Prefixed and non prefixed names are treated the same, the non
+ * prefixed one wins when both are present. It is created once per capability map together with its
+ * {@link CanonicalCapabilities}, so the hash code is only computed once.
+ */
+public final class CapabilityFingerprint {
+
+    private final Map<String, Object> capabilities;
+    private final int hashCode;
+
+    CapabilityFingerprint(Map<String, Object> capabilities) {
+        Map<String, Object> matchingCapabilities = new HashMap<>();
+        capabilities.forEach((name, value) -> {
+            if (CanonicalCapabilities.isMetadata(name)) {
+                return;
+            }
+            if (name.startsWith(ZaleniumCapabilityType.CUSTOM_CAPABILITY_PREFIX)) {
+                matchingCapabilities.putIfAbsent(
+                        name.substring(ZaleniumCapabilityType.CUSTOM_CAPABILITY_PREFIX.length()), value);
+            } else {
+                matchingCapabilities.put(name, value);
+            }
+        });
+        this.capabilities = Collections.unmodifiableMap(matchingCapabilities);
+        this.hashCode = matchingCapabilities.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CapabilityFingerprint that = (CapabilityFingerprint) o;
+        return hashCode == that.hashCode && capabilities.equals(that.capabilities);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return capabilities.toString();
+    }
+}
@@ -0,0 +1,109 @@
+package de.zalando.ep.zalenium.matcher;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+
+/**
+ * Bounded cache of match verdicts keyed by the {@link CapabilityFingerprint} of the node and the requested
+ * capabilities. Node capabilities do not change once the node registered, and a queued request is matched against the
+ * same nodes every time the queue is processed, so most lookups are repeated.
+ *
+ * Fingerprints are taken from {@link CanonicalCapabilities}, so they are computed once per capability map and the
+ * maps are not expected to change afterwards. Requests only differing in their test metadata share their verdicts.
+ * The least recently used verdicts are dropped when the cache is full, and the keys are also indexed by node, so the
+ * verdicts of a removed node are dropped without going through the whole cache.
+ */
+class CapabilityMatchCache<V> {
+
+    private final Cache<Key, V> verdicts;
+    private final ConcurrentMap<CapabilityFingerprint, Set<Key>> keysByNode = new ConcurrentHashMap<>();
+
+    CapabilityMatchCache(int maxEntries) {
+        this.verdicts = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .removalListener((RemovalListener<Key, V>) removal -> {
+                    if (removal.getCause() != RemovalCause.REPLACED) {
+                        unindex(removal.getKey());
+                    }
+                })
+                .build();
+    }
+
+    V get(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability) {
+        return verdicts.getIfPresent(new Key(nodeCapability, requestedCapability));
+    }
+
+    void put(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability, V verdict) {
+        Key key = new Key(nodeCapability, requestedCapability);
+        keysByNode.compute(key.node, (node, keys) -> {
+            Set<Key> nodeKeys = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            nodeKeys.add(key);
+            return nodeKeys;
+        });
+        verdicts.put(key, verdict);
+    }
+
+    /**
+     * Drops the verdicts of a node, called when it is removed from the grid.
+     */
+    void forgetNode(Map<String, Object> nodeCapability) {
+        Set<Key> keys = keysByNode.remove(CanonicalCapabilities.ofNode(nodeCapability).getFingerprint());
+        if (keys != null) {
+            verdicts.invalidateAll(keys);
+        }
+    }
+
+    void clear() {
+        verdicts.invalidateAll();
+        keysByNode.clear();
+    }
+
+    int size() {
+        return (int) verdicts.size();
+    }
+
+    private void unindex(Key key) {
+        keysByNode.computeIfPresent(key.node, (node, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static final class Key {
+        private final CapabilityFingerprint node;
+        private final CapabilityFingerprint requested;
+        private final int hashCode;
+
+        private Key(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability) {
+            this.node = CanonicalCapabilities.ofNode(nodeCapability).getFingerprint();
+            this.requested = CanonicalCapabilities.of(requestedCapability).getFingerprint();
+            this.hashCode = 31 * node.hashCode() + requested.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode && Objects.equals(node, key.node) &&
+                    Objects.equals(requested, key.requested);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package de.zalando.ep.zalenium.matcher;
+
+import java.util.Map;
+import java.util.Objects;
+
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.CapabilityType;
+
+/**
+ * Normalized view of the capabilities that decide which docker-selenium node can serve a request: browser, version,
+ * platform, screen resolution and time zone. The screen resolution and time zone are taken from
+ * {@link CanonicalCapabilities}, so the index and the matcher read the same value when both the prefixed and the non
+ * prefixed names are present. Values considered as "anything" by the
+ * {@link org.openqa.grid.internal.utils.DefaultCapabilityMatcher} are stored as null.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CapabilityShape {
+
+    private static final String BROWSER_VERSION = "browserVersion";
+
+    private final String browserName;
+    private final String version;
+    private final Platform platform;
+    private final String screenResolution;
+    private final String timeZone;
+    private final int hashCode;
+
+    public CapabilityShape(String browserName, String version, Platform platform, String screenResolution,
+                           String timeZone) {
+        this.browserName = browserName;
+        this.version = version;
+        this.platform = platform;
+        this.screenResolution = screenResolution;
+        this.timeZone = timeZone;
+        this.hashCode = Objects.hash(browserName, version, platform, screenResolution, timeZone);
+    }
+
+    public static CapabilityShape fromCapabilities(Map<String, Object> requestedCapabilities) {
+        return fromCapabilities(requestedCapabilities, CanonicalCapabilities.of(requestedCapabilities));
+    }
+
+    public static CapabilityShape fromNodeCapabilities(Map<String, Object> nodeCapabilities) {
+        return fromCapabilities(nodeCapabilities, CanonicalCapabilities.ofNode(nodeCapabilities));
+    }
+
+    private static CapabilityShape fromCapabilities(Map<String, Object> capabilities, CanonicalCapabilities canonical) {
+        Object version = capabilities.get(CapabilityType.VERSION);
+        if (isAnything(version)) {
+            version = capabilities.get(BROWSER_VERSION);
+        }
+        return new CapabilityShape(
+                valueOrNull(capabilities.get(CapabilityType.BROWSER_NAME)),
+                valueOrNull(version),
+                platformOrNull(capabilities.get(CapabilityType.PLATFORM_NAME)),
+                valueOrNull(canonical.getScreenResolution()),
+                valueOrNull(canonical.getTimeZoneId()));
+    }
+
+    /*
+        Same semantics as DefaultCapabilityMatcher#anything(Object).
+     */
+    public static boolean isAnything(Object value) {
+        if (value == null) {
+            return true;
+        }
+        String asString = value.toString().toLowerCase();
+        return asString.isEmpty() || "any".equals(asString) || "*".equals(asString);
+    }
+
+    private static String valueOrNull(Object value) {
+        return isAnything(value) ? null : value.toString();
+    }
+
+    private static Platform platformOrNull(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Platform) {
+            return (Platform) value;
+        }
+        try {
+            return Platform.fromString(value.toString());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public String getBrowserName() {
+        return browserName;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public Platform getPlatform() {
+        return platform;
+    }
+
+    public String getScreenResolution() {
+        return screenResolution;
+    }
+
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CapabilityShape that = (CapabilityShape) o;
+        return Objects.equals(browserName, that.browserName) &&
+                Objects.equals(version, that.version) &&
+                platform == that.platform &&
+                Objects.equals(screenResolution, that.screenResolution) &&
+                Objects.equals(timeZone, that.timeZone);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "CapabilityShape [browserName=" + browserName + ", version=" + version + ", platform=" + platform
+                + ", screenResolution=" + screenResolution + ", timeZone=" + timeZone + "]";
+    }
+}
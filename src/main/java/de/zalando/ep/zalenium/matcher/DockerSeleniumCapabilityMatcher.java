@@ -1,9 +1,10 @@
 package de.zalando.ep.zalenium.matcher;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
+
 import org.openqa.grid.internal.utils.DefaultCapabilityMatcher;
+import org.openqa.selenium.Dimension;
 import org.openqa.selenium.remote.BrowserType;
 import org.openqa.selenium.remote.CapabilityType;
 import org.slf4j.Logger;
@@ -13,54 +14,78 @@ import de.zalando.ep.zalenium.proxy.DockeredSeleniumStarter;
 
 @SuppressWarnings("WeakerAccess")
 public class DockerSeleniumCapabilityMatcher extends DefaultCapabilityMatcher {
-    private static final List<String> ZALENIUM_CUSTOM_CAPABILITIES_NO_PREFIX = Arrays.asList(
-            ZaleniumCapabilityType.TEST_NAME_NO_PREFIX,
-            ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX,
-            ZaleniumCapabilityType.TEST_FILE_NAME_TEMPLATE_NO_PREFIX,
-            ZaleniumCapabilityType.IDLE_TIMEOUT_NO_PREFIX,
-            ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX,
-            ZaleniumCapabilityType.RESOLUTION_NO_PREFIX,
-            ZaleniumCapabilityType.SCREEN_RESOLUTION_DASH_NO_PREFIX,
-            ZaleniumCapabilityType.RECORD_VIDEO_NO_PREFIX,
-            ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX);
+    private static final int MAX_CACHED_VERDICTS = 10000;
+    // Shared by all the docker-selenium proxies, nodes with the same capabilities share their verdicts.
+    private static final CapabilityMatchCache<Verdict> verdictCache = new CapabilityMatchCache<>(MAX_CACHED_VERDICTS);
 
     private static String chromeVersion = null;
     private static String firefoxVersion = null;
+    private static volatile Dimension cachedScreenSize = null;
+    private static volatile TimeZone cachedTimeZone = null;
     private final Logger logger = LoggerFactory.getLogger(DockerSeleniumCapabilityMatcher.class.getName());
 
     @Override
     public boolean matches(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability) {
-        logger.debug(String.format("Validating %s in node with capabilities %s", requestedCapability,
-                nodeCapability));
+        if (nodeCapability == null || requestedCapability == null) {
+            return evaluate(nodeCapability, requestedCapability) == Verdict.MATCH;
+        }
+        invalidateCacheIfConfigurationChanged();
+        Verdict verdict = verdictCache.get(nodeCapability, requestedCapability);
+        if (verdict == null) {
+            verdict = evaluate(nodeCapability, requestedCapability);
+            verdictCache.put(nodeCapability, requestedCapability, verdict);
+        } else if (verdict != Verdict.NO_MATCH) {
+            // Same side effect as a full evaluation.
+            getChromeAndFirefoxVersions(nodeCapability);
+        }
+        return verdict == Verdict.MATCH;
+    }
+
+    /**
+     * Forgets the cached verdicts of a node, called when its proxy is removed.
+     */
+    public static void forgetNode(Map<String, Object> nodeCapability) {
+        if (nodeCapability != null) {
+            verdictCache.forgetNode(nodeCapability);
+        }
+    }
+
+    static int getCachedVerdicts() {
+        return verdictCache.size();
+    }
+
+    private Verdict evaluate(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability) {
+        logger.debug("Validating {} in node with capabilities {}", requestedCapability, nodeCapability);
 
         if (!requestedCapability.containsKey(CapabilityType.BROWSER_NAME)) {
-            logger.debug(String.format("Capability %s does not contain %s key, a docker-selenium " +
-                    "node cannot be started without it", requestedCapability, CapabilityType.BROWSER_NAME));
-            return false;
+            logger.debug("Capability {} does not contain {} key, a docker-selenium node cannot be started without it",
+                    requestedCapability, CapabilityType.BROWSER_NAME);
+            return Verdict.NO_MATCH;
         }
 
         // DockerSeleniumRemoteProxy part
         if (super.matches(nodeCapability, requestedCapability)) {
             getChromeAndFirefoxVersions(nodeCapability);
 
-            // Prefix Zalenium custom capabilities here (both node and requested)
-            prefixZaleniumCustomCapabilities(nodeCapability);
-            prefixZaleniumCustomCapabilities(requestedCapability);
-
-            boolean screenResolutionMatches = isScreenResolutionMatching(nodeCapability, requestedCapability);
-            boolean timeZoneCapabilityMatches = isTimeZoneMatching(nodeCapability, requestedCapability);
-            return screenResolutionMatches && timeZoneCapabilityMatches;
+            CanonicalCapabilities node = CanonicalCapabilities.ofNode(nodeCapability);
+            CanonicalCapabilities requested = CanonicalCapabilities.of(requestedCapability);
+            boolean screenResolutionMatches = isScreenResolutionMatching(node, requested);
+            boolean timeZoneCapabilityMatches = isTimeZoneMatching(node, requested);
+            return screenResolutionMatches && timeZoneCapabilityMatches ? Verdict.MATCH : Verdict.BROWSER_MATCH;
         }
-        return false;
+        return Verdict.NO_MATCH;
     }
 
-    private void prefixZaleniumCustomCapabilities(Map<String, Object> capabilities) {
-        for (String zaleniumCustomCapability : ZALENIUM_CUSTOM_CAPABILITIES_NO_PREFIX) {
-            if (capabilities.containsKey(zaleniumCustomCapability)) {
-                String prefixedCapability = ZaleniumCapabilityType.CUSTOM_CAPABILITY_PREFIX.concat(zaleniumCustomCapability);
-                capabilities.put(prefixedCapability, capabilities.get(zaleniumCustomCapability));
-                capabilities.remove(zaleniumCustomCapability);
-            }
+    /*
+        Verdicts depend on the configured screen size and time zone, which only change in tests.
+     */
+    private static void invalidateCacheIfConfigurationChanged() {
+        Dimension screenSize = DockeredSeleniumStarter.getConfiguredScreenSize();
+        TimeZone timeZone = DockeredSeleniumStarter.getConfiguredTimeZone();
+        if (!screenSize.equals(cachedScreenSize) || !timeZone.equals(cachedTimeZone)) {
+            verdictCache.clear();
+            cachedScreenSize = screenSize;
+            cachedTimeZone = timeZone;
         }
     }
 
@@ -76,19 +101,9 @@ public class DockerSeleniumCapabilityMatcher extends DefaultCapabilityMatcher {
         }
     }
 
-    private boolean isScreenResolutionMatching(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability) {
-        boolean screenResolutionCapabilityMatches = true;
-        boolean screenSizeCapabilityIsRequested = false;
-
-        List<String> screenResolutionNames = Arrays.asList(ZaleniumCapabilityType.SCREEN_RESOLUTION,
-                ZaleniumCapabilityType.RESOLUTION, ZaleniumCapabilityType.SCREEN_RESOLUTION_DASH);
-
-        for (String screenResolutionName : screenResolutionNames) {
-            if (requestedCapability.containsKey(screenResolutionName)) {
-                screenSizeCapabilityIsRequested = true;
-                screenResolutionCapabilityMatches = nodeCapability.containsKey(screenResolutionName) &&
-                        requestedCapability.get(screenResolutionName).equals(nodeCapability.get(screenResolutionName));
-            }
+    private boolean isScreenResolutionMatching(CanonicalCapabilities node, CanonicalCapabilities requested) {
+        if (requested.getScreenResolution() != null) {
+            return requested.getScreenResolution().equals(node.getScreenResolution());
         }
 
         /*
@@ -99,32 +114,20 @@ public class DockerSeleniumCapabilityMatcher extends DefaultCapabilityMatcher {
         String defaultScreenResolution = String.format("%sx%s",
                 DockeredSeleniumStarter.getConfiguredScreenSize().getWidth(),
                 DockeredSeleniumStarter.getConfiguredScreenSize().getHeight());
-        String nodeScreenResolution = nodeCapability.get(ZaleniumCapabilityType.SCREEN_RESOLUTION).toString();
-        if (!screenSizeCapabilityIsRequested && !defaultScreenResolution.equalsIgnoreCase(nodeScreenResolution)) {
-            screenResolutionCapabilityMatches = false;
-        }
-        return screenResolutionCapabilityMatches;
+        return defaultScreenResolution.equalsIgnoreCase(node.getScreenResolution());
     }
 
-    private boolean isTimeZoneMatching(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability) {
-        boolean timeZoneCapabilityMatches;
-
-        String defaultTimeZone = DockeredSeleniumStarter.getConfiguredTimeZone().getID();
-        String nodeTimeZone = nodeCapability.get(ZaleniumCapabilityType.TIME_ZONE).toString();
-
+    private boolean isTimeZoneMatching(CanonicalCapabilities node, CanonicalCapabilities requested) {
         /*
             If a time zone is not requested in the capabilities,
             and this node has a different time zone from the default/configured one...
             this will prevent that a request without a time zone uses a node created with a specific time zone
          */
-        if (requestedCapability.containsKey(ZaleniumCapabilityType.TIME_ZONE)) {
-            timeZoneCapabilityMatches = nodeCapability.containsKey(ZaleniumCapabilityType.TIME_ZONE) &&
-                    requestedCapability.get(ZaleniumCapabilityType.TIME_ZONE).equals(nodeCapability.get(ZaleniumCapabilityType.TIME_ZONE));
-        } else {
-            timeZoneCapabilityMatches = defaultTimeZone.equalsIgnoreCase(nodeTimeZone);
+        if (requested.getTimeZoneId() != null) {
+            return requested.getTimeZoneId().equals(node.getTimeZoneId());
         }
-
-        return timeZoneCapabilityMatches;
+        String defaultTimeZone = DockeredSeleniumStarter.getConfiguredTimeZone().getID();
+        return defaultTimeZone.equalsIgnoreCase(node.getTimeZoneId());
     }
 
     public static String getChromeVersion() {
@@ -134,4 +137,11 @@ public class DockerSeleniumCapabilityMatcher extends DefaultCapabilityMatcher {
     public static String getFirefoxVersion() {
       return firefoxVersion;
     }
+
+    private enum Verdict {
+        NO_MATCH,
+        // Browser, version and platform match, but screen resolution or time zone do not.
+        BROWSER_MATCH,
+        MATCH
+    }
 }
@@ -0,0 +1,70 @@
+package de.zalando.ep.zalenium.matcher;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openqa.grid.internal.utils.DefaultCapabilityMatcher;
+import org.openqa.selenium.MutableCapabilities;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Decides whether a request can be served by docker-selenium or has to go to a cloud testing provider. The
+ * capabilities of the docker-selenium browsers are built once for the browser versions seen so far, and the decision
+ * for each request is kept by identity of its capabilities, so classifying a queued request again does not allocate.
+ * A new classifier is built when the browser versions change.
+ */
+final class DockerSeleniumClassifier {
+
+    private static volatile DockerSeleniumClassifier current = new DockerSeleniumClassifier(null, null);
+
+    private final String chromeVersion;
+    private final String firefoxVersion;
+    private final Map<String, Object> chromeCapabilities;
+    private final Map<String, Object> firefoxCapabilities;
+    private final DefaultCapabilityMatcher matcher = new DefaultCapabilityMatcher();
+    // Weak keys are compared by identity.
+    private final ConcurrentMap<Map<String, Object>, Boolean> decisions = new MapMaker().weakKeys().makeMap();
+
+    private DockerSeleniumClassifier(String chromeVersion, String firefoxVersion) {
+        this.chromeVersion = chromeVersion;
+        this.firefoxVersion = firefoxVersion;
+        this.chromeCapabilities = browserCapabilities(BrowserType.CHROME, chromeVersion);
+        this.firefoxCapabilities = browserCapabilities(BrowserType.FIREFOX, firefoxVersion);
+    }
+
+    static DockerSeleniumClassifier current() {
+        DockerSeleniumClassifier classifier = current;
+        String chrome = DockerSeleniumCapabilityMatcher.getChromeVersion();
+        String firefox = DockerSeleniumCapabilityMatcher.getFirefoxVersion();
+        if (!Objects.equals(chrome, classifier.chromeVersion) || !Objects.equals(firefox, classifier.firefoxVersion)) {
+            classifier = new DockerSeleniumClassifier(chrome, firefox);
+            current = classifier;
+        }
+        return classifier;
+    }
+
+    boolean isSupportedByDockerSelenium(Map<String, Object> requestedCapability) {
+        Boolean decision = decisions.get(requestedCapability);
+        if (decision == null) {
+            decision = matcher.matches(firefoxCapabilities, requestedCapability) ||
+                    matcher.matches(chromeCapabilities, requestedCapability);
+            decisions.put(requestedCapability, decision);
+        }
+        return decision;
+    }
+
+    private static Map<String, Object> browserCapabilities(String browserName, String version) {
+        MutableCapabilities capabilities = new MutableCapabilities();
+        capabilities.setCapability(CapabilityType.BROWSER_NAME, browserName);
+        capabilities.setCapability(CapabilityType.PLATFORM_NAME, Platform.LINUX);
+        if (version != null) {
+            capabilities.setCapability(CapabilityType.VERSION, version);
+        }
+        return capabilities.asMap();
+    }
+}
@@ -20,4 +20,6 @@ public interface ZaleniumCapabilityType {
     String RECORD_VIDEO = CUSTOM_CAPABILITY_PREFIX.concat(RECORD_VIDEO_NO_PREFIX);
     String TIME_ZONE_NO_PREFIX = "tz";
     String TIME_ZONE = CUSTOM_CAPABILITY_PREFIX.concat(TIME_ZONE_NO_PREFIX);
+    String NEW_SESSION_WAIT_TIMEOUT_SECONDS_NO_PREFIX = "newSessionWaitTimeoutSeconds";
+    String NEW_SESSION_WAIT_TIMEOUT_SECONDS = CUSTOM_CAPABILITY_PREFIX.concat(NEW_SESSION_WAIT_TIMEOUT_SECONDS_NO_PREFIX);
 }
@@ -0,0 +1,129 @@
+package de.zalando.ep.zalenium.prometheus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Histogram;
+
+/**
+ * Breaks down the time it takes to start a test session into phases, correlated by container name:
+ * <ul>
+ *     <li>container_create: creating the container.</li>
+ *     <li>container_start: from created until the container is running.</li>
+ *     <li>node_registration: from running until the node registered in the hub.</li>
+ *     <li>queue_wait: from the new session request until a node was assigned to it.</li>
+ *     <li>session_create: from the node assignment until the node answered the new session request.</li>
+ *     <li>first_command: from the new session answer until the test sent its first command.</li>
+ * </ul>
+ * Container phases are only observed once per container, the session phases are observed for every session.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SessionStartPhases {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionStartPhases.class.getName());
+    private static final Histogram seleniumTestSessionStartPhase = Histogram.build()
+            .name("selenium_test_session_start_phase_seconds")
+            .help("Time spent in each phase of starting a Selenium test session in seconds.")
+            .labelNames("phase")
+            .buckets(0.1, 0.5, 1, 2.5, 5, 10, 15, 20, 30, 45, 60, 90, 120)
+            .register();
+    private static final SessionStartPhases INSTANCE = new SessionStartPhases(seleniumTestSessionStartPhase);
+
+    private final Histogram phases;
+    private final Map<String, Timeline> timelinesByContainer = new ConcurrentHashMap<>();
+    private final Map<String, Timeline> timelinesByNode = new ConcurrentHashMap<>();
+
+    SessionStartPhases(Histogram phases) {
+        this.phases = phases;
+    }
+
+    public static SessionStartPhases getInstance() {
+        return INSTANCE;
+    }
+
+    public void containerCreated(String containerName, long requestedMillis, long createdMillis) {
+        Timeline timeline = new Timeline(containerName, createdMillis);
+        timelinesByContainer.put(containerName, timeline);
+        observe("container_create", createdMillis - requestedMillis);
+    }
+
+    public void containerStarted(String containerName, long startedMillis) {
+        Timeline timeline = timelinesByContainer.get(containerName);
+        if (timeline != null && timeline.startedMillis == 0) {
+            timeline.startedMillis = startedMillis;
+            observe("container_start", startedMillis - timeline.createdMillis);
+        }
+    }
+
+    /**
+     * @param nodeId id of the proxy, used to correlate the session phases with the container.
+     */
+    public void nodeRegistered(String containerName, String nodeId, long registeredMillis) {
+        Timeline timeline = timelinesByContainer.get(containerName);
+        if (timeline != null && timeline.registeredMillis == 0) {
+            timeline.registeredMillis = registeredMillis;
+            timelinesByNode.put(nodeId, timeline);
+            long since = timeline.startedMillis > 0 ? timeline.startedMillis : timeline.createdMillis;
+            observe("node_registration", registeredMillis - since);
+        }
+    }
+
+    /**
+     * @param nodeId null when the session does not run in a container started by Zalenium.
+     */
+    public void sessionAssigned(String nodeId, long requestCreatedMillis, long assignedMillis) {
+        observe("queue_wait", assignedMillis - requestCreatedMillis);
+        Timeline timeline = nodeId == null ? null : timelinesByNode.get(nodeId);
+        if (timeline != null) {
+            timeline.assignedMillis = assignedMillis;
+        }
+    }
+
+    public void sessionCreated(String nodeId, long createdMillis) {
+        Timeline timeline = timelinesByNode.get(nodeId);
+        if (timeline == null || timeline.assignedMillis == 0) {
+            return;
+        }
+        observe("session_create", createdMillis - timeline.assignedMillis);
+        LOGGER.debug("Session started in container {}: created at {}, started at {}, registered at {}, "
+                        + "assigned at {}, session created at {}", timeline.containerName, timeline.createdMillis,
+                timeline.startedMillis, timeline.registeredMillis, timeline.assignedMillis, createdMillis);
+        timeline.assignedMillis = 0;
+    }
+
+    public void firstCommand(long sessionCreatedMillis, long commandMillis) {
+        observe("first_command", commandMillis - sessionCreatedMillis);
+    }
+
+    public void containerRemoved(String containerName) {
+        Timeline timeline = timelinesByContainer.remove(containerName);
+        if (timeline != null) {
+            timelinesByNode.values().remove(timeline);
+        }
+    }
+
+    int getTrackedContainers() {
+        return timelinesByContainer.size();
+    }
+
+    private void observe(String phase, long millis) {
+        phases.labels(phase).observe(Math.max(0, millis) / Collector.MILLISECONDS_PER_SECOND);
+    }
+
+    private static final class Timeline {
+        private final String containerName;
+        private final long createdMillis;
+        private volatile long startedMillis;
+        private volatile long registeredMillis;
+        private volatile long assignedMillis;
+
+        private Timeline(String containerName, long createdMillis) {
+            this.containerName = containerName;
+            this.createdMillis = createdMillis;
+        }
+    }
+}
@@ -5,28 +5,37 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
+import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+import com.google.common.collect.MapMaker;
 import de.zalando.ep.zalenium.dashboard.Dashboard;
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
+import de.zalando.ep.zalenium.matcher.CapabilityShape;
+import de.zalando.ep.zalenium.matcher.DockerSeleniumCapabilityMatcher;
 import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityMatcher;
+import de.zalando.ep.zalenium.prometheus.SessionStartPhases;
+import de.zalando.ep.zalenium.proxy.ContainerInventory.State;
+import de.zalando.ep.zalenium.simulation.SessionTraceRecorder;
+import de.zalando.ep.zalenium.util.ZaleniumConfiguration;
 import org.apache.commons.lang3.tuple.Pair;
 import org.openqa.grid.common.exception.RemoteUnregisterException;
 import org.openqa.grid.internal.BaseRemoteProxy;
 import org.openqa.grid.internal.ProxySet;
 import org.openqa.grid.internal.RemoteProxy;
 import org.openqa.grid.internal.TestSession;
-import org.openqa.selenium.Platform;
-import org.openqa.selenium.remote.CapabilityType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +43,7 @@ import de.vandermeer.asciitable.AT_Row;
 import de.vandermeer.asciitable.AsciiTable;
 import de.vandermeer.asciitable.CWC_LongestLine;
 import de.vandermeer.skb.interfaces.transformers.textformat.TextAlignment;
+
 import de.zalando.ep.zalenium.container.ContainerCreationStatus;
 import net.jcip.annotations.ThreadSafe;
 
@@ -49,16 +59,16 @@ import net.jcip.annotations.ThreadSafe;
  * Generally, the lifecycle of a container is:
  * <ol>
  * <li>a new proxy is requested. The container is started and added to the
- * startedContainers map.</li>
- * <li>the container starts and that fact is recorded in the map.</li>
+ * {@link ContainerInventory}.</li>
+ * <li>the container starts and that fact is recorded in the inventory.</li>
  * <li>the proxy in the container registers with the grid, and the proxy is
- * added to the set and recorded in the map (this may happen before step 2.).
+ * added to the set and recorded in the inventory (this may happen before step 2.).
  * </li>
  * <li>the proxy is no longer needed so it is marked unavailable and a request
  * is sent to stop the container.</li>
  * <li>the proxy deregisters - another attempt will be made to stop the
  * container and it will be removed from the set.</li>
- * <li>the container stops and is removed from the map.</li>
+ * <li>the container stops and is removed from the inventory.</li>
  * </ol>
  * 
  * In some cases, a stopping container's proxy may re-register with the grid so
@@ -69,6 +79,16 @@ import net.jcip.annotations.ThreadSafe;
  * <li>proxies are always tracked and shutdown when appropriate.
  * <li>
  * </ul>
+ *
+ * Requests that could not get a session wait in a single queue, where a single provisioning thread looks at them
+ * together. Requests asking for the same screen resolution and time zone can use the same containers, so for each of
+ * these container shapes it only starts the containers missing after counting the ones being created or starting.
+ * Containers are created by a bounded pool of threads, so several creations run at the same time without one of
+ * them waiting for the others. The creations in flight count towards the maximum amount of containers. The threads
+ * are owned by a {@link ProxySetScheduler}, which can be replaced to run the proxy set on a simulated clock.
+ *
+ * With Docker, terminated containers are removed as soon as the daemon reports them, and the periodic check only
+ * polls the daemon as a fallback.
  */
 @ThreadSafe
 public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy> {
@@ -77,27 +97,70 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
     
     private static final Logger STATUS_LOGGER = LoggerFactory.getLogger(LOGGER.getName() + ".Status");
 
-    private final Map<ContainerCreationStatus, ContainerStatus> startedContainers = new ConcurrentHashMap<>();
+    private final ContainerInventory startedContainers = new ContainerInventory();
 
     private final DockeredSeleniumStarter starter;
 
     private final SessionRequestFilter filter;
 
+    private final ProxyCapabilityIndex capabilityIndex = new ProxyCapabilityIndex();
+
+    private final ProxySetScheduler scheduler;
+
+    // Containers being created, they are not in startedContainers until the creation returns.
+    private final AtomicInteger containersBeingCreated = new AtomicInteger();
+
+    // Containers being created for each container shape, see containerShape().
+    private final ConcurrentMap<CapabilityShape, AtomicInteger> containersBeingCreatedByShape =
+            new ConcurrentHashMap<>();
+
+    // Requests waiting for a container. Weak keys are compared by identity.
+    private final ConcurrentMap<Map<String, Object>, PendingRequest> pendingRequests =
+            new MapMaker().weakKeys().makeMap();
+
+    // Start of the sessions assigned by assignSession(), measured with the clock of the proxy set.
+    private final ConcurrentMap<TestSession, Long> sessionStarts = new MapMaker().weakKeys().makeMap();
+
     private long minContainers;
     private long maxContainers;
     private final long timeToWaitToStart;
     private final boolean waitForAvailableNodes;
 
-    private final Thread poller;
-
     private long timeOfLastReport = 0;
-    private boolean keepCheckingContainers = true;
+
+    // When the container client reports the terminated containers, they are only polled every reconcileInterval.
+    private volatile boolean watchingContainers = false;
+    private volatile long reconcileInterval = 0;
+    private long timeOfLastReconciliation = 0;
+
+    private volatile Runnable containersCheckedListener = () -> {};
+
+    private volatile WarmPoolPolicy warmPoolPolicy = WarmPoolPolicy.fixed();
 
     private Clock clock;
 
     public AutoStartProxySet(boolean throwOnCapabilityNotPresent, long minContainers, long maxContainers,
             long timeToWaitToStart, boolean waitForAvailableNodes, DockeredSeleniumStarter starter, Clock clock,
-            int maxTimesToProcessRequest, long checkContainersInterval) {
+            long checkContainersInterval) {
+        this(throwOnCapabilityNotPresent, minContainers, maxContainers, timeToWaitToStart, waitForAvailableNodes,
+                starter, clock, checkContainersInterval,
+                ZaleniumConfiguration.DEFAULT_CONTAINER_START_THREADS);
+    }
+
+    public AutoStartProxySet(boolean throwOnCapabilityNotPresent, long minContainers, long maxContainers,
+            long timeToWaitToStart, boolean waitForAvailableNodes, DockeredSeleniumStarter starter, Clock clock,
+            long checkContainersInterval, int containerStartThreads) {
+        this(throwOnCapabilityNotPresent, minContainers, maxContainers, timeToWaitToStart, waitForAvailableNodes,
+                starter, clock, new ThreadedProxySetScheduler(checkContainersInterval, containerStartThreads));
+        Runtime.getRuntime().addShutdownHook(new Thread(Dashboard::saveDashboard, "Saving dashboard."));
+    }
+
+    /**
+     * Creates a proxy set whose background work is run by the given scheduler, which is started right away.
+     */
+    public AutoStartProxySet(boolean throwOnCapabilityNotPresent, long minContainers, long maxContainers,
+            long timeToWaitToStart, boolean waitForAvailableNodes, DockeredSeleniumStarter starter, Clock clock,
+            ProxySetScheduler scheduler) {
         super(throwOnCapabilityNotPresent);
         this.minContainers = minContainers;
         this.maxContainers = maxContainers;
@@ -105,49 +168,47 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
         this.waitForAvailableNodes = waitForAvailableNodes;
         this.starter = starter;
         this.clock = clock;
-        this.filter = new SessionRequestFilter(maxTimesToProcessRequest);
-
-        Runtime.getRuntime().addShutdownHook(new Thread(this::stopCheckingContainers, "AutoStartProxySet stop checking containers."));
-        Runtime.getRuntime().addShutdownHook(new Thread(Dashboard::saveDashboard, "Saving dashboard."));
-
-        poller = new Thread(() -> {
-            LOGGER.info("Starting poller.");
-            while (keepCheckingContainers) {
-                long now = clock.millis();
-                if (now - timeOfLastReport > 30000) {
-                    dumpStatus();
-                    timeOfLastReport = now;
-                }
-
-                LOGGER.debug("Checking containers...");
-                try {
-                    checkContainers();
-                } catch (Exception e) {
-                    LOGGER.error("Failed checking containers.", e);
-                }
-                LOGGER.debug("Checked containers.");
-
-                try {
-                    Thread.sleep(checkContainersInterval);
-                } catch (InterruptedException e) {
-                    LOGGER.info("Stopping polling thread.");
-                    LOGGER.debug("Stopping polling thread.", e);
-                }
-            }
-        });
+        this.filter = new SessionRequestFilter(clock);
+        this.scheduler = scheduler;
+        scheduler.start(this::runContainersCheck, this::runProvisioning);
+    }
 
-        poller.setName("AutoStartProxyPoolPoller");
+    private void runContainersCheck() {
+        long now = clock.millis();
+        if (now - timeOfLastReport > 30000) {
+            dumpStatus();
+            timeOfLastReport = now;
+        }
 
-        poller.start();
+        LOGGER.debug("Checking containers...");
+        try {
+            checkContainers();
+        } catch (Exception e) {
+            LOGGER.error("Failed checking containers.", e);
+        }
+        LOGGER.debug("Checked containers.");
+        try {
+            containersCheckedListener.run();
+        } catch (Exception e) {
+            LOGGER.error("Failed notifying the containers check.", e);
+        }
     }
 
-    private void stopCheckingContainers() {
-        this.keepCheckingContainers = false;
+    private void runProvisioning() {
+        try {
+            provisionContainers();
+        } catch (Exception e) {
+            LOGGER.error("Failed provisioning containers.", e);
+        }
     }
 
     @Override
     public void teardown() {
-        poller.interrupt();
+        scheduler.stop();
+        if (watchingContainers) {
+            watchingContainers = false;
+            starter.stopWatching();
+        }
         super.teardown();
     }
 
@@ -158,62 +219,82 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
      * proxy.
      */
     public TestSession getNewSession(Map<String, Object> desiredCapabilities) {
-        // TestSession newSession = super.getNewSession(desiredCapabilities);
-        TestSession newSession = createNewSession(desiredCapabilities);
+        TestSession newSession = assignSession(desiredCapabilities);
         if (newSession == null) {
-            /*
-                This is done in a thread because we are in the middle of the assignRequestToProxy() pipeline, so if we
-                don't return to that method soon, it will never release the lock that it is holding and the whole
-                Grid will freeze. A previous bug shows that this is better because the docker daemon can be exhausted
-                and just hang during a container creation.
-             */
-            new Thread(() -> this.start(desiredCapabilities)).start();
+            requestContainer(desiredCapabilities);
         }
-        else {
+        return newSession;
+    }
+
+    /**
+     * Creates a new session (if possible) on a proxy, without requesting the creation of a new proxy when no
+     * session can be created.
+     */
+    public TestSession assignSession(Map<String, Object> desiredCapabilities) {
+        // TestSession newSession = super.getNewSession(desiredCapabilities);
+        TestSession newSession = createNewSession(desiredCapabilities);
+        if (newSession != null) {
+            sessionStarts.put(newSession, clock.millis());
+            pendingRequests.remove(desiredCapabilities);
             filter.testSessionHasStarted(desiredCapabilities);
         }
         return newSession;
     }
 
-    // This is a copy of the super method, slightly modified to handle the case where platform is Linux and there
-    // is an Android registered. The matcher will return true because Android is part of the Linux family.
-    private TestSession createNewSession(Map<String, Object> desiredCapabilities) {
-        List<RemoteProxy> sorted = getSorted();
-        LOGGER.debug("Available nodes: " + sorted);
-
-        // Removing the proxies with Android so they are not taken into account to create a session.
-        List<RemoteProxy> proxiesToConsider;
-        if (Platform.LINUX.equals(getPlatformFromCaps(desiredCapabilities))) {
-            proxiesToConsider = sorted.stream()
-                    .filter(remoteProxy ->
-                            remoteProxy
-                                    .getTestSlots().stream()
-                                    .noneMatch(testSlot ->
-                                            Platform.ANDROID.equals(getPlatformFromCaps(testSlot.getCapabilities()))))
-                    .collect(Collectors.toList());
-        } else {
-            proxiesToConsider = sorted;
-        }
+    /**
+     * Requests the creation of proxies for all the capabilities that could not get a session during a matcher pass.
+     *
+     * @param unmatchedCapabilities capabilities of the requests that are still waiting.
+     */
+    public void requestContainers(List<Map<String, Object>> unmatchedCapabilities) {
+        unmatchedCapabilities.forEach(capabilities -> pendingRequests.computeIfAbsent(capabilities,
+                key -> new PendingRequest(containerShape(key))));
+        signalProvisioning();
+    }
 
-        return proxiesToConsider.stream()
-                .map(proxy -> proxy.getNewSession(desiredCapabilities))
-                .filter(Objects::nonNull)
-                .findFirst().orElse(null);
+    /**
+     * Lets the provisioning know that a request does not wait for a container anymore, because it expired or it
+     * was removed.
+     */
+    public void requestLeft(Map<String, Object> desiredCapabilities) {
+        pendingRequests.remove(desiredCapabilities);
     }
 
-    private Platform getPlatformFromCaps(Map<String, Object> desiredCapabilities) {
-        Object requested = desiredCapabilities.get(CapabilityType.PLATFORM_NAME);
-        if (requested == null) {
-            return null;
-        }
-        if (requested instanceof Platform) {
-            return (Platform) requested;
-        }
-        try {
-            return Platform.fromString(requested.toString());
-        } catch (Exception ex) {
-            return null;
+    /**
+     * Forgets all the requests waiting for a container.
+     */
+    public void clearPendingRequests() {
+        pendingRequests.clear();
+    }
+
+    private void requestContainer(Map<String, Object> desiredCapabilities) {
+        requestContainers(Collections.singletonList(desiredCapabilities));
+    }
+
+    /*
+        Containers are never started by the caller because we are in the middle of the assignRequestToProxy()
+        pipeline, so if we don't return to that method soon, it will never release the lock that it is holding and
+        the whole Grid will freeze. A previous bug shows that this is better because the docker daemon can be
+        exhausted and just hang during a container creation.
+     */
+    private void signalProvisioning() {
+        scheduler.signalProvisioning();
+    }
+
+    // This is a copy of the super method, slightly modified to only visit the proxies indexed under a capability
+    // shape that can serve the request. The index also handles the case where platform is Linux and there is an
+    // Android registered. The matcher will return true because Android is part of the Linux family.
+    private TestSession createNewSession(Map<String, Object> desiredCapabilities) {
+        List<RemoteProxy> candidates = capabilityIndex.getCandidates(desiredCapabilities);
+        LOGGER.debug("Candidate nodes: " + candidates);
+
+        for (RemoteProxy proxy : candidates) {
+            TestSession session = proxy.getNewSession(desiredCapabilities);
+            if (session != null) {
+                return session;
+            }
         }
+        return null;
     }
 
     public void add(RemoteProxy proxy) {
@@ -225,6 +306,7 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
 
         if (shouldAdd) {
             super.add(proxy);
+            capabilityIndex.add(proxy);
         }
         else {
             // Won't be tracking the proxy, so it won't be removed and shutdown later - tear down.
@@ -232,12 +314,31 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
         }
     }
 
+    /**
+     * Lets the warm pool policy know about a new session request.
+     */
+    public void requestArrived(Map<String, Object> desiredCapabilities) {
+        if (ZaleniumCapabilityMatcher.isSupportedByDockerSelenium(desiredCapabilities)) {
+            warmPoolPolicy.requestArrived(desiredCapabilities, clock.millis());
+        }
+    }
+
+    /**
+     * Lets the warm pool policy know how long a session lasted.
+     */
+    public void sessionEnded(TestSession session) {
+        Long started = sessionStarts.remove(session);
+        if (started != null && session.getSlot().getProxy() instanceof DockerSeleniumRemoteProxy) {
+            long now = clock.millis();
+            warmPoolPolicy.sessionEnded(session.getRequestedCapabilities(), now - started, now);
+        }
+    }
+
     @Override
     public void verifyAbilityToHandleDesiredCapabilities(Map<String, Object> desiredCapabilities) {
-        // Using the matcher to see if docker-selenium can handle the desired capabilities. If matches is because the
-        // capability should be fulfilled by a cloud provider or a external node.
-        ZaleniumCapabilityMatcher matcher = new ZaleniumCapabilityMatcher();
-        if (matcher.matches(null, desiredCapabilities)) {
+        // Checking if docker-selenium can handle the desired capabilities. If not, the capability should be fulfilled
+        // by a cloud provider or a external node.
+        if (!ZaleniumCapabilityMatcher.isSupportedByDockerSelenium(desiredCapabilities)) {
             super.verifyAbilityToHandleDesiredCapabilities(desiredCapabilities);
         }
     }
@@ -252,64 +353,115 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
             } catch (Exception e) {
                 LOGGER.error("Failed to stop container [" + dockerSeleniumRemoteProxy.getId() + "].", e);
             }
+            // The container is going away, from now on it is checked for its termination.
+            startedContainers.find(dockerSeleniumRemoteProxy.getContainerId())
+                    .ifPresent(container -> startedContainers.markShuttingDown(container.getKey()));
+            proxy.getTestSlots().forEach(testSlot -> DockerSeleniumCapabilityMatcher.forgetNode(
+                    testSlot.getCapabilities()));
         }
+        capabilityIndex.remove(proxy);
         return super.remove(proxy);
     }
 
     /**
-     * If possible, starts a new proxy that can satisfy the requested capabilities.
-     * 
-     * If too many proxies are already running, then a new proxy will not be
-     * started.
-     * 
-     * If the request has been made previously, then a new proxy will not be
-     * started.
-     * 
-     * If a proxy that would otherwise be able to service the request is currently
-     * cleaning up and will be available shortly, then a new proxy will not be
-     * started.
-     * 
-     * @param desiredCapabilities
-     *            capabilities of the proxy to be started.
+     * Starts the containers missing for the requests waiting for one. The requests are grouped by container shape,
+     * and for each shape only the requests that are not covered by a container being created or starting get a new
+     * one. When waiting for available nodes, the nodes of the shape that are cleaning up count as well.
+     *
+     * A request does not keep a container for itself: when another request of the same shape gets it first, the
+     * request is not covered anymore and a container is started for it on the next pass.
      */
-    public synchronized void start(Map<String, Object> desiredCapabilities) {
-
-        if (startedContainers.size() >= this.maxContainers) {
-            LOGGER.debug("Not starting new container, there are [{}] of max [{}] created.", startedContainers.size(),
-                    this.maxContainers);
+    private void provisionContainers() {
+        Map<CapabilityShape, List<Pair<Map<String, Object>, PendingRequest>>> waitingByShape = new HashMap<>();
+        pendingRequests.forEach((capabilities, pending) -> waitingByShape
+                .computeIfAbsent(pending.shape, shape -> new ArrayList<>()).add(Pair.of(capabilities, pending)));
+        if (waitingByShape.isEmpty()) {
             return;
         }
 
-        if (nodesAvailable(desiredCapabilities)) {
-            LOGGER.debug("A node is coming up soon for {}, won't start a new node yet.", desiredCapabilities);
-            return;
-        }
+        Map<CapabilityShape, Integer> startingContainers = new HashMap<>();
+        startedContainers.inState(State.CREATED, State.STARTED).stream()
+                .map(Entry::getValue)
+                .filter(container -> !container.getProxy().isPresent())
+                .forEach(container -> startingContainers.merge(container.getShape(), 1, Integer::sum));
+
+        for (Entry<CapabilityShape, List<Pair<Map<String, Object>, PendingRequest>>> waiting :
+                waitingByShape.entrySet()) {
+            CapabilityShape shape = waiting.getKey();
+            List<Pair<Map<String, Object>, PendingRequest>> requests = waiting.getValue();
+            long covered = startingContainers.getOrDefault(shape, 0) + getContainersBeingCreated(shape)
+                    + nodesCleaningUp(requests.get(0).getLeft());
+            long missing = requests.size() - covered;
+            if (missing <= 0) {
+                LOGGER.debug("{} requests for {} are covered by {} containers coming up.", requests.size(), shape,
+                        covered);
+                continue;
+            }
 
-        if (filter.hasRequestBeenProcessed(desiredCapabilities)) {
-            LOGGER.debug("Request {}, has been processed and it is waiting for a node.", desiredCapabilities);
-            return;
+            LOGGER.debug("Starting {} containers for {} requests waiting for {}.", missing, requests.size(), shape);
+            // Any request of the shape can use the containers, the ones that got the least containers so far go first.
+            requests.sort(Comparator.comparingInt(request -> request.getRight().containersStarted));
+            for (int i = 0; i < missing; i++) {
+                if (!reserveContainer()) {
+                    return;
+                }
+                Pair<Map<String, Object>, PendingRequest> request = requests.get(i);
+                request.getRight().containersStarted++;
+                createContainer(request.getLeft(), shape, true);
+            }
         }
 
-        LOGGER.debug("No proxy available for new session, starting new.");
+        filter.cleanProcessedCapabilities();
+    }
 
-        this.startContainer(desiredCapabilities);
+    /*
+        Queues the creation of a container reserved with reserveContainer().
+     */
+    private void createContainer(Map<String, Object> desiredCapabilities, CapabilityShape shape,
+            boolean forRequest) {
+        AtomicInteger beingCreated = containersBeingCreatedByShape.computeIfAbsent(shape,
+                key -> new AtomicInteger());
+        beingCreated.incrementAndGet();
+        try {
+            scheduler.createContainer(() -> {
+                try {
+                    this.startContainer(desiredCapabilities, shape, forRequest);
+                } finally {
+                    beingCreated.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            beingCreated.decrementAndGet();
+            containersBeingCreated.decrementAndGet();
+            LOGGER.debug("Not starting a container, the proxy set is shutting down.");
+        }
+    }
 
-        filter.cleanProcessedCapabilities();
+    /*
+        Counts a container creation in flight, unless the maximum amount of containers is reached. Creations that
+        finished are already in startedContainers when they stop counting as in flight, so containers are never
+        missing from the total, at most counted twice for a moment.
+     */
+    private boolean reserveContainer() {
+        while (true) {
+            int beingCreated = containersBeingCreated.get();
+            if (startedContainers.size() + beingCreated >= this.maxContainers) {
+                LOGGER.debug("Not starting new container, there are [{}] of max [{}] created and [{}] being created.",
+                        startedContainers.size(), this.maxContainers, beingCreated);
+                return false;
+            }
+            if (containersBeingCreated.compareAndSet(beingCreated, beingCreated + 1)) {
+                return true;
+            }
+        }
     }
 
     private boolean register(DockerSeleniumRemoteProxy proxy) {
         String containerId = proxy.getContainerId();
 
-        ContainerStatus containerStatus = null;
-
-        for (Entry<ContainerCreationStatus, ContainerStatus> container : this.startedContainers.entrySet()) {
-            if (Objects.equals(container.getKey().getContainerName(), containerId)
-                    || Objects.equals(container.getKey().getContainerId(), containerId)) {
-                container.getValue().setProxy(Optional.of(proxy));
-                containerStatus = container.getValue();
-                break;
-            }
-        }
+        Optional<Entry<ContainerCreationStatus, ContainerStatus>> container = startedContainers.find(containerId);
+        container.ifPresent(entry -> startedContainers.markRegistered(entry.getKey(), proxy));
+        ContainerStatus containerStatus = container.map(Entry::getValue).orElse(null);
 
         if (containerStatus == null) {
             LOGGER.warn(
@@ -324,160 +476,253 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
             return false;
         } else {
             LOGGER.debug("Registered a container {} {}.", containerId, proxy);
+            long registered = clock.millis();
+            if (!containerStatus.isStarted()) {
+                // The node only registers once the container is running
+                startedContainers.markStarted(container.get().getKey(), registered);
+                SessionStartPhases.getInstance().containerStarted(containerStatus.getContainerId(), registered);
+            }
+            SessionStartPhases.getInstance().nodeRegistered(containerStatus.getContainerId(), proxy.getId(),
+                    registered);
             return true;
         }
     }
 
     /**
-     * Checks the status of the containers.
+     * Checks the status of the containers. Each step only visits the containers in the lifecycle states it can
+     * change. When the container client reports the terminated containers, they are only asked for their status
+     * now and then, see {@link #watchContainers(long)}, which also catches registered containers that died without
+     * the hub noticing.
      */
     private void checkContainers() {
         LOGGER.debug("Checking {} containers.", startedContainers.size());
 
         // Shutting down proxies that are done: cannot accept more tests or have an idle test
         // (without counting the already terminating proxies).
-        Set<ContainerCreationStatus> doneProxies = new HashSet<>();
-        this.startedContainers.entrySet().stream()
-                .filter(entry -> !entry.getValue().isShuttingDown())
-                .flatMap(entry -> entry.getValue().getProxy()
-                        .filter(DockerSeleniumRemoteProxy::shutdownIfStale)
-                        .map(proxy -> Stream.of(Pair.of(entry, proxy))).orElse(Stream.empty()))
-                .forEach(pair -> {
-                    doneProxies.add(pair.getLeft().getKey());
-                    pair.getLeft().getValue().setShuttingDown(true);
-                });
+        List<ContainerCreationStatus> doneProxies = new ArrayList<>();
+        for (Entry<ContainerCreationStatus, ContainerStatus> container : startedContainers.inState(State.REGISTERED)) {
+            if (container.getValue().getProxy().filter(DockerSeleniumRemoteProxy::shutdownIfStale).isPresent()) {
+                doneProxies.add(container.getKey());
+                startedContainers.markShuttingDown(container.getKey());
+            }
+        }
         LOGGER.debug("{} proxies are done and will be removed.", doneProxies.size());
 
-        // Removing from the tracked set the ones that were already shutdown
-        Set<ContainerCreationStatus> deadProxies = this.startedContainers.keySet().stream()
-                .filter(starter::containerHasFinished).collect(Collectors.toSet());
-        for (ContainerCreationStatus containerCreationStatus : deadProxies) {
-            String reason = String.format("Proxy %s is terminated. Removing from tracked set.",
-                    containerCreationStatus.getContainerName());
-            ContainerStatus removedProxy = this.startedContainers.remove(containerCreationStatus);
-            Optional.ofNullable(removedProxy).flatMap(ContainerStatus::getProxy).ifPresent(proxy -> {
-                proxy.markDown();
-                if (this.contains(proxy)) {
-                    String currentThreadName = Thread.currentThread().getName();
-                    Thread.currentThread().setName(proxy.getId());
-                    proxy.addNewEvent(new RemoteUnregisterException(reason));
-                    Thread.currentThread().setName(currentThreadName);
-                }
-            });
+        // Removing from the tracked set the ones that were already shutdown. When the container client reports
+        // them, this is only a fallback for the notifications that got lost.
+        long now = clock.millis();
+        boolean reconcile = !watchingContainers || now - timeOfLastReconciliation >= reconcileInterval;
+        if (reconcile) {
+            timeOfLastReconciliation = now;
+            startedContainers.inState(State.CREATED, State.STARTED, State.REGISTERED, State.SHUTTING_DOWN).stream()
+                    .map(Entry::getKey)
+                    .filter(starter::containerHasFinished)
+                    .collect(Collectors.toList())
+                    .forEach(this::removeTerminatedContainer);
         }
 
         // Creating proxies when needed
-        if (startedContainers.size() < this.minContainers) {
-            if (this.minContainers > this.maxContainers) {
-                LOGGER.info("Only up to {} containers will be started, since it is what is configured by " +
-                    "--maxDockerSeleniumContainers", this.maxContainers);
-                this.minContainers = this.maxContainers;
-            }
-            LOGGER.debug("AutoStarting container, because {} is less than min {}", startedContainers.size(),
-                    this.minContainers);
-            long outstanding = this.minContainers - startedContainers.size();
-            for (int i = 0; i < outstanding; i++) {
-                this.startContainer(Collections.emptyMap());
+        if (this.minContainers > this.maxContainers) {
+            LOGGER.info("Only up to {} containers will be started, since it is what is configured by " +
+                "--maxDockerSeleniumContainers", this.maxContainers);
+            this.minContainers = this.maxContainers;
+        }
+        long containersToKeep = Math.min(warmPoolPolicy.getContainersToKeep(this.minContainers, clock.millis()),
+                this.maxContainers);
+        long containers = startedContainers.size() + containersBeingCreated.get();
+        if (containers < containersToKeep) {
+            LOGGER.debug("AutoStarting container, because {} is less than min {}", containers, containersToKeep);
+            long outstanding = containersToKeep - containers;
+            Map<String, Object> noCapabilities = Collections.emptyMap();
+            for (int i = 0; i < outstanding && reserveContainer(); i++) {
+                createContainer(noCapabilities, containerShape(noCapabilities), false);
             }
         }
 
         // Removing from the tracked set the ones that took too long to register (we assume they died)
-        Set<ContainerCreationStatus> tookTooLongToStartProxies = new HashSet<>();
-        for (Entry<ContainerCreationStatus, ContainerStatus> container : this.startedContainers.entrySet()) {
+        List<ContainerCreationStatus> tookTooLongToStartProxies = new ArrayList<>();
+        for (Entry<ContainerCreationStatus, ContainerStatus> container : startedContainers.inState(State.CREATED)) {
             ContainerCreationStatus creationStatus = container.getKey();
             ContainerStatus containerStatus = container.getValue();
+            long timeWaitingToStart = clock.millis() - containerStatus.getTimeCreated();
 
-            // Only need to check containers that haven't yet started.
-            if (!containerStatus.isStarted()) {
-                if (starter.containerHasStarted(creationStatus)) {
-                    long started = clock.millis();
-                    containerStatus.setTimeStarted(Optional.of(started));
-                    LOGGER.debug("Container {} started after {}.", creationStatus.getContainerName(),
-                            (started - containerStatus.getTimeCreated()));
-                } else {
-                    long timeWaitingToStart = clock.millis() - containerStatus.getTimeCreated();
-                    if (timeWaitingToStart > this.timeToWaitToStart) {
-                        LOGGER.warn("Waited {} for {} to start, which is longer than {}.", timeWaitingToStart,
-                                containerStatus, this.timeToWaitToStart);
-                        tookTooLongToStartProxies.add(creationStatus);
-                    }
-                }
+            // Registering nodes mark their containers as started, so between reconciliations only the late ones
+            // are asked.
+            if (!reconcile && timeWaitingToStart <= this.timeToWaitToStart) {
+                continue;
+            }
+            if (starter.containerHasStarted(creationStatus)) {
+                long started = clock.millis();
+                startedContainers.markStarted(creationStatus, started);
+                SessionStartPhases.getInstance().containerStarted(creationStatus.getContainerName(), started);
+                LOGGER.debug("Container {} started after {}.", creationStatus.getContainerName(),
+                        (started - containerStatus.getTimeCreated()));
+            } else if (timeWaitingToStart > this.timeToWaitToStart) {
+                LOGGER.warn("Waited {} for {} to start, which is longer than {}.", timeWaitingToStart,
+                        containerStatus, this.timeToWaitToStart);
+                tookTooLongToStartProxies.add(creationStatus);
             }
         }
 
         for (ContainerCreationStatus tookTooLongToStartProxy : tookTooLongToStartProxies) {
             starter.stopContainer(tookTooLongToStartProxy.getContainerId());
-            this.startedContainers.remove(tookTooLongToStartProxy);
+            // The termination of the container may have been reported in the meantime
+            if (this.startedContainers.remove(tookTooLongToStartProxy) != null) {
+                starter.releasePort(tookTooLongToStartProxy);
+                SessionStartPhases.getInstance().containerRemoved(tookTooLongToStartProxy.getContainerName());
+                SessionTraceRecorder.getInstance().containerStopped(tookTooLongToStartProxy.getContainerName());
+            }
         }
 
 
         // Shutting down the extra containers (without counting the already terminating proxies).
-        Set<ContainerCreationStatus> extraProxies = new HashSet<>();
-        long runningCount = this.startedContainers.values().stream()
-                .filter(container -> !container.isShuttingDown())
-                .count();
+        List<ContainerCreationStatus> extraProxies = new ArrayList<>();
+        long runningCount = startedContainers.size() - startedContainers.count(State.SHUTTING_DOWN);
 
-        if (runningCount > this.minContainers) {
+        if (runningCount > containersToKeep) {
             LOGGER.debug("Timing out containers because active container count {} is greater than min {}.",
-                    runningCount, this.minContainers);
-            long extra = runningCount - minContainers;
+                    runningCount, containersToKeep);
+            long extra = runningCount - containersToKeep;
 
-            this.startedContainers.entrySet().stream()
-                    .filter(entry -> !entry.getValue().isShuttingDown())
-                    .flatMap(entry -> entry.getValue().getProxy()
-                            .filter(DockerSeleniumRemoteProxy::shutdownIfIdle)
-                            .map(proxy -> Stream.of(Pair.of(entry, proxy))).orElse(Stream.empty()))
-                    .limit(extra).forEach(pair -> {
-                        extraProxies.add(pair.getLeft().getKey());
-                        pair.getLeft().getValue().setShuttingDown(true);
-                    });
+            for (Entry<ContainerCreationStatus, ContainerStatus> container :
+                    startedContainers.inState(State.REGISTERED)) {
+                if (extraProxies.size() >= extra) {
+                    break;
+                }
+                if (container.getValue().getProxy().filter(DockerSeleniumRemoteProxy::shutdownIfIdle).isPresent()) {
+                    extraProxies.add(container.getKey());
+                    startedContainers.markShuttingDown(container.getKey());
+                }
+            }
         }
 
         LOGGER.debug("{} proxies are idle and will be removed.", extraProxies.size());
+
+        // Requests whose containers were removed or failed to start need new ones
+        signalProvisioning();
     }
 
     /**
-     * Starts a container. Records that a request has been processed so that a
-     * retried request will not cause extra proxies to be started.
+     * Learns about the terminated containers from the container client, when it can report them. The containers
+     * are then only polled for their termination every reconcileInterval ms, in case a notification was lost.
      */
-    private synchronized void startContainer(Map<String, Object> desiredCapabilities) {
-        // Synchronized so that we record the container creation status before register
-        // can be called
-        ContainerCreationStatus startedContainer = starter.startDockerSeleniumContainer(desiredCapabilities);
-        if (startedContainer == null) {
-            LOGGER.error("Failed to start container.");
-        } else {
-            filter.requestHasBeenProcessed(desiredCapabilities);
-            startedContainers.put(startedContainer,
-                    new ContainerStatus(startedContainer.getContainerName(), clock.millis()));
-            LOGGER.debug("Created {}.", startedContainer);
+    public void watchContainers(long reconcileInterval) {
+        this.reconcileInterval = reconcileInterval;
+        this.watchingContainers = starter.watchContainers(this::containerTerminated);
+        LOGGER.info(watchingContainers ? "Watching the containers, they are polled every {} ms." :
+                "Polling the containers, the container client does not report them.", reconcileInterval);
+    }
+
+    private void containerTerminated(String containerId) {
+        if (!watchingContainers) {
+            return;
         }
+        startedContainers.find(containerId).ifPresent(container -> {
+            LOGGER.debug("Container {} terminated.", containerId);
+            removeTerminatedContainer(container.getKey());
+            signalProvisioning();
+        });
     }
 
-    private boolean nodesAvailable(Map<String, Object> requestedCapability) {
+    /*
+        Called from the poller and from the thread notifying the terminations, only the first one removes the
+        container.
+     */
+    private void removeTerminatedContainer(ContainerCreationStatus containerCreationStatus) {
+        ContainerStatus removedProxy = this.startedContainers.remove(containerCreationStatus);
+        if (removedProxy == null) {
+            return;
+        }
+        String reason = String.format("Proxy %s is terminated. Removing from tracked set.",
+                containerCreationStatus.getContainerName());
+        starter.releasePort(containerCreationStatus);
+        SessionStartPhases.getInstance().containerRemoved(containerCreationStatus.getContainerName());
+        SessionTraceRecorder.getInstance().containerStopped(containerCreationStatus.getContainerName());
+        removedProxy.getProxy().ifPresent(proxy -> {
+            proxy.markDown();
+            if (this.contains(proxy)) {
+                String currentThreadName = Thread.currentThread().getName();
+                Thread.currentThread().setName(proxy.getId());
+                proxy.addNewEvent(new RemoteUnregisterException(reason));
+                Thread.currentThread().setName(currentThreadName);
+            }
+        });
+    }
+
+    /**
+     * Starts a container, which was reserved with {@link #reserveContainer()}. When it was started for a request,
+     * records that the request has been processed, to keep track of the containers started for it. The containers
+     * filling the warm pool are not started for any request.
+     */
+    private void startContainer(Map<String, Object> desiredCapabilities, CapabilityShape shape,
+            boolean forRequest) {
+        // The container creation status is recorded as soon as the creation returns, the node in the container
+        // registers only after it booted, so register can find it.
+        long requested = clock.millis();
+        try {
+            ContainerCreationStatus startedContainer = starter.startDockerSeleniumContainer(desiredCapabilities);
+            if (startedContainer == null) {
+                LOGGER.error("Failed to start container.");
+            } else {
+                if (forRequest) {
+                    filter.requestHasBeenProcessed(desiredCapabilities);
+                }
+                long created = clock.millis();
+                startedContainers.add(startedContainer,
+                        new ContainerStatus(startedContainer.getContainerName(), created, shape));
+                SessionStartPhases.getInstance().containerCreated(startedContainer.getContainerName(), requested,
+                        created);
+                SessionTraceRecorder.getInstance().containerStarted(startedContainer.getContainerName());
+                LOGGER.debug("Created {}.", startedContainer);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to start container.", e);
+        } finally {
+            containersBeingCreated.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the amount of containers being created right now.
+     */
+    public int getContainersBeingCreated() {
+        return containersBeingCreated.get();
+    }
+
+    private int getContainersBeingCreated(CapabilityShape shape) {
+        AtomicInteger beingCreated = containersBeingCreatedByShape.get(shape);
+        return beingCreated == null ? 0 : beingCreated.get();
+    }
+
+    /*
+        Containers are started with the screen resolution and time zone of the request, or the configured ones, and
+        every container runs all the browsers. Requests asking for the same screen size and time zone can then use the
+        same containers, whatever the browser they ask for.
+     */
+    private static CapabilityShape containerShape(Map<String, Object> desiredCapabilities) {
+        CanonicalCapabilities capabilities = CanonicalCapabilities.of(desiredCapabilities);
+        String screenSize = Optional.ofNullable(capabilities.getScreenSize())
+                .map(size -> size.getWidth() + "x" + size.getHeight()).orElse(null);
+        String timeZone = Optional.ofNullable(capabilities.getTimeZone()).map(TimeZone::getID).orElse(null);
+        return new CapabilityShape(null, null, null, screenSize, timeZone);
+    }
+
+    private long nodesCleaningUp(Map<String, Object> requestedCapability) {
         if (!waitForAvailableNodes) {
-            LOGGER.debug("Not waiting for available slots, creating nodes when possible.");
-            return false;
+            return 0;
         }
 
         // If a node is cleaning up it will be available soon
         // It is faster and more resource wise to wait for the node to be ready
-        boolean available = this.getSorted().stream()
-                .anyMatch(remoteProxy -> {
+        return this.getSorted().stream()
+                .filter(remoteProxy -> {
                     if (remoteProxy instanceof DockerSeleniumRemoteProxy) {
                         DockerSeleniumRemoteProxy proxy = (DockerSeleniumRemoteProxy) remoteProxy;
                         return proxy.isCleaningUpBeforeNextSession() && proxy.hasCapability(requestedCapability);
                     }
                     return false;
-                });
-
-        if (available) {
-            LOGGER.debug("A node is coming up to handle this request.");
-            return true;
-        }
-
-        LOGGER.debug("No slots available, a new node will be created.");
-        return false;
+                })
+                .count();
     }
 
     private void dumpStatus() {
@@ -495,7 +740,7 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
 
             at.addRule();
 
-            this.startedContainers.forEach((creationStatus, containerStatus) -> {
+            this.startedContainers.asMap().forEach((creationStatus, containerStatus) -> {
                 final String proxyId = containerStatus.getProxy().map(BaseRemoteProxy::getId).orElse("-");
                 final String containerId = creationStatus.getContainerName();
                 final String timeCreated = dateTime(containerStatus.getTimeCreated());
@@ -536,22 +781,53 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
         return formatter.format(date);
     }
     
+    /**
+     * Sets a listener that runs after every check of the started containers. Requests still waiting for a container
+     * rely on it to get a new one when the previous attempts did not work.
+     */
+    public void setContainersCheckedListener(Runnable containersCheckedListener) {
+        this.containersCheckedListener = containersCheckedListener;
+    }
+
+    /**
+     * Sets the policy deciding how many containers are kept started, the configured minimum by default.
+     */
+    public void setWarmPoolPolicy(WarmPoolPolicy warmPoolPolicy) {
+        this.warmPoolPolicy = warmPoolPolicy;
+    }
+
     public Map<ContainerCreationStatus, ContainerStatus> getStartedContainers() {
-        return Collections.unmodifiableMap(startedContainers);
+        return startedContainers.asMap();
+    }
+
+    private static final class PendingRequest {
+        private final CapabilityShape shape;
+        // Only used by the provisioning thread.
+        private int containersStarted;
+
+        private PendingRequest(CapabilityShape shape) {
+            this.shape = shape;
+        }
     }
 
     @SuppressWarnings({"WeakerAccess", "OptionalUsedAsFieldOrParameterType"})
     public static final class ContainerStatus {
         private final String containerId;
         private final long timeCreated;
+        private final CapabilityShape shape;
         private Optional<Long> timeStarted = Optional.empty();
         private Optional<DockerSeleniumRemoteProxy> proxy = Optional.empty();
         private boolean shuttingDown = false;
 
         public ContainerStatus(String containerId, long timeCreated) {
+            this(containerId, timeCreated, containerShape(Collections.emptyMap()));
+        }
+
+        public ContainerStatus(String containerId, long timeCreated, CapabilityShape shape) {
             super();
             this.containerId = containerId;
             this.timeCreated = timeCreated;
+            this.shape = shape;
         }
 
         public Optional<Long> getTimeStarted() {
@@ -571,6 +847,14 @@ public class AutoStartProxySet extends ProxySet implements Iterable<RemoteProxy>
             return timeCreated;
         }
 
+        /**
+         * @return the screen resolution and time zone the container was started with, null when they are the
+         * configured ones.
+         */
+        public CapabilityShape getShape() {
+            return shape;
+        }
+
         public boolean isStarted() {
             return timeStarted.isPresent();
         }
@@ -12,6 +12,7 @@ import com.google.gson.JsonParser;
 import de.zalando.ep.zalenium.dashboard.DashboardCollection;
 import de.zalando.ep.zalenium.dashboard.TestInformation;
 import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityMatcher;
+import de.zalando.ep.zalenium.registry.ZaleniumRegistry;
 import de.zalando.ep.zalenium.servlet.renderer.CloudProxyHtmlRenderer;
 import de.zalando.ep.zalenium.util.CommonProxyUtilities;
 import de.zalando.ep.zalenium.util.Environment;
@@ -203,6 +204,11 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
     public void afterCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
         String currentName = Thread.currentThread().getName();
         Thread.currentThread().setName(getProxyName());
+        if (request instanceof WebDriverRequest && "POST".equalsIgnoreCase(request.getMethod())
+                && RequestType.START_SESSION.equals(((WebDriverRequest) request).getRequestType())
+                && getRegistry() instanceof ZaleniumRegistry) {
+            ((ZaleniumRegistry) getRegistry()).externalKeyAssigned(session);
+        }
         if (request instanceof WebDriverRequest && "DELETE".equalsIgnoreCase(request.getMethod())) {
             WebDriverRequest seleniumRequest = (WebDriverRequest) request;
             if (seleniumRequest.getRequestType().equals(RequestType.STOP_SESSION)) {
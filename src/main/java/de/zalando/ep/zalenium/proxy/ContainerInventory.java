@@ -0,0 +1,162 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import de.zalando.ep.zalenium.container.ContainerCreationStatus;
+import de.zalando.ep.zalenium.proxy.AutoStartProxySet.ContainerStatus;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The containers started by the {@link AutoStartProxySet}, indexed by container id, container name and lifecycle
+ * state. A registering node finds its container with a single lookup, and each check of the containers only visits
+ * the ones in the states it is interested in.
+ *
+ * The state of a container is derived from its {@link ContainerStatus}, so the changes to it go through this class
+ * to keep the indexes up to date.
+ */
+@ThreadSafe
+@SuppressWarnings("WeakerAccess")
+public class ContainerInventory {
+
+    public enum State {
+        /** Created, but not running yet. */
+        CREATED,
+        /** Running, the node in the container has not registered yet. */
+        STARTED,
+        /** The node in the container is registered. */
+        REGISTERED,
+        /** Stopping, the container is removed once it is terminated. */
+        SHUTTING_DOWN
+    }
+
+    // Read by the metrics while the containers change, the indexes are only used under the lock.
+    private final Map<ContainerCreationStatus, ContainerStatus> containers = new ConcurrentHashMap<>();
+    private final Map<String, ContainerCreationStatus> byContainerId = new HashMap<>();
+    private final Map<String, ContainerCreationStatus> byContainerName = new HashMap<>();
+    private final Map<ContainerCreationStatus, State> states = new HashMap<>();
+    private final Map<State, Set<ContainerCreationStatus>> byState = new EnumMap<>(State.class);
+
+    public ContainerInventory() {
+        for (State state : State.values()) {
+            byState.put(state, new LinkedHashSet<>());
+        }
+    }
+
+    public synchronized void add(ContainerCreationStatus creationStatus, ContainerStatus containerStatus) {
+        containers.put(creationStatus, containerStatus);
+        if (creationStatus.getContainerId() != null) {
+            byContainerId.put(creationStatus.getContainerId(), creationStatus);
+        }
+        if (creationStatus.getContainerName() != null) {
+            byContainerName.put(creationStatus.getContainerName(), creationStatus);
+        }
+        index(creationStatus, containerStatus);
+    }
+
+    public synchronized ContainerStatus remove(ContainerCreationStatus creationStatus) {
+        ContainerStatus containerStatus = containers.remove(creationStatus);
+        if (containerStatus != null) {
+            byContainerId.remove(creationStatus.getContainerId(), creationStatus);
+            byContainerName.remove(creationStatus.getContainerName(), creationStatus);
+            byState.get(states.remove(creationStatus)).remove(creationStatus);
+        }
+        return containerStatus;
+    }
+
+    /**
+     * Finds a container by its id or its name, a node knows one or the other depending on the container client.
+     */
+    public synchronized Optional<Entry<ContainerCreationStatus, ContainerStatus>> find(String containerIdOrName) {
+        if (containerIdOrName == null) {
+            return Optional.empty();
+        }
+        ContainerCreationStatus creationStatus = byContainerName.get(containerIdOrName);
+        if (creationStatus == null) {
+            creationStatus = byContainerId.get(containerIdOrName);
+        }
+        return Optional.ofNullable(creationStatus).map(this::entry);
+    }
+
+    public synchronized void markStarted(ContainerCreationStatus creationStatus, long timeStarted) {
+        update(creationStatus, containerStatus -> containerStatus.setTimeStarted(Optional.of(timeStarted)));
+    }
+
+    public synchronized void markRegistered(ContainerCreationStatus creationStatus, DockerSeleniumRemoteProxy proxy) {
+        update(creationStatus, containerStatus -> containerStatus.setProxy(Optional.of(proxy)));
+    }
+
+    public synchronized void markShuttingDown(ContainerCreationStatus creationStatus) {
+        update(creationStatus, containerStatus -> containerStatus.setShuttingDown(true));
+    }
+
+    /**
+     * @return the containers in any of the given states, oldest first within each state.
+     */
+    public synchronized List<Entry<ContainerCreationStatus, ContainerStatus>> inState(State... states) {
+        List<Entry<ContainerCreationStatus, ContainerStatus>> entries = new ArrayList<>();
+        for (State state : states) {
+            byState.get(state).forEach(creationStatus -> entries.add(entry(creationStatus)));
+        }
+        return entries;
+    }
+
+    public synchronized int count(State state) {
+        return byState.get(state).size();
+    }
+
+    public int size() {
+        return containers.size();
+    }
+
+    /**
+     * @return a read only view of all the containers.
+     */
+    public Map<ContainerCreationStatus, ContainerStatus> asMap() {
+        return Collections.unmodifiableMap(containers);
+    }
+
+    private void update(ContainerCreationStatus creationStatus, Consumer<ContainerStatus> change) {
+        ContainerStatus containerStatus = containers.get(creationStatus);
+        if (containerStatus == null) {
+            return;
+        }
+        change.accept(containerStatus);
+        byState.get(states.get(creationStatus)).remove(creationStatus);
+        index(creationStatus, containerStatus);
+    }
+
+    private void index(ContainerCreationStatus creationStatus, ContainerStatus containerStatus) {
+        State state = stateOf(containerStatus);
+        states.put(creationStatus, state);
+        byState.get(state).add(creationStatus);
+    }
+
+    private Entry<ContainerCreationStatus, ContainerStatus> entry(ContainerCreationStatus creationStatus) {
+        return new SimpleImmutableEntry<>(creationStatus, containers.get(creationStatus));
+    }
+
+    /*
+        A node may register before the container is seen running, such a container is still checked for its start.
+     */
+    private static State stateOf(ContainerStatus containerStatus) {
+        if (containerStatus.isShuttingDown()) {
+            return State.SHUTTING_DOWN;
+        }
+        if (!containerStatus.isStarted()) {
+            return State.CREATED;
+        }
+        return containerStatus.getProxy().isPresent() ? State.REGISTERED : State.STARTED;
+    }
+}
@@ -52,8 +52,11 @@ import de.zalando.ep.zalenium.container.ContainerFactory;
 import de.zalando.ep.zalenium.container.swarm.SwarmUtilities;
 import de.zalando.ep.zalenium.dashboard.DashboardCollection;
 import de.zalando.ep.zalenium.dashboard.TestInformation;
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
 import de.zalando.ep.zalenium.matcher.DockerSeleniumCapabilityMatcher;
-import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+import de.zalando.ep.zalenium.prometheus.SessionStartPhases;
+import de.zalando.ep.zalenium.registry.ZaleniumRegistry;
+import de.zalando.ep.zalenium.simulation.SessionTraceRecorder;
 import de.zalando.ep.zalenium.util.CommonProxyUtilities;
 import de.zalando.ep.zalenium.util.Environment;
 import de.zalando.ep.zalenium.util.GoogleAnalyticsApi;
@@ -92,7 +95,7 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
     private boolean videoRecordingEnabledConfigured = false;
     private boolean cleaningUp;
     private boolean cleaningUpBeforeNextSession;
-    private ContainerClient containerClient = ContainerFactory.getContainerClient();
+    private ContainerClient containerClient;
     private int amountOfExecutedTests;
     private long maxTestIdleTimeSecs;
     private String testBuild;
@@ -101,12 +104,24 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
     private GoogleAnalyticsApi ga = new GoogleAnalyticsApi();
     private CapabilityMatcher capabilityHelper;
     private long lastCommandTime = 0;
+    // Commands of a session arrive on different request threads.
+    private final AtomicBoolean firstCommandPending = new AtomicBoolean(false);
+    private volatile long sessionCreatedTime = 0;
     private long cleanupStartedTime = 0;
     private AtomicBoolean timedOut = new AtomicBoolean(false);
     private long timeRegistered = System.currentTimeMillis();
 
     public DockerSeleniumRemoteProxy(RegistrationRequest request, GridRegistry registry) {
+        this(request, registry, ContainerFactory.getContainerClient());
+    }
+
+    /**
+     * Creates a node that reaches its container through the given client instead of the one of the hub.
+     */
+    public DockerSeleniumRemoteProxy(RegistrationRequest request, GridRegistry registry,
+                                     ContainerClient containerClient) {
         super(request, registry);
+        this.containerClient = containerClient;
         try {
             this.amountOfExecutedTests = 0;
             readEnvVars();
@@ -273,25 +288,18 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
     }
 
     private long getConfiguredIdleTimeout(Map<String, Object> requestedCapability) {
-        long configuredIdleTimeout;
-        try {
-            Object idleTimeout = requestedCapability.getOrDefault(ZaleniumCapabilityType.IDLE_TIMEOUT, DEFAULT_MAX_TEST_IDLE_TIME_SECS);
-            configuredIdleTimeout = Long.valueOf(String.valueOf(idleTimeout));
-        } catch (Exception e) {
-            configuredIdleTimeout = DEFAULT_MAX_TEST_IDLE_TIME_SECS;
-            LOGGER.warn(e.toString());
-            LOGGER.debug(e.toString(), e);
-        }
-        if (configuredIdleTimeout <= 0) {
-            configuredIdleTimeout = DEFAULT_MAX_TEST_IDLE_TIME_SECS;
-        }
-        return configuredIdleTimeout;
+        Long idleTimeout = CanonicalCapabilities.of(requestedCapability).getIdleTimeout();
+        return idleTimeout == null ? DEFAULT_MAX_TEST_IDLE_TIME_SECS : idleTimeout;
     }
 
     @Override
     public void beforeCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
         String currentName = configureThreadName();
         ensureTestInformation(session);
+        if (firstCommandPending.compareAndSet(true, false)) {
+            SessionStartPhases.getInstance().firstCommand(sessionCreatedTime, System.currentTimeMillis());
+            SessionTraceRecorder.getInstance().firstCommand(session.getRequestedCapabilities());
+        }
         super.beforeCommand(session, request, response);
         LOGGER.debug("lastCommand: {} - executing...", request.getMethod(), request.getPathInfo());
         if (request instanceof WebDriverRequest && "POST".equalsIgnoreCase(request.getMethod())) {
@@ -345,6 +353,9 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         if (request instanceof WebDriverRequest && "POST".equalsIgnoreCase(request.getMethod())) {
             WebDriverRequest seleniumRequest = (WebDriverRequest) request;
             if (RequestType.START_SESSION.equals(seleniumRequest.getRequestType())) {
+                if (getRegistry() instanceof ZaleniumRegistry) {
+                    ((ZaleniumRegistry) getRegistry()).externalKeyAssigned(session);
+                }
                 ExternalSessionKey externalKey = Optional.ofNullable(session.getExternalKey())
                         .orElse(new ExternalSessionKey("[No external key present]"));
                 LOGGER.debug(String.format("Test session started with internal key %s and external key %s assigned to remote %s.",
@@ -353,6 +364,9 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
                         getId()));
                 LOGGER.debug("Test session started with internal key {} and external key {} assigned to remote.",
                         session.getInternalKey(), externalKey);
+                sessionCreatedTime = System.currentTimeMillis();
+                SessionStartPhases.getInstance().sessionCreated(getId(), sessionCreatedTime);
+                firstCommandPending.set(true);
                 videoRecording(DockerSeleniumContainerAction.START_RECORDING);
             }
         }
@@ -374,20 +388,21 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
 
 
         String browserName = requestedCapability.get(CapabilityType.BROWSER_NAME).toString();
-        testName = getCapability(requestedCapability, ZaleniumCapabilityType.TEST_NAME, "");
+        CanonicalCapabilities requested = CanonicalCapabilities.of(requestedCapability);
+        CanonicalCapabilities node = CanonicalCapabilities.ofNode(session.getSlot().getCapabilities());
+        testName = Optional.ofNullable(requested.getTestName()).orElse("");
 
         if (testName.isEmpty()) {
             testName = seleniumSessionId;
         }
-        testBuild = getCapability(requestedCapability, ZaleniumCapabilityType.BUILD_NAME, "");
-        if (requestedCapability.containsKey(ZaleniumCapabilityType.RECORD_VIDEO)) {
-            boolean videoRecording = Boolean.parseBoolean(getCapability(requestedCapability, ZaleniumCapabilityType.RECORD_VIDEO, "true"));
-            setVideoRecordingEnabledSession(videoRecording);
+        testBuild = Optional.ofNullable(requested.getBuildName()).orElse("");
+        if (requested.getRecordVideo() != null) {
+            setVideoRecordingEnabledSession(requested.getRecordVideo());
         }
-        String testFileNameTemplate = getCapability(requestedCapability, ZaleniumCapabilityType.TEST_FILE_NAME_TEMPLATE, "");
-        String screenResolution = getCapability(session.getSlot().getCapabilities(), ZaleniumCapabilityType.SCREEN_RESOLUTION, "N/A");
+        String testFileNameTemplate = Optional.ofNullable(requested.getTestFileNameTemplate()).orElse("");
+        String screenResolution = Optional.ofNullable(node.getScreenResolution()).orElse("N/A");
         String browserVersion = getCapability(session.getSlot().getCapabilities(), CapabilityType.VERSION, "");
-        String timeZone = getCapability(session.getSlot().getCapabilities(), ZaleniumCapabilityType.TIME_ZONE, "N/A");
+        String timeZone = Optional.ofNullable(node.getTimeZoneId()).orElse("N/A");
         testInformation = new TestInformation.TestInformationBuilder()
                 .withTestName(testName)
                 .withSeleniumSessionId(seleniumSessionId)
@@ -2,7 +2,6 @@ package de.zalando.ep.zalenium.proxy;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,7 +27,8 @@ import com.google.common.annotations.VisibleForTesting;
 import de.zalando.ep.zalenium.container.ContainerClient;
 import de.zalando.ep.zalenium.container.ContainerCreationStatus;
 import de.zalando.ep.zalenium.container.ContainerFactory;
-import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+import de.zalando.ep.zalenium.container.ContainerTerminationListener;
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
 import de.zalando.ep.zalenium.util.Environment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,7 +67,8 @@ public class DockeredSeleniumStarter {
     private static final int UPPER_PORT_BOUNDARY = 49999;
     private static final ContainerClient defaultContainerClient = ContainerFactory.getContainerClient();
     private static final Environment defaultEnvironment = new Environment();
-    private static final List<Integer> allocatedPorts = Collections.synchronizedList(new ArrayList<>());
+    // The noVNC and VNC ports are derived from the node port, in ranges that do not overlap with it.
+    private static final PortAllocator portAllocator = new PortAllocator(LOWER_PORT_BOUNDARY, UPPER_PORT_BOUNDARY);
     private static final String[] HTTP_PROXY_ENV_VARS = {
             "zalenium_http_proxy",
             "zalenium_https_proxy",
@@ -87,11 +88,24 @@ public class DockeredSeleniumStarter {
     private static Map<String, String> zaleniumProxyVars = new HashMap<>();
     private static String hubIpAddress = null;
     private static String seleniumNodeHost = DEFAULT_SELENIUM_NODE_HOST;
+    // Null when the containers are started through the container client of the hub
+    private final ContainerClient ownContainerClient;
 
     static {
         readConfigurationFromEnvVariables();
     }
 
+    public DockeredSeleniumStarter() {
+        this(null);
+    }
+
+    /**
+     * Starts the containers through the given client instead of the one of the hub, e.g. a simulated one.
+     */
+    public DockeredSeleniumStarter(ContainerClient containerClient) {
+        this.ownContainerClient = containerClient;
+    }
+
     /*
      * Reading configuration values from the env variables, if a value was not provided it falls back to defaults.
      */
@@ -209,9 +223,9 @@ public class DockeredSeleniumStarter {
         DockeredSeleniumStarter.browserTimeout = browserTimeout < 0 ? DEFAULT_SEL_BROWSER_TIMEOUT_SECS : browserTimeout;
     }
 
-    private static String getLatestDownloadedImage(String dockerSeleniumImageName) {
+    private static String getLatestDownloadedImage(ContainerClient client, String dockerSeleniumImageName) {
         if (latestDownloadedImage == null) {
-            latestDownloadedImage = containerClient.getLatestDownloadedImage(dockerSeleniumImageName);
+            latestDownloadedImage = client.getLatestDownloadedImage(dockerSeleniumImageName);
         }
         return latestDownloadedImage;
     }
@@ -257,11 +271,10 @@ public class DockeredSeleniumStarter {
 
 
     public ContainerCreationStatus startDockerSeleniumContainer(Map<String, Object> requestedCapability) {
-        // Check and configure specific screen resolution capabilities when they have been passed in the test config.
-        Dimension screenSize = getConfiguredScreenResolutionFromCapabilities(requestedCapability);
-
-        // Check and configure time zone capabilities when they have been passed in the test config.
-        TimeZone timeZone = getConfiguredTimeZoneFromCapabilities(requestedCapability);
+        // Screen resolution and time zone passed in the test config, parsed once per request.
+        CanonicalCapabilities capabilities = CanonicalCapabilities.of(requestedCapability);
+        Dimension screenSize = Optional.ofNullable(capabilities.getScreenSize()).orElse(getConfiguredScreenSize());
+        TimeZone timeZone = Optional.ofNullable(capabilities.getTimeZone()).orElse(getConfiguredTimeZone());
 
         ContainerCreationStatus containerCreationStatus = startDockerSeleniumContainer(timeZone, screenSize);
         if (containerCreationStatus.isCreated()) {
@@ -299,16 +312,26 @@ public class DockeredSeleniumStarter {
         String nodeRegisterCycle = String.valueOf(RandomUtils.nextInt(60, 90) * 1000);
         String seleniumNodeParams = getSeleniumNodeParameters();
         String seleniumNodeHost = getSeleniumNodeHost();
-        String latestImage = getLatestDownloadedImage(getDockerSeleniumImageName());
+        String latestImage = getLatestDownloadedImage(getContainerClient(), getDockerSeleniumImageName());
 
         int containerPort = LOWER_PORT_BOUNDARY;
-        if (containerClient instanceof DockerContainerClient || containerClient instanceof SwarmContainerClient) {
-            containerPort = findFreePortInRange();
+        if (allocatesPorts()) {
+            containerPort = portAllocator.allocate();
+            if (containerPort < 0) {
+                LOGGER.warn("All the ports between {} and {} are used, no container can be started.",
+                        LOWER_PORT_BOUNDARY, UPPER_PORT_BOUNDARY);
+                return new ContainerCreationStatus(false);
+            }
         }
         Map<String, String> envVars = buildEnvVars(effectiveTimeZone, effectiveScreenSize, hostIpAddress, sendAnonymousUsageInfo,
                 nodePolling, nodeRegisterCycle, seleniumNodeParams, seleniumNodeHost, containerPort);
 
-        return containerClient.createContainer(getContainerName(), latestImage, envVars, String.valueOf(containerPort));
+        ContainerCreationStatus containerCreationStatus = getContainerClient().createContainer(getContainerName(),
+                latestImage, envVars, String.valueOf(containerPort));
+        if (allocatesPorts() && (containerCreationStatus == null || !containerCreationStatus.isCreated())) {
+            portAllocator.release(containerPort);
+        }
+        return containerCreationStatus;
     }
 
     private Map<String, String> buildEnvVars(TimeZone timeZone, Dimension screenSize, String hostIpAddress,
@@ -358,94 +381,56 @@ public class DockeredSeleniumStarter {
     }
 
     public boolean containerHasStarted(ContainerCreationStatus creationStatus) {
-        return containerClient.isReady(creationStatus);
+        return getContainerClient().isReady(creationStatus);
     }
 
     public boolean containerHasFinished(ContainerCreationStatus creationStatus) {
-        return containerClient.isTerminated(creationStatus);
+        return getContainerClient().isTerminated(creationStatus);
     }
 
     public void stopContainer(String containerId) {
-        containerClient.stopContainer(containerId);
+        getContainerClient().stopContainer(containerId);
     }
 
-    /*
-        This method will search for a screenResolution capability to be passed when creating a docker-selenium node.
-    */
-    private Dimension getConfiguredScreenResolutionFromCapabilities(Map<String, Object> requestedCapability) {
-        Dimension screenSize = getConfiguredScreenSize();
-        List<String> screenResolutionNames = Arrays.asList(ZaleniumCapabilityType.SCREEN_RESOLUTION,
-                ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, ZaleniumCapabilityType.RESOLUTION,
-                ZaleniumCapabilityType.RESOLUTION_NO_PREFIX, ZaleniumCapabilityType.SCREEN_RESOLUTION_DASH,
-                ZaleniumCapabilityType.SCREEN_RESOLUTION_DASH_NO_PREFIX);
-        for (String screenResolutionName : screenResolutionNames) {
-            if (requestedCapability.containsKey(screenResolutionName)) {
-                String screenResolution = requestedCapability.get(screenResolutionName).toString();
-                try {
-                    int screenWidth = Integer.parseInt(screenResolution.split("x")[0]);
-                    int screenHeight = Integer.parseInt(screenResolution.split("x")[1]);
-                    if (screenWidth > 0 && screenHeight > 0) {
-                        screenSize = new Dimension(screenWidth, screenHeight);
-                    } else {
-                        LOGGER.debug("One of the values provided for screenResolution is negative, " +
-                                "defaults will be used. Passed value -> " + screenResolution);
-                    }
-                } catch (Exception e) {
-                    LOGGER.debug("Values provided for screenResolution are not valid integers or " +
-                            "either the width or the height is missing, defaults will be used. Passed value -> "
-                            + screenResolution);
-                }
-            }
-        }
-        return screenSize;
+    /**
+     * Notifies the listener about terminated containers, when the container client supports it.
+     *
+     * @return true when the listener will be notified, false when the containers have to be polled.
+     */
+    public boolean watchContainers(ContainerTerminationListener listener) {
+        return getContainerClient().watchContainers(listener);
     }
 
-    /*
-    This method will search for a tz capability to be passed when creating a docker-selenium node.
-    */
-    private TimeZone getConfiguredTimeZoneFromCapabilities(Map<String, Object> requestedCapability) {
-        List<String> timeZoneCapabilities = Arrays.asList(ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX,
-                ZaleniumCapabilityType.TIME_ZONE);
-        TimeZone timeZone = getConfiguredTimeZone();
-        for (String timeZoneCapability : timeZoneCapabilities) {
-            if (requestedCapability.containsKey(timeZoneCapability)) {
-                String timeZoneFromCapabilities = requestedCapability.get(timeZoneCapability).toString();
-                if (Arrays.asList(TimeZone.getAvailableIDs()).contains(timeZoneFromCapabilities)) {
-                    timeZone = TimeZone.getTimeZone(timeZoneFromCapabilities);
-                }
-            }
-        }
+    /**
+     * Stops notifying the listener given to {@link #watchContainers(ContainerTerminationListener)}.
+     */
+    public void stopWatching() {
+        getContainerClient().stopWatching();
+    }
 
-        return timeZone;
+    /**
+     * Releases the port of a container that is gone, so another container can use it.
+     */
+    public void releasePort(ContainerCreationStatus creationStatus) {
+        if (!allocatesPorts() || creationStatus.getNodePort() == null) {
+            return;
+        }
+        try {
+            portAllocator.release(Integer.parseInt(creationStatus.getNodePort()));
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Container {} has no valid port to release.", creationStatus.getContainerName(), e);
+        }
     }
 
     /*
-            Method adapted from https://gist.github.com/vorburger/3429822
-         */
-    private int findFreePortInRange() {
-        /*
-            If the list size is this big (~9800), it means that almost all ports have been used, but
-            probably many have been released already. The list is cleared so ports can be reused.
-            If by any chance one of the first allocated ports is still used, it will be skipped by the
-            existing validation.
-         */
-        synchronized (allocatedPorts){
-            if (allocatedPorts.size() > (UPPER_PORT_BOUNDARY - LOWER_PORT_BOUNDARY - 200)) {
-                allocatedPorts.clear();
-                LOGGER.info("Cleaning allocated ports list.");
-            }
-            for (int portNumber = LOWER_PORT_BOUNDARY; portNumber <= UPPER_PORT_BOUNDARY; portNumber++) {
-                int noVncPortNumber = portNumber + NO_VNC_PORT_GAP;
-                int vncPortNumber = portNumber + VNC_PORT_GAP;
-                if (!allocatedPorts.contains(portNumber) && !allocatedPorts.contains(noVncPortNumber)
-                        && !allocatedPorts.contains(vncPortNumber)) {
-                    allocatedPorts.add(portNumber);
-                    allocatedPorts.add(noVncPortNumber);
-                    allocatedPorts.add(vncPortNumber);
-                    return portNumber;
-                }
-            }
-        }
-        return -1;
+        Containers in Kubernetes get their own IP address, so they all use the same port.
+     */
+    private boolean allocatesPorts() {
+        ContainerClient client = getContainerClient();
+        return client instanceof DockerContainerClient || client instanceof SwarmContainerClient;
+    }
+
+    private ContainerClient getContainerClient() {
+        return Optional.ofNullable(ownContainerClient).orElse(containerClient);
     }
 }
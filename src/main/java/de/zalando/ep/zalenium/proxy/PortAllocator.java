@@ -0,0 +1,75 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.BitSet;
+
+import io.prometheus.client.Gauge;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Hands out the ports of the docker-selenium containers from a fixed range, and takes them back when the containers
+ * are gone. Allocated ports are kept in a bit set, and the search for a free port starts right after the last
+ * allocated one, like a ring. Ports are then reused only after the rest of the range was handed out, and the search
+ * usually stops at the first port it looks at.
+ */
+@ThreadSafe
+@SuppressWarnings("WeakerAccess")
+public class PortAllocator {
+
+    private static final Gauge seleniumContainerPortsAllocated = Gauge.build()
+            .name("selenium_container_ports_allocated_ratio")
+            .help("The fraction of the docker-selenium container ports that are allocated.")
+            .register();
+
+    private final int lowerPort;
+    private final int size;
+    private final BitSet allocated;
+    private int allocatedCount;
+    private int cursor;
+
+    public PortAllocator(int lowerPort, int upperPort) {
+        if (upperPort < lowerPort) {
+            throw new IllegalArgumentException(String.format("Port range %s-%s is empty", lowerPort, upperPort));
+        }
+        this.lowerPort = lowerPort;
+        this.size = upperPort - lowerPort + 1;
+        this.allocated = new BitSet(size);
+    }
+
+    /**
+     * @return a free port, or -1 when all the ports of the range are allocated.
+     */
+    public synchronized int allocate() {
+        if (allocatedCount == size) {
+            return -1;
+        }
+        int index = allocated.nextClearBit(cursor);
+        if (index >= size) {
+            index = allocated.nextClearBit(0);
+        }
+        allocated.set(index);
+        allocatedCount++;
+        cursor = (index + 1) % size;
+        seleniumContainerPortsAllocated.set(getUtilization());
+        return lowerPort + index;
+    }
+
+    /**
+     * Makes the port available again. Ports outside of the range or not allocated are ignored.
+     */
+    public synchronized void release(int port) {
+        int index = port - lowerPort;
+        if (index < 0 || index >= size || !allocated.get(index)) {
+            return;
+        }
+        allocated.clear(index);
+        allocatedCount--;
+        seleniumContainerPortsAllocated.set(getUtilization());
+    }
+
+    /**
+     * @return the fraction of the ports that are allocated, between 0 and 1.
+     */
+    public synchronized double getUtilization() {
+        return (double) allocatedCount / size;
+    }
+}
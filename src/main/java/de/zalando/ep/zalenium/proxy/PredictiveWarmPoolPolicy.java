@@ -0,0 +1,161 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.zalando.ep.zalenium.matcher.CapabilityShape;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Sizes the pool of started containers from the recent demand, so bursts find a warm container instead of waiting
+ * for one to start.
+ *
+ * For each capability shape, the arrival rate is an exponentially weighted moving average over the last minutes and
+ * the session duration an exponentially weighted moving average of the ended sessions. Warm containers are started
+ * with the default screen resolution and time zone, so only the shapes that do not ask for other ones are sized
+ * together, as an M/M/c queue: the pool is the smallest one where the 95th percentile of the queue wait stays under
+ * the target, according to the Erlang C formula. Requests for other shapes keep starting containers on demand.
+ *
+ * The pool grows as soon as the demand does, and shrinks only after the demand has stayed lower during the scale
+ * down delay, to avoid stopping containers between two bursts.
+ */
+@ThreadSafe
+@SuppressWarnings("WeakerAccess")
+public class PredictiveWarmPoolPolicy implements WarmPoolPolicy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PredictiveWarmPoolPolicy.class.getName());
+    // Time constant of the arrival rate average.
+    private static final long RATE_WINDOW = TimeUnit.MINUTES.toMillis(5);
+    private static final double DURATION_WEIGHT = 0.2;
+    private static final double QUEUE_WAIT_PERCENTILE = 0.95;
+    // Shapes with less arrivals than this in a rate window are forgotten.
+    private static final double MIN_ARRIVALS = 0.01;
+    private static final int MAX_CONTAINERS = 10000;
+
+    private final long targetQueueWait;
+    private final long scaleDownDelay;
+    private final Map<CapabilityShape, ShapeEstimate> estimates = new HashMap<>();
+    private long containersToKeep;
+    private long lowerDemandSince = -1;
+
+    /**
+     * @param targetQueueWait milliseconds the 95th percentile of the queue wait should stay under.
+     * @param scaleDownDelay  milliseconds the demand has to stay lower before the pool shrinks.
+     */
+    public PredictiveWarmPoolPolicy(long targetQueueWait, long scaleDownDelay) {
+        this.targetQueueWait = targetQueueWait;
+        this.scaleDownDelay = scaleDownDelay;
+    }
+
+    @Override
+    public synchronized void requestArrived(Map<String, Object> requestedCapabilities, long now) {
+        estimates.computeIfAbsent(CapabilityShape.fromCapabilities(requestedCapabilities), shape -> new ShapeEstimate())
+                .arrived(now);
+    }
+
+    @Override
+    public synchronized void sessionEnded(Map<String, Object> requestedCapabilities, long durationMillis, long now) {
+        ShapeEstimate estimate = estimates.get(CapabilityShape.fromCapabilities(requestedCapabilities));
+        if (estimate != null) {
+            estimate.sessionEnded(durationMillis);
+        }
+    }
+
+    @Override
+    public synchronized long getContainersToKeep(long minContainers, long now) {
+        double arrivalsPerMilli = 0;
+        double busyContainers = 0;
+        Iterator<Map.Entry<CapabilityShape, ShapeEstimate>> iterator = estimates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<CapabilityShape, ShapeEstimate> entry = iterator.next();
+            double rate = entry.getValue().getArrivalsPerMilli(now);
+            if (rate * RATE_WINDOW < MIN_ARRIVALS) {
+                iterator.remove();
+                continue;
+            }
+            if (servedByWarmContainers(entry.getKey()) && entry.getValue().meanDuration > 0) {
+                arrivalsPerMilli += rate;
+                busyContainers += rate * entry.getValue().meanDuration;
+            }
+        }
+
+        long needed = 0;
+        if (arrivalsPerMilli > 0) {
+            needed = containersFor(busyContainers, busyContainers / arrivalsPerMilli, targetQueueWait);
+        }
+        long target = Math.max(minContainers, needed);
+        if (target >= containersToKeep) {
+            if (target > containersToKeep) {
+                LOGGER.debug("Keeping {} containers started for {} busy containers on average.", target,
+                        String.format("%.2f", busyContainers));
+            }
+            containersToKeep = target;
+            lowerDemandSince = -1;
+        } else if (lowerDemandSince < 0) {
+            lowerDemandSince = now;
+        } else if (now - lowerDemandSince >= scaleDownDelay) {
+            LOGGER.debug("Demand went down, keeping {} containers started instead of {}.", target, containersToKeep);
+            containersToKeep = target;
+            lowerDemandSince = -1;
+        }
+        return containersToKeep;
+    }
+
+    /*
+        Smallest amount of containers for which P(wait > targetWait) <= 1 - QUEUE_WAIT_PERCENTILE, with the Erlang C
+        formula. The Erlang B value is computed incrementally, which is numerically stable for large pools.
+     */
+    static long containersFor(double offeredLoad, double meanDuration, long targetWait) {
+        double erlangB = 1;
+        for (int containers = 1; containers <= MAX_CONTAINERS; containers++) {
+            erlangB = offeredLoad * erlangB / (containers + offeredLoad * erlangB);
+            if (containers <= offeredLoad) {
+                continue;
+            }
+            double probabilityToWait = containers * erlangB / (containers - offeredLoad * (1 - erlangB));
+            double probabilityToWaitLonger = probabilityToWait
+                    * Math.exp(-(containers - offeredLoad) * targetWait / meanDuration);
+            if (probabilityToWaitLonger <= 1 - QUEUE_WAIT_PERCENTILE) {
+                return containers;
+            }
+        }
+        return MAX_CONTAINERS;
+    }
+
+    /*
+        Warm containers are started without capabilities, so they only serve requests that do not ask for a screen
+        resolution or time zone.
+     */
+    private static boolean servedByWarmContainers(CapabilityShape shape) {
+        return shape.getScreenResolution() == null && shape.getTimeZone() == null;
+    }
+
+    private static final class ShapeEstimate {
+        private double arrivalsPerMilli;
+        private long lastArrival;
+        private double meanDuration;
+
+        /*
+            Each arrival adds 1 / RATE_WINDOW to a rate that decays exponentially with the time constant RATE_WINDOW,
+            which averages the arrivals of the last minutes without keeping them.
+         */
+        private void arrived(long now) {
+            arrivalsPerMilli = getArrivalsPerMilli(now) + 1.0 / RATE_WINDOW;
+            lastArrival = now;
+        }
+
+        private double getArrivalsPerMilli(long now) {
+            return arrivalsPerMilli * Math.exp(-(double) Math.max(0, now - lastArrival) / RATE_WINDOW);
+        }
+
+        private void sessionEnded(long durationMillis) {
+            meanDuration = meanDuration == 0 ? durationMillis :
+                    meanDuration + DURATION_WEIGHT * (durationMillis - meanDuration);
+        }
+    }
+}
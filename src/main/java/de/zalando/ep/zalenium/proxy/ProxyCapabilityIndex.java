@@ -0,0 +1,138 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.selenium.Platform;
+
+import de.zalando.ep.zalenium.matcher.CapabilityShape;
+
+/**
+ * Index of the registered proxies keyed by the {@link CapabilityShape} of their test slots, so a new session request
+ * only needs to visit the proxies that could possibly serve it.
+ *
+ * Only docker-selenium proxies are bucketed, since their matching rules are known. Any other proxy (cloud providers,
+ * nodes registered by hand) is always returned as a candidate and left to its own capability matcher.
+ *
+ * The index is conservative: a bucket is skipped only when the {@link DockerSeleniumRemoteProxy} capability matcher
+ * would reject the request for sure.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ProxyCapabilityIndex {
+
+    /*
+        Same ordering as ProxySet#getSorted(), least used proxies first and then the ones idle for longer.
+     */
+    static final Comparator<RemoteProxy> RESOURCE_USAGE_COMPARATOR = Comparator
+            .comparingDouble((RemoteProxy proxy) -> proxy.getResourceUsageInPercent())
+            .thenComparingLong(RemoteProxy::getLastSessionStart);
+
+    private final Map<CapabilityShape, Set<RemoteProxy>> proxiesByShape = new ConcurrentHashMap<>();
+    private final Map<RemoteProxy, Set<CapabilityShape>> shapesByProxy = new ConcurrentHashMap<>();
+    private final Set<RemoteProxy> unindexedProxies = ConcurrentHashMap.newKeySet();
+
+    public void add(RemoteProxy proxy) {
+        Set<CapabilityShape> shapes = getShapes(proxy);
+        if (shapes.isEmpty()) {
+            unindexedProxies.add(proxy);
+            return;
+        }
+        shapesByProxy.put(proxy, shapes);
+        shapes.forEach(shape -> proxiesByShape.computeIfAbsent(shape, s -> ConcurrentHashMap.newKeySet()).add(proxy));
+    }
+
+    public void remove(RemoteProxy proxy) {
+        unindexedProxies.remove(proxy);
+        Set<CapabilityShape> shapes = shapesByProxy.remove(proxy);
+        if (shapes == null) {
+            return;
+        }
+        for (CapabilityShape shape : shapes) {
+            proxiesByShape.computeIfPresent(shape, (s, proxies) -> {
+                proxies.remove(proxy);
+                return proxies.isEmpty() ? null : proxies;
+            });
+        }
+    }
+
+    /**
+     * Returns the proxies that could serve the requested capabilities, sorted by resource usage.
+     */
+    public List<RemoteProxy> getCandidates(Map<String, Object> requestedCapability) {
+        CapabilityShape requestedShape = CapabilityShape.fromCapabilities(requestedCapability);
+        Set<RemoteProxy> candidates = new LinkedHashSet<>(unindexedProxies);
+        proxiesByShape.forEach((shape, proxies) -> {
+            if (canServe(shape, requestedShape)) {
+                candidates.addAll(proxies);
+            }
+        });
+        List<RemoteProxy> sorted = new ArrayList<>(candidates);
+        sorted.sort(RESOURCE_USAGE_COMPARATOR);
+        return sorted;
+    }
+
+    public int size() {
+        return shapesByProxy.size() + unindexedProxies.size();
+    }
+
+    public Set<CapabilityShape> getShapes() {
+        return Collections.unmodifiableSet(proxiesByShape.keySet());
+    }
+
+    private Set<CapabilityShape> getShapes(RemoteProxy proxy) {
+        Set<CapabilityShape> shapes = new LinkedHashSet<>();
+        if (!(proxy instanceof DockerSeleniumRemoteProxy) || proxy.getTestSlots() == null) {
+            return shapes;
+        }
+        for (TestSlot testSlot : proxy.getTestSlots()) {
+            shapes.add(CapabilityShape.fromNodeCapabilities(testSlot.getCapabilities()));
+        }
+        return shapes;
+    }
+
+    /*
+        Mirrors the checks done by DockerSeleniumCapabilityMatcher, returning false only when they would fail.
+     */
+    static boolean canServe(CapabilityShape nodeShape, CapabilityShape requestedShape) {
+        if (requestedShape.getBrowserName() != null
+                && !requestedShape.getBrowserName().equals(nodeShape.getBrowserName())) {
+            return false;
+        }
+        if (requestedShape.getVersion() != null && !requestedShape.getVersion().equals(nodeShape.getVersion())) {
+            return false;
+        }
+        // Android is part of the Linux family, but it should not get a request for Linux.
+        if (Platform.LINUX.equals(requestedShape.getPlatform()) && Platform.ANDROID.equals(nodeShape.getPlatform())) {
+            return false;
+        }
+        String defaultScreenResolution = String.format("%sx%s",
+                DockeredSeleniumStarter.getConfiguredScreenSize().getWidth(),
+                DockeredSeleniumStarter.getConfiguredScreenSize().getHeight());
+        if (!isMatchingOrDefault(nodeShape.getScreenResolution(), requestedShape.getScreenResolution(),
+                defaultScreenResolution)) {
+            return false;
+        }
+        String defaultTimeZone = DockeredSeleniumStarter.getConfiguredTimeZone().getID();
+        return isMatchingOrDefault(nodeShape.getTimeZone(), requestedShape.getTimeZone(), defaultTimeZone);
+    }
+
+    private static boolean isMatchingOrDefault(String nodeValue, String requestedValue, String defaultValue) {
+        if (nodeValue == null) {
+            // Unknown on the node, the capability matcher will decide.
+            return true;
+        }
+        if (requestedValue != null) {
+            return Objects.equals(nodeValue, requestedValue);
+        }
+        return defaultValue.equalsIgnoreCase(nodeValue);
+    }
+}
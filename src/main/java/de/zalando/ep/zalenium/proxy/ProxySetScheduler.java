@@ -0,0 +1,30 @@
+package de.zalando.ep.zalenium.proxy;
+
+/**
+ * Runs the background work of an {@link AutoStartProxySet}: the periodic check of the containers, the provisioning
+ * passes and the container creations. The proxy set runs it on its own threads by default, the
+ * {@link de.zalando.ep.zalenium.simulation.GridSimulator} runs it on a simulated clock instead.
+ */
+public interface ProxySetScheduler {
+
+    /**
+     * Starts running the check of the containers right away and then periodically, and the provisioning passes
+     * whenever they are signalled.
+     */
+    void start(Runnable containersCheck, Runnable provisioning);
+
+    /**
+     * Asks for a provisioning pass. Passes never run at the same time, and the signals sent while a pass is pending
+     * result in a single pass.
+     */
+    void signalProvisioning();
+
+    /**
+     * Runs a container creation. Several creations can run at the same time, and they do not wait for the passes.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException when the scheduler is stopped.
+     */
+    void createContainer(Runnable creation);
+
+    void stop();
+}
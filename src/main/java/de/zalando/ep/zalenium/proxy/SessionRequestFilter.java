@@ -1,74 +1,107 @@
-package de.zalando.ep.zalenium.proxy;
-
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import de.zalando.ep.zalenium.util.ProcessedCapabilities;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-@SuppressWarnings("WeakerAccess")
-public class SessionRequestFilter {
-
-    private static final Logger log = LoggerFactory.getLogger(SessionRequestFilter.class.getName());
-    private final Map<Integer, ProcessedCapabilities> processedCapabilitiesMap = new ConcurrentHashMap<>();
-    private int maxTimesToProcessRequest;
-
-    public SessionRequestFilter(int maxTimesToProcessRequest) {
-        this.maxTimesToProcessRequest = maxTimesToProcessRequest;
-    }
-
-    public boolean hasRequestBeenProcessed(Map<String, Object> requestedCapability) {
-        int requestedCapabilityHashCode = System.identityHashCode(requestedCapability);
-        ProcessedCapabilities processedCapability = processedCapabilitiesMap.get(requestedCapabilityHashCode);
-        
-        if (processedCapability != null) {
-            processedCapability.setLastProcessedTime(System.currentTimeMillis());
-            int processedTimes = processedCapability.getProcessedTimes() + 1;
-            processedCapability.setProcessedTimes(processedTimes);
-
-            if (processedTimes >= maxTimesToProcessRequest) {
-                processedCapability.setProcessedTimes(1);
-                log.info(String.format("Request has waited %s attempts for a node, something " +
-                        "went wrong with the previous attempts, creating a new node for %s.",
-                    maxTimesToProcessRequest, requestedCapability));
-                return false;
-            }
-
-            return true;
-        }
-
-        return false;
-    }
-    
-    public void requestHasBeenProcessed(Map<String, Object> desiredCapabilities) {
-        ProcessedCapabilities processedCapabilities = new ProcessedCapabilities(desiredCapabilities,
-                System.identityHashCode(desiredCapabilities));
-        processedCapabilitiesMap.put(processedCapabilities.getIdentityHashCode(), processedCapabilities);
-    }
-    
-    /**
-     * Notify the Session Request Filter that a Test Session has started for the given desiredCapabilities.
-     * 
-     * @param desiredCapabilities The desiredCapabilities to check
-     */
-    public void testSessionHasStarted(Map<String, Object> desiredCapabilities) {
-        int desiredCapabilityHashCode = System.identityHashCode(desiredCapabilities);
-        processedCapabilitiesMap.remove(desiredCapabilityHashCode);
-    }
-    
-    public void cleanProcessedCapabilities() {
-        /*
-            Cleaning processed capabilities to reduce the risk of having two objects with the same
-            identityHashCode after the garbage collector did its job.
-            Not a silver bullet solution, but should be good enough.
-         */
-        processedCapabilitiesMap.entrySet().stream().filter( cap -> {
-            long timeSinceLastProcess = System.currentTimeMillis() - cap.getValue().getLastProcessedTime();
-            long maximumLastProcessedTime = 1000 * 60;
-            return timeSinceLastProcess >= maximumLastProcessedTime;
-        })
-        // When you return null on a compute, it deletes the entry from the map
-        .forEach(cap -> processedCapabilitiesMap.compute(cap.getKey(), (hash, capability) -> null));
-    }
-}
+package de.zalando.ep.zalenium.proxy;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
+import de.zalando.ep.zalenium.util.ProcessedCapabilities;
+import io.prometheus.client.Histogram;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Keeps track of the containers started for the requests waiting for a node, by the request id assigned when the
+ * request was admitted, see {@link CanonicalCapabilities#getRequestId()}.
+ *
+ * Requests are kept in the order they were last processed, so the ones that were not processed for a while are
+ * expired from the head and a cleanup only visits the requests it removes. At most {@link #MAX_TRACKED_REQUESTS} are
+ * kept, the least recently processed ones are forgotten first when the queue is longer.
+ */
+@ThreadSafe
+@SuppressWarnings("WeakerAccess")
+public class SessionRequestFilter {
+
+    @VisibleForTesting
+    static final int MAX_TRACKED_REQUESTS = 10000;
+    private static final long MAXIMUM_LAST_PROCESSED_TIME = TimeUnit.MINUTES.toMillis(1);
+    private static final Histogram seleniumSessionRequestProvisioningAttempts = Histogram.build()
+            .name("selenium_session_request_provisioning_attempts")
+            .help("The number of containers started for a new session request until it got a session.")
+            .buckets(0, 1, 2, 3, 5, 10, 20, 30)
+            .register();
+
+    // In access order, the least recently processed request first.
+    private final Map<Long, ProcessedCapabilities> processedRequests =
+            new LinkedHashMap<Long, ProcessedCapabilities>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, ProcessedCapabilities> eldest) {
+                    return size() > MAX_TRACKED_REQUESTS;
+                }
+            };
+    private final Clock clock;
+
+    public SessionRequestFilter() {
+        this(Clock.systemUTC());
+    }
+
+    public SessionRequestFilter(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Records that a container was started for the request.
+     */
+    public synchronized void requestHasBeenProcessed(Map<String, Object> desiredCapabilities) {
+        long requestId = requestId(desiredCapabilities);
+        long now = clock.millis();
+        ProcessedCapabilities processedCapability = processedRequests.get(requestId);
+        if (processedCapability == null) {
+            processedRequests.put(requestId, new ProcessedCapabilities(requestId, now));
+        } else {
+            processedCapability.setLastProcessedTime(now);
+            processedCapability.setContainersStarted(processedCapability.getContainersStarted() + 1);
+        }
+    }
+
+    /**
+     * Notify the Session Request Filter that a Test Session has started for the given desiredCapabilities.
+     * 
+     * @param desiredCapabilities The desiredCapabilities to check
+     */
+    public void testSessionHasStarted(Map<String, Object> desiredCapabilities) {
+        ProcessedCapabilities processedCapability;
+        synchronized (this) {
+            processedCapability = processedRequests.remove(requestId(desiredCapabilities));
+        }
+        seleniumSessionRequestProvisioningAttempts.observe(
+                processedCapability == null ? 0 : processedCapability.getContainersStarted());
+    }
+
+    /**
+     * Forgets the requests that were not processed during the last minute, their containers either got a session
+     * or are not coming anymore.
+     */
+    public synchronized void cleanProcessedCapabilities() {
+        long now = clock.millis();
+        Iterator<ProcessedCapabilities> iterator = processedRequests.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getLastProcessedTime() < MAXIMUM_LAST_PROCESSED_TIME) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getTrackedRequests() {
+        return processedRequests.size();
+    }
+
+    private static long requestId(Map<String, Object> capabilities) {
+        return CanonicalCapabilities.of(capabilities).getRequestId();
+    }
+}
@@ -0,0 +1,106 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default {@link ProxySetScheduler}: a thread polls the containers, a single thread runs the provisioning passes and
+ * a bounded pool of threads creates the containers.
+ */
+class ThreadedProxySetScheduler implements ProxySetScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThreadedProxySetScheduler.class.getName());
+
+    private final long checkContainersInterval;
+
+    private final ThreadPoolExecutor containerStarter;
+
+    // Holds at most one element, so the signals sent while the provisioner is busy result in a single pass.
+    private final BlockingQueue<Boolean> provisioningSignal = new ArrayBlockingQueue<>(1);
+
+    private volatile boolean keepCheckingContainers = true;
+
+    private Thread poller;
+
+    private Thread provisioner;
+
+    ThreadedProxySetScheduler(long checkContainersInterval, int containerStartThreads) {
+        this.checkContainersInterval = checkContainersInterval;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        containerStarter = new ThreadPoolExecutor(containerStartThreads, containerStartThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "AutoStartProxySet container start " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        containerStarter.allowCoreThreadTimeOut(true);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stopCheckingContainers, "AutoStartProxySet stop checking containers."));
+    }
+
+    @Override
+    public synchronized void start(Runnable containersCheck, Runnable provisioning) {
+        provisioner = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    provisioningSignal.take();
+                    provisioning.run();
+                } catch (InterruptedException e) {
+                    LOGGER.debug("Stopping provisioning thread.", e);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "AutoStartProxySet provisioning");
+        provisioner.setDaemon(true);
+        provisioner.start();
+
+        poller = new Thread(() -> {
+            LOGGER.info("Starting poller.");
+            while (keepCheckingContainers) {
+                containersCheck.run();
+                try {
+                    Thread.sleep(checkContainersInterval);
+                } catch (InterruptedException e) {
+                    LOGGER.info("Stopping polling thread.");
+                    LOGGER.debug("Stopping polling thread.", e);
+                }
+            }
+        });
+        poller.setName("AutoStartProxyPoolPoller");
+        poller.start();
+    }
+
+    private void stopCheckingContainers() {
+        this.keepCheckingContainers = false;
+    }
+
+    @Override
+    public void signalProvisioning() {
+        provisioningSignal.offer(Boolean.TRUE);
+    }
+
+    @Override
+    public void createContainer(Runnable creation) {
+        containerStarter.execute(creation);
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopCheckingContainers();
+        if (poller != null) {
+            poller.interrupt();
+        }
+        if (provisioner != null) {
+            provisioner.interrupt();
+        }
+        containerStarter.shutdownNow();
+    }
+}
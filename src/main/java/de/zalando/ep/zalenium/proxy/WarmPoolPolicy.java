@@ -0,0 +1,41 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.Map;
+
+/**
+ * Decides how many docker-selenium containers {@link AutoStartProxySet} keeps started, whether they are used or
+ * not. Containers above that amount are stopped once they are idle, and requests that find no node still start a
+ * container on demand.
+ *
+ * The policy is asked on every containers check, and it is told about the new session requests and the sessions
+ * that ended, so it can follow the demand.
+ */
+@FunctionalInterface
+public interface WarmPoolPolicy {
+
+    /**
+     * @param minContainers the configured minimum, already limited by the maximum amount of containers.
+     * @param now           current time in milliseconds.
+     * @return the amount of containers to keep started.
+     */
+    long getContainersToKeep(long minContainers, long now);
+
+    /**
+     * Called for every new session request that docker-selenium can serve.
+     */
+    default void requestArrived(Map<String, Object> requestedCapabilities, long now) {
+    }
+
+    /**
+     * Called when a session started in a docker-selenium container ended.
+     */
+    default void sessionEnded(Map<String, Object> requestedCapabilities, long durationMillis, long now) {
+    }
+
+    /**
+     * @return a policy that keeps the configured minimum, regardless of the demand.
+     */
+    static WarmPoolPolicy fixed() {
+        return (minContainers, now) -> minContainers;
+    }
+}
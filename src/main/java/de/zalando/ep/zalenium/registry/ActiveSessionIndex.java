@@ -0,0 +1,82 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.grid.internal.ExternalSessionKey;
+import org.openqa.grid.internal.TestSession;
+
+/**
+ * Index of the active sessions by internal and external key, kept next to the
+ * {@link org.openqa.grid.internal.ActiveTestSessions} of the registry. Lookups do not lock and do not scan the
+ * sessions, they happen for every command forwarded to a node.
+ *
+ * The external key is only known once the node created the session. The Zalenium proxies report it through
+ * {@link #externalKeyAssigned(TestSession)} when the new session response comes back. Sessions of other proxies are
+ * indexed the first time they are looked up with it, only those are visited when a key is not found.
+ */
+class ActiveSessionIndex {
+
+    private final Map<String, TestSession> sessionsByInternalKey = new ConcurrentHashMap<>();
+    private final Map<ExternalSessionKey, TestSession> sessionsByExternalKey = new ConcurrentHashMap<>();
+    private final Set<TestSession> sessionsWithoutExternalKey = ConcurrentHashMap.newKeySet();
+
+    void add(TestSession session) {
+        sessionsByInternalKey.put(session.getInternalKey(), session);
+        if (session.getExternalKey() != null) {
+            sessionsByExternalKey.put(session.getExternalKey(), session);
+        } else {
+            sessionsWithoutExternalKey.add(session);
+        }
+    }
+
+    void remove(TestSession session) {
+        sessionsByInternalKey.remove(session.getInternalKey(), session);
+        sessionsWithoutExternalKey.remove(session);
+        if (session.getExternalKey() != null) {
+            sessionsByExternalKey.remove(session.getExternalKey(), session);
+        }
+    }
+
+    /**
+     * Indexes the session by the external key it got from the node, if it was not indexed yet.
+     */
+    void externalKeyAssigned(TestSession session) {
+        ExternalSessionKey externalKey = session.getExternalKey();
+        if (externalKey == null || !sessionsWithoutExternalKey.remove(session)) {
+            return;
+        }
+        sessionsByExternalKey.put(externalKey, session);
+        // Removed in the meantime, the entry would never be cleaned up otherwise.
+        if (sessionsByInternalKey.get(session.getInternalKey()) != session) {
+            sessionsByExternalKey.remove(externalKey, session);
+        }
+    }
+
+    TestSession findByInternalKey(String internalKey) {
+        return internalKey == null ? null : sessionsByInternalKey.get(internalKey);
+    }
+
+    TestSession findByExternalKey(ExternalSessionKey externalKey) {
+        if (externalKey == null) {
+            return null;
+        }
+        TestSession session = sessionsByExternalKey.get(externalKey);
+        if (session != null || sessionsWithoutExternalKey.isEmpty()) {
+            return session;
+        }
+        // Only the sessions whose proxy did not report the external key.
+        for (TestSession sessionWithoutExternalKey : sessionsWithoutExternalKey) {
+            if (externalKey.equals(sessionWithoutExternalKey.getExternalKey())) {
+                externalKeyAssigned(sessionWithoutExternalKey);
+                return sessionsByExternalKey.get(externalKey);
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return sessionsByInternalKey.size();
+    }
+}
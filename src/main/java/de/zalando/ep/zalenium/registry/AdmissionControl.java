@@ -0,0 +1,145 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
+import io.prometheus.client.Counter;
+
+/**
+ * Decides if a new session request can wait in the queue. Requests are rejected when the queue is too long, when the
+ * estimated time to get a session is too long, or when their build has too many requests waiting already. A limit
+ * set to 0 is disabled.
+ *
+ * The estimated wait is based on the amount of sessions assigned during the last minute.
+ */
+class AdmissionControl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionControl.class.getName());
+    private static final Counter seleniumTestSessionRequestsRejected = Counter.build()
+            .name("selenium_test_session_requests_rejected_total")
+            .help("The number of new Selenium test session requests rejected because the grid is saturated")
+            .labelNames("reason")
+            .register();
+    private static final long THROUGHPUT_WINDOW_MS = 60 * 1000;
+    // Used as hint when there is no data to estimate the wait.
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 30;
+
+    private final int maxQueuedRequests;
+    private final int maxEstimatedWait;
+    private final int maxQueuedRequestsPerBuild;
+    private final Clock clock;
+    private final Deque<Long> assignmentTimes = new ArrayDeque<>();
+    private final Map<RequestHandler, String> buildByRequest = new IdentityHashMap<>();
+    private final Map<String, Integer> queuedRequestsByBuild = new HashMap<>();
+
+    /**
+     * @param maxQueuedRequests         max amount of requests waiting in the queue.
+     * @param maxEstimatedWait          max estimated time in seconds for a new request to get a session.
+     * @param maxQueuedRequestsPerBuild max amount of requests waiting in the queue for the same build.
+     */
+    AdmissionControl(int maxQueuedRequests, int maxEstimatedWait, int maxQueuedRequestsPerBuild, Clock clock) {
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.maxEstimatedWait = maxEstimatedWait;
+        this.maxQueuedRequestsPerBuild = maxQueuedRequestsPerBuild;
+        this.clock = clock;
+    }
+
+    /**
+     * @param queuedRequests amount of requests currently waiting in the queue.
+     * @throws SessionRequestRejectedException when the request should not be queued.
+     */
+    synchronized void admit(RequestHandler handler, int queuedRequests) {
+        if (maxQueuedRequests > 0 && queuedRequests >= maxQueuedRequests) {
+            reject(handler, "queue_depth", String.format("%s new session requests are already waiting",
+                    queuedRequests), getEstimatedWaitSeconds(queuedRequests - maxQueuedRequests + 1));
+        }
+        expireAssignmentTimes(clock.millis());
+        // Without recent assignments there is nothing to base an estimation on.
+        if (maxEstimatedWait > 0 && !assignmentTimes.isEmpty()) {
+            long estimatedWait = getEstimatedWaitSeconds(queuedRequests + 1);
+            if (estimatedWait > maxEstimatedWait) {
+                reject(handler, "estimated_wait", String.format("The estimated wait of %s seconds is longer than %s",
+                        estimatedWait, maxEstimatedWait), estimatedWait - maxEstimatedWait);
+            }
+        }
+        if (maxQueuedRequestsPerBuild > 0) {
+            String build = getBuild(handler);
+            if (build != null) {
+                int queuedForBuild = queuedRequestsByBuild.getOrDefault(build, 0);
+                if (queuedForBuild >= maxQueuedRequestsPerBuild) {
+                    reject(handler, "build", String.format("%s new session requests are already waiting for build %s",
+                            queuedForBuild, build), getEstimatedWaitSeconds(1));
+                }
+                buildByRequest.put(handler, build);
+                queuedRequestsByBuild.merge(build, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * The request got a session and left the queue.
+     */
+    synchronized void requestAssigned(RequestHandler handler) {
+        if (maxEstimatedWait > 0 || maxQueuedRequests > 0 || maxQueuedRequestsPerBuild > 0) {
+            long now = clock.millis();
+            assignmentTimes.addLast(now);
+            expireAssignmentTimes(now);
+        }
+        requestLeft(handler);
+    }
+
+    /**
+     * The request left the queue without a session.
+     */
+    synchronized void requestLeft(RequestHandler handler) {
+        String build = buildByRequest.remove(handler);
+        if (build != null) {
+            queuedRequestsByBuild.computeIfPresent(build, (name, queued) -> queued > 1 ? queued - 1 : null);
+        }
+    }
+
+    synchronized void clear() {
+        buildByRequest.clear();
+        queuedRequestsByBuild.clear();
+    }
+
+    /**
+     * @return the estimated seconds until the given amount of requests get a session, or a default hint when no
+     * sessions were assigned recently.
+     */
+    synchronized long getEstimatedWaitSeconds(int requests) {
+        expireAssignmentTimes(clock.millis());
+        if (assignmentTimes.isEmpty()) {
+            return DEFAULT_RETRY_AFTER_SECONDS;
+        }
+        double assignmentsPerSecond = assignmentTimes.size() / (THROUGHPUT_WINDOW_MS / 1000.0);
+        return Math.max(1, (long) Math.ceil(requests / assignmentsPerSecond));
+    }
+
+    private void expireAssignmentTimes(long now) {
+        while (!assignmentTimes.isEmpty() && now - assignmentTimes.peekFirst() > THROUGHPUT_WINDOW_MS) {
+            assignmentTimes.removeFirst();
+        }
+    }
+
+    private void reject(RequestHandler handler, String reason, String message, long retryAfterSeconds) {
+        long retryAfter = Math.max(1, retryAfterSeconds);
+        LOG.info("Rejecting new session request for {}: {}", handler.getRequest().getDesiredCapabilities(), message);
+        seleniumTestSessionRequestsRejected.labels(reason).inc();
+        handler.getRequest().setAttribute(SessionRequestRejectedException.RETRY_AFTER_ATTRIBUTE, retryAfter);
+        throw new SessionRequestRejectedException(message, retryAfter);
+    }
+
+    private static String getBuild(RequestHandler handler) {
+        return CanonicalCapabilities.of(handler.getRequest().getDesiredCapabilities()).getBuildName();
+    }
+}
@@ -0,0 +1,118 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
+import de.zalando.ep.zalenium.matcher.CapabilityFingerprint;
+
+/**
+ * One batch pass of the matcher over the new session queue. The queue hands over the requests already sorted by the
+ * prioritizer, and each one is greedily matched against the free slots.
+ *
+ * Once a request could not get a session, any other request in the same pass with the same matching capabilities is
+ * skipped without visiting the proxies again, since the slots can only get busier during the pass. All the requests
+ * left without a session are collected, so they can be handed over to provisioning as a single demand.
+ *
+ * A pass can be limited to a subset of the queue, e.g. when the only thing that happened since the previous pass is
+ * the arrival of new requests. The rest of the queue is left untouched.
+ *
+ * Requests can also be deferred to the end of the pass, they only get the slots left once every other request was
+ * visited. Deferred requests left without a session are not handed over to provisioning.
+ */
+class AssignmentPass {
+
+    private final Function<Map<String, Object>, TestSession> sessionProvider;
+    private final BiConsumer<RequestHandler, TestSession> sessionBinder;
+    private final Set<RequestHandler> scope;
+    private final Set<CapabilityFingerprint> exhaustedCapabilities = new HashSet<>();
+    private final List<Map<String, Object>> unmatchedCapabilities = new ArrayList<>();
+    private final Set<RequestHandler> deferred = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * @param sessionProvider tries to create a session for the given capabilities, returning null when not possible.
+     * @param sessionBinder   binds a created session to the request that asked for it.
+     */
+    AssignmentPass(Function<Map<String, Object>, TestSession> sessionProvider,
+                   BiConsumer<RequestHandler, TestSession> sessionBinder) {
+        this(sessionProvider, sessionBinder, null);
+    }
+
+    /**
+     * @param scope the only requests to be matched during this pass, null to match the whole queue.
+     */
+    AssignmentPass(Function<Map<String, Object>, TestSession> sessionProvider,
+                   BiConsumer<RequestHandler, TestSession> sessionBinder, Set<RequestHandler> scope) {
+        this.sessionProvider = sessionProvider;
+        this.sessionBinder = sessionBinder;
+        this.scope = scope;
+    }
+
+    /**
+     * @return true when the request got a session and can be removed from the queue.
+     */
+    boolean assign(RequestHandler handler) {
+        if (scope != null && !scope.contains(handler)) {
+            return false;
+        }
+        return assign(handler, true);
+    }
+
+    /**
+     * Keeps the request for {@link #assignDeferred(RequestHandler)}, once the rest of the queue was visited.
+     *
+     * @return false, the request stays in the queue for now.
+     */
+    boolean defer(RequestHandler handler) {
+        if (scope == null || scope.contains(handler)) {
+            deferred.add(handler);
+        }
+        return false;
+    }
+
+    boolean hasDeferred() {
+        return !deferred.isEmpty();
+    }
+
+    /**
+     * @return true when the request was deferred during this pass and got one of the slots left.
+     */
+    boolean assignDeferred(RequestHandler handler) {
+        return deferred.remove(handler) && assign(handler, false);
+    }
+
+    private boolean assign(RequestHandler handler, boolean provisionWhenUnmatched) {
+        Map<String, Object> desiredCapabilities = handler.getRequest().getDesiredCapabilities();
+        // Looked up before matching, the capability matchers are allowed to modify the requested capabilities.
+        CapabilityFingerprint matchingKey = CanonicalCapabilities.of(desiredCapabilities).getFingerprint();
+        TestSession session = null;
+        if (!exhaustedCapabilities.contains(matchingKey)) {
+            session = sessionProvider.apply(desiredCapabilities);
+            if (session == null) {
+                exhaustedCapabilities.add(matchingKey);
+            }
+        }
+        if (session == null) {
+            if (provisionWhenUnmatched) {
+                unmatchedCapabilities.add(desiredCapabilities);
+            }
+            return false;
+        }
+        sessionBinder.accept(handler, session);
+        return true;
+    }
+
+    List<Map<String, Object>> getUnmatchedCapabilities() {
+        return Collections.unmodifiableList(unmatchedCapabilities);
+    }
+}
@@ -0,0 +1,160 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.listeners.Prioritizer;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
+
+/**
+ * Weighted fair share of the grid between builds, based on the build capability. Requests without it are grouped
+ * together as one more build.
+ *
+ * Each queued request gets a virtual start time, which is the amount of sessions its build would be running once the
+ * request gets a session, divided by the weight of the build. The matcher visits the requests with the lowest virtual
+ * start time first, so a build with a few requests goes before a build flooding the grid, no matter how long the
+ * queue is.
+ *
+ * Builds can also be capped to a number of running sessions. The cap is work conserving, a build over its cap is
+ * deferred to the end of the matcher pass and gets the slots no request of another build could use, so free slots
+ * are never left idle.
+ */
+class FairShareScheduler {
+
+    private static final String NO_BUILD = "";
+    private static final int DEFAULT_WEIGHT = 1;
+
+    private final boolean enabled;
+    private final Map<String, Integer> weights;
+    private final int maxSessionsPerBuild;
+    private final Map<RequestHandler, String> buildByRequest = new IdentityHashMap<>();
+    // Queued requests of each build, in arrival order.
+    private final Map<String, Set<RequestHandler>> queuedRequestsByBuild = new HashMap<>();
+    private final Map<TestSession, String> buildBySession = new IdentityHashMap<>();
+    private final Map<String, Integer> runningSessionsByBuild = new HashMap<>();
+
+    /**
+     * @param enabled             when false, the queue keeps the order given by the hub prioritizer.
+     * @param weights             weight of each build, builds not listed get a weight of 1.
+     * @param maxSessionsPerBuild max amount of sessions running for the same build, 0 to disable the cap.
+     */
+    FairShareScheduler(boolean enabled, Map<String, Integer> weights, int maxSessionsPerBuild) {
+        this.enabled = enabled;
+        this.weights = new HashMap<>(weights);
+        this.maxSessionsPerBuild = maxSessionsPerBuild;
+    }
+
+    synchronized void requestQueued(RequestHandler handler) {
+        if (!enabled) {
+            return;
+        }
+        String build = getBuild(handler.getRequest().getDesiredCapabilities());
+        buildByRequest.put(handler, build);
+        queuedRequestsByBuild.computeIfAbsent(build, name -> Collections.newSetFromMap(new LinkedHashMap<>()))
+                .add(handler);
+    }
+
+    /**
+     * The request left the queue without a session.
+     */
+    synchronized void requestLeft(RequestHandler handler) {
+        String build = buildByRequest.remove(handler);
+        if (build == null) {
+            return;
+        }
+        Set<RequestHandler> queuedRequests = queuedRequestsByBuild.get(build);
+        if (queuedRequests != null) {
+            queuedRequests.remove(handler);
+            if (queuedRequests.isEmpty()) {
+                queuedRequestsByBuild.remove(build);
+            }
+        }
+    }
+
+    synchronized void sessionStarted(RequestHandler handler, TestSession session) {
+        if (!enabled) {
+            return;
+        }
+        String build = buildByRequest.getOrDefault(handler, getBuild(handler.getRequest().getDesiredCapabilities()));
+        requestLeft(handler);
+        buildBySession.put(session, build);
+        runningSessionsByBuild.merge(build, 1, Integer::sum);
+    }
+
+    synchronized void sessionEnded(TestSession session) {
+        String build = buildBySession.remove(session);
+        if (build != null) {
+            runningSessionsByBuild.computeIfPresent(build, (name, running) -> running > 1 ? running - 1 : null);
+        }
+    }
+
+    /**
+     * Forgets the queued requests, running sessions are still accounted for.
+     */
+    synchronized void clear() {
+        buildByRequest.clear();
+        queuedRequestsByBuild.clear();
+    }
+
+    /**
+     * @return false when the build of the request has reached its cap while other builds are waiting, the request
+     * should then only get a slot no other request could use.
+     */
+    synchronized boolean mayStartSession(RequestHandler handler) {
+        if (!enabled || maxSessionsPerBuild <= 0) {
+            return true;
+        }
+        String build = buildByRequest.getOrDefault(handler, getBuild(handler.getRequest().getDesiredCapabilities()));
+        if (NO_BUILD.equals(build) || runningSessionsByBuild.getOrDefault(build, 0) < maxSessionsPerBuild) {
+            return true;
+        }
+        return queuedRequestsByBuild.keySet().stream().allMatch(build::equals);
+    }
+
+    /**
+     * Orders the requests by the given prioritizer and then by their virtual start time.
+     */
+    synchronized Prioritizer withFairShare(Prioritizer prioritizer) {
+        if (!enabled || queuedRequestsByBuild.size() < 2) {
+            // A single build, the queue order is already fair.
+            return prioritizer;
+        }
+        Map<Map<String, Object>, Double> virtualStartTimes = new IdentityHashMap<>();
+        queuedRequestsByBuild.forEach((build, queuedRequests) -> {
+            double weight = weights.getOrDefault(build, DEFAULT_WEIGHT);
+            int sessions = runningSessionsByBuild.getOrDefault(build, 0);
+            Iterator<RequestHandler> iterator = queuedRequests.iterator();
+            while (iterator.hasNext()) {
+                sessions++;
+                virtualStartTimes.put(iterator.next().getRequest().getDesiredCapabilities(), sessions / weight);
+            }
+        });
+        Comparator<Map<String, Object>> byVirtualStartTime = Comparator.comparingDouble(
+                capabilities -> virtualStartTimes.getOrDefault(capabilities, Double.MAX_VALUE));
+        if (prioritizer == null) {
+            return byVirtualStartTime::compare;
+        }
+        return (a, b) -> {
+            int byPriority = prioritizer.compareTo(a, b);
+            return byPriority != 0 ? byPriority : byVirtualStartTime.compare(a, b);
+        };
+    }
+
+    synchronized int getRunningSessions(String build) {
+        return runningSessionsByBuild.getOrDefault(build, 0);
+    }
+
+    private static String getBuild(Map<String, Object> desiredCapabilities) {
+        String build = CanonicalCapabilities.of(desiredCapabilities).getBuildName();
+        return build == null ? NO_BUILD : build;
+    }
+}
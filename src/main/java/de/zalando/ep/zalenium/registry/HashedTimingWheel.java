@@ -0,0 +1,93 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel, scheduling and cancelling a timeout are O(1). Time is split in ticks, and each tick maps to
+ * one of the buckets of the wheel. Timeouts further away than one turn of the wheel wait in their bucket until the
+ * turn where they are due.
+ *
+ * The wheel does not have its own thread, {@link #advance(long)} needs to be called periodically. Timeouts are
+ * expired with a precision of one tick.
+ */
+class HashedTimingWheel<T> {
+
+    private final long tickMillis;
+    private final List<Set<Timeout<T>>> buckets;
+    private final Consumer<T> onExpiry;
+    private volatile long lastTick;
+
+    HashedTimingWheel(long tickMillis, int wheelSize, long startMillis, Consumer<T> onExpiry) {
+        this.tickMillis = tickMillis;
+        this.onExpiry = onExpiry;
+        this.lastTick = startMillis / tickMillis;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    Timeout<T> schedule(T item, long deadlineMillis) {
+        // Never in a tick that might be under processing already.
+        long deadlineTick = Math.max(ceilDiv(deadlineMillis, tickMillis), lastTick + 1);
+        Timeout<T> timeout = new Timeout<>(item, deadlineMillis, deadlineTick);
+        getBucket(deadlineTick).add(timeout);
+        return timeout;
+    }
+
+    boolean cancel(Timeout<T> timeout) {
+        return getBucket(timeout.deadlineTick).remove(timeout);
+    }
+
+    /**
+     * Expires all the timeouts due until the given time.
+     */
+    void advance(long nowMillis) {
+        long currentTick = nowMillis / tickMillis;
+        // A whole turn of the wheel visits every bucket, no need to go around more than once.
+        long firstTick = Math.max(lastTick + 1, currentTick - buckets.size() + 1);
+        for (long tick = firstTick; tick <= currentTick; tick++) {
+            Iterator<Timeout<T>> iterator = getBucket(tick).iterator();
+            while (iterator.hasNext()) {
+                Timeout<T> timeout = iterator.next();
+                if (timeout.deadlineTick <= currentTick && getBucket(tick).remove(timeout)) {
+                    onExpiry.accept(timeout.item);
+                }
+            }
+        }
+        lastTick = Math.max(lastTick, currentTick);
+    }
+
+    private Set<Timeout<T>> getBucket(long tick) {
+        return buckets.get((int) (tick % buckets.size()));
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+
+    static final class Timeout<T> {
+        private final T item;
+        private final long deadlineMillis;
+        private final long deadlineTick;
+
+        private Timeout(T item, long deadlineMillis, long deadlineTick) {
+            this.item = item;
+            this.deadlineMillis = deadlineMillis;
+            this.deadlineTick = deadlineTick;
+        }
+
+        T getItem() {
+            return item;
+        }
+
+        long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+    }
+}
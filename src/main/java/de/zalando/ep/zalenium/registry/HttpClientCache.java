@@ -0,0 +1,162 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.openqa.selenium.remote.http.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Counter;
+
+/**
+ * Keeps one {@link HttpClient} per node URL and timeouts, so the commands forwarded to a node reuse the same client.
+ * Connections are pooled and kept alive by the client factory, the cache avoids building a new client for every
+ * command. A node gets clients for several URLs, e.g. its hub path and its status, all of them are evicted together
+ * by the scheme, host and port of the node, and their pooled connections are released.
+ *
+ * Creating a client is retried right away a bounded amount of times, without sleeping on the calling thread, which is
+ * serving a request. See https://github.com/zalando/zalenium/issues/491
+ */
+class HttpClientCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClientCache.class.getName());
+    private static final Counter seleniumHttpClientsCreated = Counter.build()
+            .name("selenium_http_clients_created_total")
+            .help("The number of HttpClients created to forward requests to the nodes")
+            .register();
+    private static final int MAX_TRIES = 3;
+    // Clients of nodes that are gone are evicted, this is only a safety net.
+    private static final int MAX_CACHED_CLIENTS = 1000;
+
+    private final HttpClient.Factory httpClientFactory;
+    private final Map<ClientKey, HttpClient> clients = new ConcurrentHashMap<>();
+
+    HttpClientCache(HttpClient.Factory httpClientFactory) {
+        this.httpClientFactory = httpClientFactory;
+    }
+
+    HttpClient getHttpClient(URL url, int connectionTimeout, int readTimeout) {
+        ClientKey key = new ClientKey(url, connectionTimeout, readTimeout);
+        HttpClient client = clients.get(key);
+        if (client != null) {
+            return client;
+        }
+        if (clients.size() >= MAX_CACHED_CLIENTS) {
+            LOG.debug("Too many cached HttpClients, clearing the cache");
+            removeIf(cachedKey -> true);
+        }
+        // Failures are not cached, the next call tries again.
+        return clients.computeIfAbsent(key, this::createClient);
+    }
+
+    /**
+     * Forgets the clients of a node that is not registered anymore.
+     */
+    void evict(URL url) {
+        if (url != null) {
+            String origin = getOrigin(url);
+            removeIf(key -> key.origin.equals(origin));
+        }
+    }
+
+    int size() {
+        return clients.size();
+    }
+
+    private void removeIf(Predicate<ClientKey> filter) {
+        List<HttpClient> removed = new ArrayList<>();
+        clients.keySet().stream().filter(filter).forEach(key -> {
+            HttpClient client = clients.remove(key);
+            if (client != null) {
+                removed.add(client);
+            }
+        });
+        if (removed.isEmpty()) {
+            return;
+        }
+        for (HttpClient client : removed) {
+            if (client instanceof Closeable) {
+                try {
+                    ((Closeable) client).close();
+                } catch (IOException e) {
+                    LOG.debug("Error while closing a HttpClient", e);
+                }
+            }
+        }
+        // Releases the pooled connections nobody is going to use anymore.
+        httpClientFactory.cleanupIdleClients();
+    }
+
+    private static String getOrigin(URL url) {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+    }
+
+    private HttpClient createClient(ClientKey key) {
+        for (int i = 1; i <= MAX_TRIES; i++) {
+            try {
+                HttpClient client = httpClientFactory.builder()
+                        .connectionTimeout(Duration.ofSeconds(key.connectionTimeout))
+                        .readTimeout(Duration.ofSeconds(key.readTimeout))
+                        .createClient(key.url);
+                if (i > 1) {
+                    LOG.warn("Successfully created HttpClient for url {}, after attempt #{}", key.url, i);
+                }
+                seleniumHttpClientsCreated.inc();
+                return client;
+            } catch (Exception | AssertionError e) {
+                String message = String.format("Error while getting the HttpClient for url %s, attempt #%s", key.url, i);
+                LOG.debug(message, e);
+                if (i == MAX_TRIES) {
+                    throw e;
+                }
+            }
+        }
+        throw new IllegalStateException(String.format("Something went wrong while creating a HttpClient for url %s",
+                key.url));
+    }
+
+    private static final class ClientKey {
+        private final URL url;
+        // URL#equals resolves the host name, comparing the external form does not.
+        private final String externalForm;
+        private final String origin;
+        private final int connectionTimeout;
+        private final int readTimeout;
+
+        private ClientKey(URL url, int connectionTimeout, int readTimeout) {
+            this.url = url;
+            this.externalForm = url.toExternalForm();
+            this.origin = getOrigin(url);
+            this.connectionTimeout = connectionTimeout;
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ClientKey clientKey = (ClientKey) o;
+            return connectionTimeout == clientKey.connectionTimeout && readTimeout == clientKey.readTimeout
+                    && externalForm.equals(clientKey.externalForm);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(externalForm, connectionTimeout, readTimeout);
+        }
+    }
+}
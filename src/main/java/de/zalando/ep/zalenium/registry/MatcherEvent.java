@@ -0,0 +1,61 @@
+package de.zalando.ep.zalenium.registry;
+
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+
+/**
+ * Something that happened in the registry and requires the matcher to look at the new session queue again.
+ */
+class MatcherEvent {
+
+    enum Type {
+        // A new session request was queued, only that request needs to be matched.
+        REQUEST_ADDED,
+        // A node finished its registration, its slots are free.
+        PROXY_REGISTERED,
+        // A test session finished and its slot is free.
+        SLOT_RELEASED,
+        // The started containers were checked, waiting requests might need new containers.
+        CONTAINERS_CHECKED
+    }
+
+    private final Type type;
+    private final RequestHandler request;
+    private final long createdNanos = System.nanoTime();
+
+    private MatcherEvent(Type type, RequestHandler request) {
+        this.type = type;
+        this.request = request;
+    }
+
+    static MatcherEvent requestAdded(RequestHandler request) {
+        return new MatcherEvent(Type.REQUEST_ADDED, request);
+    }
+
+    static MatcherEvent of(Type type) {
+        return new MatcherEvent(type, null);
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    RequestHandler getRequest() {
+        return request;
+    }
+
+    long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    /**
+     * @return true when the event might allow any waiting request to get a session, and not only the one it carries.
+     */
+    boolean affectsAllRequests() {
+        return type != Type.REQUEST_ADDED;
+    }
+
+    @Override
+    public String toString() {
+        return "MatcherEvent [" + type + "]";
+    }
+}
@@ -0,0 +1,147 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.SessionTerminationReason;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A new session request waiting in the queue without holding a thread. The servlet request is suspended with an
+ * {@link AsyncContext}, and dispatched again to the driver servlet once a session has been bound or the request
+ * cannot wait any longer. The outcome travels as a request attribute, and the registry picks it up when the
+ * dispatched request is added again, see {@link ZaleniumRegistry#addNewSessionRequest(RequestHandler)}.
+ *
+ * A request that times out while a session is being bound to it waits for the binding to resume it. If that takes
+ * too long, the request is resumed with a timeout and the session bound afterwards is terminated.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ParkedNewSessionRequest extends RequestHandler implements AsyncListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkedNewSessionRequest.class.getName());
+    private static final String BOUND_SESSION_ATTRIBUTE = "zalenium.boundSession";
+    private static final String ABORT_REASON_ATTRIBUTE = "zalenium.abortReason";
+    private static final long DEFAULT_BINDING_WAIT_MILLIS = 2000;
+    private static final String TIMEOUT_REASON = "Request timed out waiting for a node to become available.";
+
+    private final AsyncContext asyncContext;
+    private final long bindingWaitMillis;
+    private final AtomicBoolean resumed = new AtomicBoolean(false);
+    private final CountDownLatch dispatched = new CountDownLatch(1);
+
+    public ParkedNewSessionRequest(SeleniumBasedRequest request, HttpServletResponse response, GridRegistry registry,
+                                   AsyncContext asyncContext) {
+        this(request, response, registry, asyncContext, DEFAULT_BINDING_WAIT_MILLIS);
+    }
+
+    @VisibleForTesting
+    ParkedNewSessionRequest(SeleniumBasedRequest request, HttpServletResponse response, GridRegistry registry,
+                            AsyncContext asyncContext, long bindingWaitMillis) {
+        super(request, response, registry);
+        this.asyncContext = asyncContext;
+        this.bindingWaitMillis = bindingWaitMillis;
+        asyncContext.addListener(this);
+    }
+
+    @Override
+    public void bindSession(TestSession session) {
+        super.bindSession(session);
+        getRequest().setAttribute(BOUND_SESSION_ATTRIBUTE, session);
+        if (!resume()) {
+            // The request gave up waiting in the meantime, nobody is going to use the session.
+            LOG.debug("Session bound to a request that was already resumed, terminating it: {}", session);
+            getRequest().removeAttribute(BOUND_SESSION_ATTRIBUTE);
+            getRegistry().terminate(session, SessionTerminationReason.CLIENT_GONE);
+        }
+    }
+
+    /*
+        The default implementation interrupts the thread that created the request, which is now serving something
+        else.
+     */
+    @Override
+    public void stop() {
+        abort("Request was stopped while waiting for a node to become available.");
+    }
+
+    /**
+     * Dispatches the request again, so the driver servlet can answer with the given reason.
+     */
+    public void abort(String reason) {
+        getRequest().setAttribute(ABORT_REASON_ATTRIBUTE, reason);
+        resume();
+    }
+
+    private boolean resume() {
+        if (!resumed.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            asyncContext.dispatch();
+        } finally {
+            dispatched.countDown();
+        }
+        return true;
+    }
+
+    /*
+        The container answers with an error when the listener neither dispatches nor completes the request, so it
+        has to be resumed before returning.
+     */
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        if (getRegistry().removeNewSessionRequest(this)) {
+            abort(TIMEOUT_REASON);
+            return;
+        }
+        // When it is not in the queue anymore, a session is being bound to it and it will be resumed right away.
+        try {
+            if (dispatched.await(bindingWaitMillis, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        abort(TIMEOUT_REASON);
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        LOG.debug("Error while waiting for a new session", event.getThrowable());
+        getRegistry().removeNewSessionRequest(this);
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    static TestSession takeBoundSession(ServletRequest request) {
+        TestSession session = (TestSession) request.getAttribute(BOUND_SESSION_ATTRIBUTE);
+        request.removeAttribute(BOUND_SESSION_ATTRIBUTE);
+        return session;
+    }
+
+    static String takeAbortReason(ServletRequest request) {
+        String reason = (String) request.getAttribute(ABORT_REASON_ATTRIBUTE);
+        request.removeAttribute(ABORT_REASON_ATTRIBUTE);
+        return reason;
+    }
+}
@@ -0,0 +1,105 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+/**
+ * Releases the terminated test sessions with a bounded amount of threads, instead of starting a new thread for each
+ * one of them. The caller never waits for a release: when the queue is full, the release waits for a single overflow
+ * thread instead, so a burst of terminations slows down the releases but not whoever is terminating the sessions.
+ * Releases are only rejected once the executor is shut down.
+ */
+class SessionReleaseExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionReleaseExecutor.class.getName());
+    private static final Gauge seleniumTestSessionReleaseQueueLength = Gauge.build()
+            .name("selenium_test_session_release_queue_length")
+            .help("The number of terminated Selenium test sessions waiting to be released").register();
+    private static final Histogram seleniumTestSessionReleaseDuration = Histogram.build()
+            .name("selenium_test_session_release_duration_seconds")
+            .help("The time it takes to release a terminated Selenium test session in seconds.")
+            .buckets(0.1, 0.5, 1, 2.5, 5, 10, 20, 30, 60, 120, 180)
+            .register();
+    private static final Counter seleniumTestSessionReleasesRejected = Counter.build()
+            .name("selenium_test_session_releases_rejected_total")
+            .help("The number of terminated Selenium test sessions not released because the hub is stopping")
+            .register();
+
+    private final ThreadPoolExecutor overflowExecutor;
+    private final ThreadPoolExecutor executor;
+
+    SessionReleaseExecutor(int threads, int queueSize) {
+        overflowExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                newThreadFactory("Session release overflow thread "));
+        overflowExecutor.allowCoreThreadTimeOut(true);
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize), newThreadFactory("Session release thread "),
+                (runnable, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("The release executor is shut down");
+                    }
+                    LOG.warn("Release queue is full ({} pending), releasing in the overflow thread",
+                            pool.getQueue().size());
+                    overflowExecutor.execute(runnable);
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static ThreadFactory newThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @param name    used as thread name while the release runs, to keep the logs traceable.
+     * @param release the release to run.
+     * @return false when the release will not run, because the executor is shut down.
+     */
+    boolean execute(String name, Runnable release) {
+        seleniumTestSessionReleaseQueueLength.inc();
+        Runnable task = () -> {
+            seleniumTestSessionReleaseQueueLength.dec();
+            String currentName = Thread.currentThread().getName();
+            Thread.currentThread().setName(name);
+            Histogram.Timer timer = seleniumTestSessionReleaseDuration.startTimer();
+            try {
+                release.run();
+            } finally {
+                timer.observeDuration();
+                Thread.currentThread().setName(currentName);
+            }
+        };
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            seleniumTestSessionReleaseQueueLength.dec();
+            seleniumTestSessionReleasesRejected.inc();
+            LOG.warn("Not releasing '{}', the hub is stopping.", name);
+            return false;
+        }
+    }
+
+    /**
+     * Stops accepting new releases, the ones already queued are still executed.
+     */
+    void shutdown() {
+        executor.shutdown();
+        overflowExecutor.shutdown();
+    }
+}
@@ -0,0 +1,180 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+import org.openqa.grid.internal.listeners.Prioritizer;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Summary;
+
+/**
+ * Keeps track of how long each new session request is allowed to wait in the queue. The deadline comes from the
+ * newSessionWaitTimeoutSeconds capability, or from the configured default. Requests past their deadline are
+ * removed from the queue through a {@link HashedTimingWheel}, and the matcher visits the requests closer to their
+ * deadline first.
+ */
+class SessionRequestDeadlines {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionRequestDeadlines.class.getName());
+    private static final Counter seleniumTestSessionRequestsExpired = Counter.build()
+            .name("selenium_test_session_requests_expired_total")
+            .help("The number of new Selenium test session requests removed from the queue after their deadline")
+            .register();
+    private static final Summary seleniumTestSessionRequestQueueAge = Summary.build()
+            .name("selenium_test_session_request_queue_age_seconds")
+            .help("The time new Selenium test session requests spent in the queue in seconds.")
+            .labelNames("outcome")
+            .quantile(0.5, 0.05)
+            .quantile(0.9, 0.01)
+            .quantile(0.99, 0.001)
+            .register();
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 512;
+    static final String ASSIGNED = "assigned";
+    static final String REMOVED = "removed";
+    static final String EXPIRED = "expired";
+
+    private final long defaultTimeoutSeconds;
+    private final Clock clock;
+    private final BiPredicate<RequestHandler, Consumer<RequestHandler>> expiredRequestRemover;
+    private final HashedTimingWheel<RequestHandler> wheel;
+    private final Map<RequestHandler, HashedTimingWheel.Timeout<RequestHandler>> timeouts = new IdentityHashMap<>();
+    // Prioritizers only get the requested capabilities, those maps are unique for each request.
+    private final Map<Map<String, Object>, Long> deadlinesByCapabilities = new IdentityHashMap<>();
+    private final Map<RequestHandler, Long> queuedTimes = new IdentityHashMap<>();
+    private ScheduledExecutorService ticker;
+
+    /**
+     * @param defaultTimeoutSeconds timeout for requests without the capability, 0 to let them wait without limit.
+     * @param expiredRequestRemover removes an expired request from the queue, returning false when it was gone.
+     *                              When it was removed, the request is ended with the given action while still
+     *                              holding the lock of the queue, so a pass cannot bind it at the same time.
+     */
+    SessionRequestDeadlines(long defaultTimeoutSeconds, Clock clock,
+                            BiPredicate<RequestHandler, Consumer<RequestHandler>> expiredRequestRemover) {
+        this.defaultTimeoutSeconds = defaultTimeoutSeconds;
+        this.clock = clock;
+        this.expiredRequestRemover = expiredRequestRemover;
+        this.wheel = new HashedTimingWheel<>(TICK_MILLIS, WHEEL_SIZE, clock.millis(), this::expire);
+    }
+
+    synchronized void start() {
+        if (ticker == null) {
+            ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Session request deadlines");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    void tick() {
+        try {
+            wheel.advance(clock.millis());
+        } catch (Exception e) {
+            LOG.error("Error while expiring new session requests", e);
+        }
+    }
+
+    synchronized void requestQueued(RequestHandler handler) {
+        long now = clock.millis();
+        queuedTimes.put(handler, now);
+        long timeoutSeconds = getTimeoutSeconds(handler.getRequest().getDesiredCapabilities());
+        if (timeoutSeconds > 0) {
+            long deadline = now + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+            timeouts.put(handler, wheel.schedule(handler, deadline));
+            deadlinesByCapabilities.put(handler.getRequest().getDesiredCapabilities(), deadline);
+        }
+    }
+
+    /**
+     * @param outcome why the request left the queue, only the first call for each request is recorded.
+     */
+    synchronized void requestLeft(RequestHandler handler, String outcome) {
+        Long queuedTime = queuedTimes.remove(handler);
+        if (queuedTime == null) {
+            return;
+        }
+        seleniumTestSessionRequestQueueAge.labels(outcome)
+                .observe((clock.millis() - queuedTime) / Collector.MILLISECONDS_PER_SECOND);
+        HashedTimingWheel.Timeout<RequestHandler> timeout = timeouts.remove(handler);
+        if (timeout != null) {
+            wheel.cancel(timeout);
+            deadlinesByCapabilities.remove(handler.getRequest().getDesiredCapabilities());
+        }
+    }
+
+    synchronized void clear() {
+        timeouts.values().forEach(wheel::cancel);
+        timeouts.clear();
+        deadlinesByCapabilities.clear();
+        queuedTimes.clear();
+    }
+
+    /**
+     * Orders the requests by the given prioritizer and then by deadline, the ones without a deadline go last.
+     */
+    synchronized Prioritizer withDeadlines(Prioritizer prioritizer) {
+        if (deadlinesByCapabilities.isEmpty()) {
+            return prioritizer;
+        }
+        Map<Map<String, Object>, Long> deadlines = new IdentityHashMap<>(deadlinesByCapabilities);
+        Comparator<Map<String, Object>> byDeadline = Comparator.comparingLong(
+                capabilities -> deadlines.getOrDefault(capabilities, Long.MAX_VALUE));
+        if (prioritizer == null) {
+            return byDeadline::compare;
+        }
+        return (a, b) -> {
+            int byPriority = prioritizer.compareTo(a, b);
+            return byPriority != 0 ? byPriority : byDeadline.compare(a, b);
+        };
+    }
+
+    private void expire(RequestHandler handler) {
+        synchronized (this) {
+            timeouts.remove(handler);
+        }
+        if (!expiredRequestRemover.test(handler, SessionRequestDeadlines::endExpiredRequest)) {
+            // It got a session in the meantime.
+            return;
+        }
+        LOG.info("New session request for {} expired after waiting too long in the queue.",
+                handler.getRequest().getDesiredCapabilities());
+        seleniumTestSessionRequestsExpired.inc();
+    }
+
+    private static void endExpiredRequest(RequestHandler handler) {
+        if (handler instanceof ParkedNewSessionRequest) {
+            ((ParkedNewSessionRequest) handler).abort("Request expired waiting for a node to become available.");
+        } else {
+            // Interrupts the thread waiting for the session, which answers with an error.
+            handler.stop();
+        }
+    }
+
+    private long getTimeoutSeconds(Map<String, Object> desiredCapabilities) {
+        Long timeout = CanonicalCapabilities.of(desiredCapabilities).getNewSessionWaitTimeout();
+        return timeout == null ? defaultTimeoutSeconds : timeout;
+    }
+}
@@ -0,0 +1,27 @@
+package de.zalando.ep.zalenium.registry;
+
+import org.openqa.grid.common.exception.GridException;
+
+/**
+ * Thrown when a new session request is not admitted in the queue because the grid is saturated. The request can be
+ * retried after {@link #getRetryAfterSeconds()}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SessionRequestRejectedException extends GridException {
+
+    /**
+     * Servlet request attribute holding the retry hint in seconds, for the response to carry a Retry-After header.
+     */
+    public static final String RETRY_AFTER_ATTRIBUTE = "zalenium.retryAfterSeconds";
+
+    private final long retryAfterSeconds;
+
+    public SessionRequestRejectedException(String message, long retryAfterSeconds) {
+        super(String.format("%s, retry after %s seconds.", message, retryAfterSeconds));
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,9 +1,11 @@
 package de.zalando.ep.zalenium.registry;
 
 import de.zalando.ep.zalenium.prometheus.ContainerStatusCollectorExports;
+import de.zalando.ep.zalenium.prometheus.SessionStartPhases;
 import de.zalando.ep.zalenium.prometheus.TestSessionCollectorExports;
 import net.jcip.annotations.ThreadSafe;
 
+import org.openqa.grid.common.exception.GridException;
 import org.openqa.grid.internal.ActiveTestSessions;
 import org.openqa.grid.internal.BaseGridRegistry;
 import org.openqa.grid.internal.ExternalSessionKey;
@@ -18,13 +20,17 @@ import org.openqa.grid.internal.listeners.RegistrationListener;
 import org.openqa.grid.internal.listeners.SelfHealingProxy;
 import org.openqa.grid.web.Hub;
 import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.http.HttpClient;
 import org.openqa.selenium.remote.server.log.LoggingManager;
 
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
 import de.zalando.ep.zalenium.proxy.AutoStartProxySet;
 import de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy;
 import de.zalando.ep.zalenium.proxy.DockeredSeleniumStarter;
+import de.zalando.ep.zalenium.proxy.PredictiveWarmPoolPolicy;
+import de.zalando.ep.zalenium.simulation.SessionTraceRecorder;
 import de.zalando.ep.zalenium.util.Environment;
 import de.zalando.ep.zalenium.util.ZaleniumConfiguration;
 import io.prometheus.client.Collector;
@@ -33,16 +39,20 @@ import io.prometheus.client.Histogram;
 
 import java.net.URL;
 import java.time.Clock;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -67,15 +77,43 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
             .register();
     private static final Gauge seleniumTestSessionsWaiting = Gauge.build()
             .name("selenium_test_sessions_waiting").help("The number of Selenium test sessions that are waiting for a container").register();
+    private static final Histogram seleniumMatcherSignalToAssignmentLatency = Histogram.build()
+            .name("selenium_matcher_signal_to_assignment_latency_seconds")
+            .help("Time between an event waking up the matcher and the end of the assignment pass that handled it.")
+            .labelNames("event")
+            .buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5)
+            .register();
+    private static final String DEFAULT_SHARD = "*";
     // lock for anything modifying the tests session currently running on this
     // registry.
     private final ReentrantLock lock = new ReentrantLock();
-    private final Condition testSessionAvailable = lock.newCondition();
     private final ProxySet proxies;
     private final ActiveTestSessions activeTestSessions = new ActiveTestSessions();
-    private final NewSessionRequestQueue newSessionQueue;
-    private final Matcher matcherThread = new Matcher();
+    // Lock free lookups for the command routing and the releases, updated together with activeTestSessions.
+    private final ActiveSessionIndex activeSessionIndex = new ActiveSessionIndex();
+    private final HttpClientCache httpClientCache = new HttpClientCache(httpClientFactory);
+    // When sharding is enabled, each browser gets its own queue, lock and matcher thread. Otherwise a single shard
+    // shares the registry lock.
+    private final boolean shardedMatcher = ZaleniumConfiguration.isShardedMatcher();
+    private final Map<String, MatcherShard> shards = new ConcurrentHashMap<>();
+    // Browser names of the registered proxies and of the containers started on demand. Only these get their own
+    // shard, requests for any other browser go to the default one, so clients cannot create matcher threads.
+    private final Set<String> shardKeys = ConcurrentHashMap.newKeySet();
     private final Set<RemoteProxy> registeringProxies = ConcurrentHashMap.newKeySet();
+    private final SessionReleaseExecutor releaseExecutor = new SessionReleaseExecutor(
+            ZaleniumConfiguration.getReleaseThreads(), ZaleniumConfiguration.getReleaseQueueSize());
+    private final AdmissionControl admissionControl = new AdmissionControl(ZaleniumConfiguration.getMaxQueuedRequests(),
+            ZaleniumConfiguration.getMaxEstimatedWait(), ZaleniumConfiguration.getMaxQueuedRequestsPerBuild(),
+            Clock.systemDefaultZone());
+    private final SessionRequestDeadlines requestDeadlines = new SessionRequestDeadlines(
+            ZaleniumConfiguration.getNewSessionWaitTimeout(), Clock.systemDefaultZone(),
+            (request, end) -> removeNewSessionRequest(request, SessionRequestDeadlines.EXPIRED, end));
+    private final FairShareScheduler fairShareScheduler = new FairShareScheduler(
+            ZaleniumConfiguration.isFairShareScheduling(), ZaleniumConfiguration.getBuildWeights(),
+            ZaleniumConfiguration.getMaxSessionsPerBuild());
+    // Matcher events and releases handed over to other threads that did not finish yet, see isIdle()
+    private final AtomicInteger pendingWork = new AtomicInteger();
+    private volatile boolean started = false;
     private volatile boolean stop = false;
 
     @SuppressWarnings("unused")
@@ -85,21 +123,27 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
 
     public ZaleniumRegistry(Hub hub) {
         super(hub);
-        this.newSessionQueue = new NewSessionRequestQueue();
+        getShard(DEFAULT_SHARD);
 
         long minContainers = ZaleniumConfiguration.getDesiredContainersOnStartup();
         long maxContainers = ZaleniumConfiguration.getMaxDockerSeleniumContainers();
         long timeToWaitToStart = ZaleniumConfiguration.getTimeToWaitToStart();
         boolean waitForAvailableNodes = ZaleniumConfiguration.isWaitForAvailableNodes();
-        int maxTimesToProcessRequest = ZaleniumConfiguration.getMaxTimesToProcessRequest();
         int checkContainersInterval = ZaleniumConfiguration.getCheckContainersInterval();
+        int containerStartThreads = ZaleniumConfiguration.getContainerStartThreads();
 
         DockeredSeleniumStarter starter = new DockeredSeleniumStarter();
 
         AutoStartProxySet autoStart = new AutoStartProxySet(false, minContainers, maxContainers, timeToWaitToStart,
-            waitForAvailableNodes, starter, Clock.systemDefaultZone(), maxTimesToProcessRequest, checkContainersInterval);
+            waitForAvailableNodes, starter, Clock.systemDefaultZone(), checkContainersInterval,
+            containerStartThreads);
         proxies = autoStart;
-        this.matcherThread.setUncaughtExceptionHandler(new UncaughtExceptionHandler());
+        followContainers(autoStart);
+        if (ZaleniumConfiguration.isPredictiveWarmPool()) {
+            autoStart.setWarmPoolPolicy(new PredictiveWarmPoolPolicy(ZaleniumConfiguration.getWarmPoolTargetWait(),
+                    ZaleniumConfiguration.getWarmPoolScaleDownDelay()));
+        }
+        autoStart.watchContainers(ZaleniumConfiguration.getContainerReconcileInterval());
 
         new TestSessionCollectorExports(proxies).register();
         new ContainerStatusCollectorExports(autoStart.getStartedContainers()).register();
@@ -113,9 +157,20 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
      */
     public ZaleniumRegistry(Hub hub, ProxySet proxySet) {
         super(hub);
-        this.newSessionQueue = new NewSessionRequestQueue();
+        getShard(DEFAULT_SHARD);
         proxies = proxySet;
-        this.matcherThread.setUncaughtExceptionHandler(new UncaughtExceptionHandler());
+        if (proxySet instanceof AutoStartProxySet) {
+            followContainers((AutoStartProxySet) proxySet);
+        }
+    }
+
+    /*
+        The browsers of docker-selenium get their own shard, and the queue is matched again after each containers
+        check.
+     */
+    private void followContainers(AutoStartProxySet autoStart) {
+        DockeredSeleniumStarter.getCapabilities().forEach(capabilities -> addShardKey(capabilities.getBrowserName()));
+        autoStart.setContainersCheckedListener(() -> fireMatcherEvent(MatcherEvent.Type.CONTAINERS_CHECKED));
     }
 
     /**
@@ -145,7 +200,9 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
     }
 
     public void start() {
-        matcherThread.start();
+        started = true;
+        shards.values().forEach(MatcherShard::start);
+        requestDeadlines.start();
 
         // freynaud : TODO
         // Grid registry is in a valid state when testSessionAvailable.await(); from
@@ -159,7 +216,7 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
 
     /**
      * Ends this test session for the hub, releasing the resources in the hub / registry. It does not
-     * release anything on the remote. The resources are released in a separate thread, so the call
+     * release anything on the remote. The resources are released by the release executor, so the call
      * returns immediately. It allows release with long duration not to block the test while the hub is
      * releasing the resource.
      *
@@ -174,8 +231,18 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
         }
         String internalKey = Optional.ofNullable(session.getInternalKey()).orElse("No internal key");
         ExternalSessionKey externalKey = Optional.ofNullable(session.getExternalKey()).orElse(new ExternalSessionKey("No external key was assigned"));
-        new Thread(() -> _release(session.getSlot(), reason), "Terminate Test Session int id: ["
-                + internalKey + "] ext id: [" + externalKey + "] container: [" + remoteName + "]").start();
+        pendingWork.incrementAndGet();
+        boolean releasing = releaseExecutor.execute("Terminate Test Session int id: [" + internalKey + "] ext id: ["
+                + externalKey + "] container: [" + remoteName + "]", () -> {
+            try {
+                _release(session.getSlot(), reason);
+            } finally {
+                pendingWork.decrementAndGet();
+            }
+        });
+        if (!releasing) {
+            pendingWork.decrementAndGet();
+        }
     }
 
     /**
@@ -196,13 +263,17 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
 
         final String internalKey = testSlot.getInternalKey();
 
+        boolean removed;
         try {
             lock.lock();
             testSlot.finishReleaseProcess();
-            release(internalKey, reason);
+            removed = removeActiveSession(internalKey, reason);
         } finally {
             lock.unlock();
         }
+        if (removed) {
+            fireMatcherEvent(MatcherEvent.Type.SLOT_RELEASED);
+        }
     }
 
     /**
@@ -218,6 +289,7 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
             final RemoteProxy p = proxies.remove(proxy);
             p.getTestSlots().forEach(testSlot -> forceRelease(testSlot, SessionTerminationReason.PROXY_REREGISTRATION));
             p.teardown();
+            httpClientCache.evict(p.getRemoteHost());
         }
     }
 
@@ -239,68 +311,121 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
      */
     public void stop() {
         stop = true;
-        matcherThread.interrupt();
-        newSessionQueue.stop();
+        shards.values().forEach(MatcherShard::stop);
+        releaseExecutor.shutdown();
+        requestDeadlines.stop();
         proxies.teardown();
+        SessionTraceRecorder.getInstance().stop();
     }
 
     /**
+     * Queues the request, unless the admission control rejects it with a {@link SessionRequestRejectedException}.
+     * A request resumed after being parked already carries its outcome, so it is not queued again.
+     *
      * @see GridRegistry#addNewSessionRequest(RequestHandler)
      */
     public void addNewSessionRequest(RequestHandler handler) {
+        TestSession boundSession = ParkedNewSessionRequest.takeBoundSession(handler.getRequest());
+        if (boundSession != null) {
+            handler.bindSession(boundSession);
+            return;
+        }
+        String abortReason = ParkedNewSessionRequest.takeAbortReason(handler.getRequest());
+        if (abortReason != null) {
+            throw new GridException(abortReason);
+        }
+        Map<String, Object> requestedCapabilities = handler.getRequest().getDesiredCapabilities();
+        // Normalized once here, the matcher, the starter and the proxy reuse it
+        CanonicalCapabilities.of(requestedCapabilities);
+        SessionTraceRecorder.getInstance().requestArrived(requestedCapabilities);
         try {
             lock.lock();
-            Map<String, Object> requestedCapabilities = handler.getRequest().getDesiredCapabilities();
             proxies.verifyAbilityToHandleDesiredCapabilities(requestedCapabilities);
+        } finally {
+            lock.unlock();
+        }
+        MatcherShard shard = getShard(getShardKey(requestedCapabilities));
+        try {
+            shard.lock.lock();
+            lock.lock();
+            admissionControl.admit(handler, getNewSessionRequestCount());
             requestedCapabilities.forEach((k, v) -> MDC.put(k,v.toString()));
             LOG.info("Adding sessionRequest for " + requestedCapabilities.toString());
-            newSessionQueue.add(handler);
+            shard.newSessionQueue.add(handler);
+            if (proxies instanceof AutoStartProxySet) {
+                ((AutoStartProxySet) proxies).requestArrived(requestedCapabilities);
+            }
+            requestDeadlines.requestQueued(handler);
+            fairShareScheduler.requestQueued(handler);
             seleniumTestSessionsWaiting.inc();
-            fireMatcherStateChanged();
         } finally {
             MDC.clear();
             lock.unlock();
+            shard.lock.unlock();
         }
+        shard.signal(MatcherEvent.requestAdded(handler));
     }
 
-    /**
-     * iterates the list of incoming session request to find a potential match in the list of proxies.
-     * If something changes in the registry, the matcher iteration is stopped to account for that
-     * change.
-     */
-    private void assignRequestToProxy() {
-        while (!stop) {
-            try {
-                testSessionAvailable.await(5, TimeUnit.SECONDS);
-                newSessionQueue.processQueue(this::takeRequestHandler, getHub().getConfiguration().prioritizer);
-                // Just make sure we delete anything that is logged on this thread from memory
-                LoggingManager.perSessionLogHandler().clearThreadTempLogs();
-            } catch (InterruptedException e) {
-                LOG.info("Shutting down registry.");
-            } catch (Throwable t) {
-                LOG.error("Unhandled exception in Matcher thread.", t);
-            }
+    private String getShardKey(Map<String, Object> requestedCapabilities) {
+        if (!shardedMatcher) {
+            return DEFAULT_SHARD;
         }
+        Object browserName = requestedCapabilities.get(CapabilityType.BROWSER_NAME);
+        String key = browserName == null ? null : browserName.toString().toLowerCase();
+        return key != null && shardKeys.contains(key) ? key : DEFAULT_SHARD;
+    }
 
+    private void addShardKey(Object browserName) {
+        if (shardedMatcher && browserName != null) {
+            shardKeys.add(browserName.toString().toLowerCase());
+        }
     }
 
-    private boolean takeRequestHandler(RequestHandler handler) {
-        final TestSession session = proxies.getNewSession(handler.getRequest().getDesiredCapabilities());
-        final boolean sessionCreated = session != null;
-        if (sessionCreated) {
-            String remoteName = session.getSlot().getProxy().getId();
-            long timeToAssignProxy = System.currentTimeMillis() - handler.getRequest().getCreationTime();
-            LOG.info("Test session with internal key {} assigned to remote ({}) after {} seconds ({} ms).",
-                                  session.getInternalKey(),
-                                  remoteName,
-                                  timeToAssignProxy / 1000,
-                                  timeToAssignProxy);
-            seleniumTestSessionStartLatency.observe(timeToAssignProxy / Collector.MILLISECONDS_PER_SECOND);
-            seleniumTestSessionsWaiting.dec();
+    private MatcherShard getShard(String key) {
+        MatcherShard shard = shards.computeIfAbsent(key, k -> DEFAULT_SHARD.equals(k) && !shardedMatcher ?
+                new MatcherShard(k, lock) : new MatcherShard(k, new ReentrantLock()));
+        if (started) {
+            shard.start();
+        }
+        return shard;
+    }
+
+    private TestSession getNewSession(Map<String, Object> desiredCapabilities) {
+        if (proxies instanceof AutoStartProxySet) {
+            // Unmatched requests are provisioned once the whole pass is done, see assignRequestToProxy().
+            return ((AutoStartProxySet) proxies).assignSession(desiredCapabilities);
+        }
+        return proxies.getNewSession(desiredCapabilities);
+    }
+
+    private void bindSession(RequestHandler handler, TestSession session) {
+        String remoteName = session.getSlot().getProxy().getId();
+        long assigned = System.currentTimeMillis();
+        long timeToAssignProxy = assigned - handler.getRequest().getCreationTime();
+        LOG.info("Test session with internal key {} assigned to remote ({}) after {} seconds ({} ms).",
+                              session.getInternalKey(),
+                              remoteName,
+                              timeToAssignProxy / 1000,
+                              timeToAssignProxy);
+        seleniumTestSessionStartLatency.observe(timeToAssignProxy / Collector.MILLISECONDS_PER_SECOND);
+        SessionStartPhases.getInstance().sessionAssigned(
+                session.getSlot().getProxy() instanceof DockerSeleniumRemoteProxy ? remoteName : null,
+                handler.getRequest().getCreationTime(), assigned);
+        SessionTraceRecorder.getInstance().sessionAssigned(handler.getRequest().getDesiredCapabilities(), remoteName);
+        seleniumTestSessionsWaiting.dec();
+        // Called by the matcher while holding its shard lock, the registry state is still changed under the
+        // registry lock only. Shard locks are always taken before the registry lock.
+        try {
+            lock.lock();
+            admissionControl.requestAssigned(handler);
+            requestDeadlines.requestLeft(handler, SessionRequestDeadlines.ASSIGNED);
+            fairShareScheduler.sessionStarted(handler, session);
             activeTestSessions.add(session);
-            handler.bindSession(session);
+            activeSessionIndex.add(session);
+        } finally {
+            lock.unlock();
         }
-        return sessionCreated;
+        handler.bindSession(session);
     }
 
     /**
@@ -311,22 +436,29 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
      * @param reason  the reason for the release
      */
     private void release(TestSession session, SessionTerminationReason reason) {
+        boolean removed;
         try {
             lock.lock();
-            boolean removed = activeTestSessions.remove(session, reason);
+            removed = activeTestSessions.remove(session, reason);
             if (removed) {
-                fireMatcherStateChanged();
+                activeSessionIndex.remove(session);
+                fairShareScheduler.sessionEnded(session);
             }
         } finally {
             lock.unlock();
         }
+        // Signalling never waits for a running pass. With a single shard the pass holds the registry lock though.
+        if (removed) {
+            sessionEnded(session);
+            fireMatcherEvent(MatcherEvent.Type.SLOT_RELEASED);
+        }
     }
 
     private void release(String internalKey, SessionTerminationReason reason) {
         if (internalKey == null) {
             return;
         }
-        final TestSession session = activeTestSessions.findSessionByInternalKey(internalKey);
+        final TestSession session = activeSessionIndex.findByInternalKey(internalKey);
         if (session != null) {
             release(session, reason);
             return;
@@ -334,6 +466,35 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
         LOG.warn("Tried to release session with internal key {} but couldn't find it.", internalKey);
     }
 
+    /*
+        Same as release(String, SessionTerminationReason), but expected to run while holding the registry lock. The
+        caller signals the matcher once the lock has been released.
+     */
+    private boolean removeActiveSession(String internalKey, SessionTerminationReason reason) {
+        if (internalKey == null) {
+            return false;
+        }
+        final TestSession session = activeSessionIndex.findByInternalKey(internalKey);
+        if (session != null) {
+            boolean removed = activeTestSessions.remove(session, reason);
+            if (removed) {
+                activeSessionIndex.remove(session);
+                fairShareScheduler.sessionEnded(session);
+                sessionEnded(session);
+            }
+            return removed;
+        }
+        LOG.warn("Tried to release session with internal key {} but couldn't find it.", internalKey);
+        return false;
+    }
+
+    private void sessionEnded(TestSession session) {
+        SessionTraceRecorder.getInstance().sessionEnded(session.getRequestedCapabilities());
+        if (proxies instanceof AutoStartProxySet) {
+            ((AutoStartProxySet) proxies).sessionEnded(session);
+        }
+    }
+
     /**
      * @see GridRegistry#add(RemoteProxy)
      */
@@ -368,7 +529,6 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
             }
 
             registeringProxies.add(proxy);
-            fireMatcherStateChanged();
         } finally {
             lock.unlock();
         }
@@ -392,12 +552,15 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
                     ((SelfHealingProxy) proxy).startPolling();
                 }
                 proxies.add(proxy);
+                proxy.getTestSlots().forEach(slot -> addShardKey(slot.getCapabilities().get(CapabilityType.BROWSER_NAME)));
                 LOG.info("Registered a node {}", proxy);
-                fireMatcherStateChanged();
             }
         } finally {
             lock.unlock();
         }
+        if (listenerOk) {
+            fireMatcherEvent(MatcherEvent.Type.PROXY_REGISTERED);
+        }
 
     }
 
@@ -408,8 +571,15 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
         proxies.setThrowOnCapabilityNotPresent(throwOnCapabilityNotPresent);
     }
 
-    private void fireMatcherStateChanged() {
-        testSessionAvailable.signalAll();
+    private void fireMatcherEvent(MatcherEvent.Type type) {
+        for (MatcherShard shard : shards.values()) {
+            // Checking containers is periodic, no need to wake up shards with nothing to provision.
+            if (type == MatcherEvent.Type.CONTAINERS_CHECKED
+                    && shard.newSessionQueue.getNewSessionRequestCount() == 0) {
+                continue;
+            }
+            shard.signal(MatcherEvent.of(type));
+        }
     }
 
     /**
@@ -430,14 +600,24 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
      * @see GridRegistry#getSession(ExternalSessionKey)
      */
     public TestSession getSession(ExternalSessionKey externalKey) {
-        return activeTestSessions.findSessionByExternalKey(externalKey);
+        return activeSessionIndex.findByExternalKey(externalKey);
+    }
+
+    /**
+     * Indexes the session by the external key the node answered the new session request with, so the commands of
+     * the session find it without scanning the active sessions. Called by the proxies once the session was created.
+     */
+    public void externalKeyAssigned(TestSession session) {
+        activeSessionIndex.externalKeyAssigned(session);
     }
 
     /**
      * @see GridRegistry#getExistingSession(ExternalSessionKey)
      */
     public TestSession getExistingSession(ExternalSessionKey externalKey) {
-        return activeTestSessions.getExistingSession(externalKey);
+        TestSession session = activeSessionIndex.findByExternalKey(externalKey);
+        // Not active anymore, the active sessions know why it was terminated.
+        return session != null ? session : activeTestSessions.getExistingSession(externalKey);
     }
 
     /**
@@ -445,14 +625,36 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
      */
     public int getNewSessionRequestCount() {
         // may race
-        return newSessionQueue.getNewSessionRequestCount();
+        return shards.values().stream().mapToInt(shard -> shard.newSessionQueue.getNewSessionRequestCount()).sum();
+    }
+
+    /**
+     * Tells whether the matchers handled all their events and the terminated sessions were released. Only stable
+     * while nobody else calls the registry, e.g. between two events of the
+     * {@link de.zalando.ep.zalenium.simulation.GridSimulator}.
+     *
+     * @return true when no matcher pass and no release is waiting or running.
+     */
+    public boolean isIdle() {
+        return pendingWork.get() == 0;
     }
 
     /**
      * @see GridRegistry#clearNewSessionRequests()
      */
     public void clearNewSessionRequests() {
-        newSessionQueue.clearNewSessionRequests();
+        shards.values().forEach(shard -> shard.newSessionQueue.clearNewSessionRequests());
+        try {
+            lock.lock();
+            admissionControl.clear();
+            requestDeadlines.clear();
+            fairShareScheduler.clear();
+        } finally {
+            lock.unlock();
+        }
+        if (proxies instanceof AutoStartProxySet) {
+            ((AutoStartProxySet) proxies).clearPendingRequests();
+        }
         seleniumTestSessionsWaiting.set(0);
     }
 
@@ -460,9 +662,43 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
      * @see GridRegistry#removeNewSessionRequest(RequestHandler)
      */
     public boolean removeNewSessionRequest(RequestHandler request) {
-        boolean wasRemoved = newSessionQueue.removeNewSessionRequest(request);
+        return removeNewSessionRequest(request, SessionRequestDeadlines.REMOVED, null);
+    }
+
+    /*
+        The request is removed under the lock of its shard, so a running pass cannot bind it at the same time. When it
+        was still queued, onRemoved runs under that lock too.
+     */
+    private boolean removeNewSessionRequest(RequestHandler request, String outcome,
+                                            Consumer<RequestHandler> onRemoved) {
+        boolean wasRemoved = false;
+        for (MatcherShard shard : shards.values()) {
+            try {
+                shard.lock.lock();
+                wasRemoved = shard.newSessionQueue.removeNewSessionRequest(request);
+                if (wasRemoved && onRemoved != null) {
+                    onRemoved.accept(request);
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+            if (wasRemoved) {
+                break;
+            }
+        }
         if (wasRemoved) {
             seleniumTestSessionsWaiting.dec();
+            try {
+                lock.lock();
+                admissionControl.requestLeft(request);
+                requestDeadlines.requestLeft(request, outcome);
+                fairShareScheduler.requestLeft(request);
+            } finally {
+                lock.unlock();
+            }
+            if (proxies instanceof AutoStartProxySet) {
+                ((AutoStartProxySet) proxies).requestLeft(request.getRequest().getDesiredCapabilities());
+            }
         }
         return wasRemoved;
     }
@@ -471,7 +707,9 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
      * @see GridRegistry#getDesiredCapabilities()
      */
     public Iterable<DesiredCapabilities> getDesiredCapabilities() {
-        return newSessionQueue.getDesiredCapabilities();
+        List<DesiredCapabilities> desiredCapabilities = new ArrayList<>();
+        shards.values().forEach(shard -> shard.newSessionQueue.getDesiredCapabilities().forEach(desiredCapabilities::add));
+        return desiredCapabilities;
     }
 
     /**
@@ -489,34 +727,12 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
         return proxies.getProxyById(id);
     }
 
+    /**
+     * Clients are cached per node URL and timeouts, so the forwarded commands reuse the pooled connections.
+     */
     @Override
     public HttpClient getHttpClient(URL url, int connectionTimeout, int readTimeout) {
-        // https://github.com/zalando/zalenium/issues/491
-        int maxTries = 3;
-        for (int i = 1; i <= maxTries; i++) {
-            try {
-                HttpClient client = httpClientFactory.builder()
-                                        .connectionTimeout(Duration.ofSeconds(connectionTimeout))
-                                        .readTimeout(Duration.ofSeconds(readTimeout))
-                                        .createClient(url);
-                if (i > 1) {
-                    LOG.warn("Successfully created HttpClient for url {}, after attempt #{}", url, i);
-                }
-                return client;
-            } catch (Exception | AssertionError e) {
-                String message = String.format("Error while getting the HttpClient for url %s, attempt #%s", url, i);
-                LOG.debug(message, e);
-                if (i == maxTries) {
-                    throw e;
-                }
-                try {
-                    Thread.sleep((new Random().nextInt(5) + 1) * 1000);
-                } catch (InterruptedException exception) {
-                    LOG.error("Something went wrong while delaying the HttpClient creation after a failed attempt", exception);
-                }
-            }
-        }
-        throw new IllegalStateException(String.format("Something went wrong while creating a HttpClient for url %s", url));
+        return httpClientCache.getHttpClient(url, connectionTimeout, readTimeout);
     }
 
     protected static class UncaughtExceptionHandler implements Thread.UncaughtExceptionHandler {
@@ -525,24 +741,133 @@ public class ZaleniumRegistry extends BaseGridRegistry implements GridRegistry {
         }
     }
 
+    /**
+     * A partition of the incoming new session requests, with its own queue, lock, event queue and matcher thread.
+     * Only the requests are partitioned, every shard matches them against all the proxies: a docker-selenium node
+     * offers several browsers, so it cannot belong to a single shard.
+     */
+    private class MatcherShard {
+        private final String key;
+        private final ReentrantLock lock;
+        private final NewSessionRequestQueue newSessionQueue = new NewSessionRequestQueue();
+        // Acts as the dirty flag, the matcher only runs a pass when something happened since the previous one.
+        // Adding to it never blocks, so nobody waits for a running pass to signal the next one.
+        private final BlockingQueue<MatcherEvent> pendingEvents = new LinkedBlockingQueue<>();
+        private final Matcher matcherThread;
+        private final AtomicBoolean matcherStarted = new AtomicBoolean(false);
+
+        MatcherShard(String key, ReentrantLock lock) {
+            this.key = key;
+            this.lock = lock;
+            this.matcherThread = new Matcher(this);
+            this.matcherThread.setUncaughtExceptionHandler(new UncaughtExceptionHandler());
+        }
+
+        void start() {
+            if (matcherStarted.compareAndSet(false, true)) {
+                matcherThread.start();
+            }
+        }
+
+        void stop() {
+            matcherThread.interrupt();
+            newSessionQueue.stop();
+        }
+
+        void signal(MatcherEvent event) {
+            pendingWork.incrementAndGet();
+            pendingEvents.add(event);
+        }
+
+        /**
+         * iterates the list of incoming session request to find a potential match in the list of proxies.
+         * The matcher sleeps until an event arrives, and then only the requests affected by the pending events
+         * are visited. Requests left without a session after a pass are handed over to provisioning together.
+         */
+        private void assignRequestToProxy() {
+            while (!stop) {
+                // Waiting without the shard lock, it is only held during the pass.
+                List<MatcherEvent> events = new ArrayList<>();
+                try {
+                    events.add(pendingEvents.take());
+                    pendingEvents.drainTo(events);
+                    lock.lock();
+                    try {
+                        runPass(events);
+                    } finally {
+                        lock.unlock();
+                    }
+                    long now = System.nanoTime();
+                    events.forEach(handled -> seleniumMatcherSignalToAssignmentLatency
+                            .labels(handled.getType().name().toLowerCase())
+                            .observe((now - handled.getCreatedNanos()) / Collector.NANOSECONDS_PER_SECOND));
+                    // Just make sure we delete anything that is logged on this thread from memory
+                    LoggingManager.perSessionLogHandler().clearThreadTempLogs();
+                } catch (InterruptedException e) {
+                    LOG.info("Shutting down registry.");
+                } catch (Throwable t) {
+                    LOG.error("Unhandled exception in Matcher thread.", t);
+                } finally {
+                    pendingWork.addAndGet(-events.size());
+                }
+            }
+        }
+
+        private void runPass(List<MatcherEvent> events) {
+            if (newSessionQueue.getNewSessionRequestCount() == 0) {
+                return;
+            }
+            AssignmentPass pass = new AssignmentPass(ZaleniumRegistry.this::getNewSession,
+                    ZaleniumRegistry.this::bindSession, getAffectedRequests(events));
+            // Requests of a build over its cap are deferred, they are not provisioned either.
+            newSessionQueue.processQueue(
+                    handler -> fairShareScheduler.mayStartSession(handler) ? pass.assign(handler) : pass.defer(handler),
+                    requestDeadlines.withDeadlines(fairShareScheduler.withFairShare(
+                            getHub().getConfiguration().prioritizer)));
+            if (pass.hasDeferred()) {
+                newSessionQueue.processQueue(pass::assignDeferred, null);
+            }
+            if (proxies instanceof AutoStartProxySet) {
+                ((AutoStartProxySet) proxies).requestContainers(pass.getUnmatchedCapabilities());
+            }
+        }
+
+        /*
+            Null when the whole queue needs to be matched again.
+         */
+        private Set<RequestHandler> getAffectedRequests(List<MatcherEvent> events) {
+            Set<RequestHandler> affectedRequests = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (MatcherEvent event : events) {
+                if (event.affectsAllRequests()) {
+                    return null;
+                }
+                affectedRequests.add(event.getRequest());
+            }
+            return affectedRequests;
+        }
+
+        @Override
+        public String toString() {
+            return "MatcherShard [" + key + "]";
+        }
+    }
+
     /**
      * iterates the queue of incoming new session request and assign them to proxy after they've been
      * sorted by priority, with priority defined by the prioritizer.
      */
     class Matcher extends Thread { // Thread safety reviewed
 
-        Matcher() {
-            super("Matcher thread");
+        private final MatcherShard shard;
+
+        Matcher(MatcherShard shard) {
+            super(DEFAULT_SHARD.equals(shard.key) ? "Matcher thread" : "Matcher thread [" + shard.key + "]");
+            this.shard = shard;
         }
 
         @Override
         public void run() {
-            try {
-                lock.lock();
-                assignRequestToProxy();
-            } finally {
-                lock.unlock();
-            }
+            shard.assignRequestToProxy();
         }
 
     }
@@ -0,0 +1,76 @@
+package de.zalando.ep.zalenium.servlet;
+
+import de.zalando.ep.zalenium.registry.ParkedNewSessionRequest;
+import de.zalando.ep.zalenium.util.ZaleniumConfiguration;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.web.servlet.handler.RequestType;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Parks new session requests with an {@link AsyncContext} while they wait for a node, so they do not hold a Jetty
+ * thread. Once the request is resumed, it continues to the Selenium DriverServlet which forwards it to the node.
+ * Only active when ZALENIUM_ASYNC_NEW_SESSION_REQUESTS is set to true.
+ */
+public class AsyncNewSessionFilter implements Filter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncNewSessionFilter.class.getName());
+
+    private ServletContext servletContext;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        servletContext = filterConfig.getServletContext();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        GridRegistry registry = (GridRegistry) servletContext.getAttribute(GridRegistry.KEY);
+        if (!ZaleniumConfiguration.isAsyncNewSessionRequests() || registry == null || !request.isAsyncSupported()
+                || !"POST".equalsIgnoreCase(((HttpServletRequest) request).getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // The body can only be read once, the wrapper keeps it for the DriverServlet.
+        SeleniumBasedRequest seleniumRequest = SeleniumBasedRequest.createFromRequest((HttpServletRequest) request,
+                registry);
+        if (seleniumRequest.getRequestType() != RequestType.START_SESSION) {
+            chain.doFilter(seleniumRequest, response);
+            return;
+        }
+
+        AsyncContext asyncContext = request.startAsync(seleniumRequest, response);
+        int newSessionWaitTimeout = Optional.ofNullable(registry.getHub())
+                .map(hub -> hub.getConfiguration().newSessionWaitTimeout).orElse(-1);
+        asyncContext.setTimeout(Math.max(0, newSessionWaitTimeout));
+        ParkedNewSessionRequest parkedRequest = new ParkedNewSessionRequest(seleniumRequest,
+                (HttpServletResponse) response, registry, asyncContext);
+        try {
+            registry.addNewSessionRequest(parkedRequest);
+        } catch (Exception e) {
+            // Resuming right away, the DriverServlet will go through the usual path and answer with the error.
+            LOGGER.debug("New session request could not be parked", e);
+            parkedRequest.abort(e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,60 @@
+package de.zalando.ep.zalenium.servlet;
+
+import de.zalando.ep.zalenium.registry.SessionRequestRejectedException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+
+/**
+ * The Selenium DriverServlet answers any failed new session request with a 500. When the request was rejected by the
+ * admission control, this filter turns that answer into a 503 with a Retry-After header, so clients know they can
+ * back off and try again.
+ */
+public class RetryAfterFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        chain.doFilter(request, new RetryAfterResponse((HttpServletRequest) request, (HttpServletResponse) response));
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static class RetryAfterResponse extends HttpServletResponseWrapper {
+        private final HttpServletRequest request;
+
+        RetryAfterResponse(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            Object retryAfter = request.getAttribute(SessionRequestRejectedException.RETRY_AFTER_ATTRIBUTE);
+            if (retryAfter != null && sc == HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+                super.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                setHeader("Retry-After", retryAfter.toString());
+                return;
+            }
+            super.setStatus(sc);
+        }
+    }
+}
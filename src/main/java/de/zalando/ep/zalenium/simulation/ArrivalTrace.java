@@ -0,0 +1,170 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.CapabilityType;
+
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+
+/**
+ * New session requests to replay, with the time they arrive and how long their session lasts once started.
+ *
+ * The text format has one arrival per line, blank lines and lines starting with # are ignored:
+ * <pre>
+ * offsetMillis,browserName,sessionMillis[,screenResolution[,timeZone]]
+ * </pre>
+ * A trace recorded by the hub with {@link SessionTraceRecorder} can be turned into arrivals with
+ * {@link #fromSessionTrace(Reader)}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ArrivalTrace {
+
+    private final List<Arrival> arrivals;
+
+    public ArrivalTrace(List<Arrival> arrivals) {
+        List<Arrival> sorted = new ArrayList<>(arrivals);
+        sorted.sort(Comparator.comparingLong(Arrival::getOffsetMillis));
+        this.arrivals = Collections.unmodifiableList(sorted);
+    }
+
+    public static ArrivalTrace parse(Reader reader) throws IOException {
+        List<Arrival> arrivals = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            try {
+                arrivals.add(new Arrival(Long.parseLong(fields[0].trim()), fields[1].trim(),
+                        Long.parseLong(fields[2].trim()), field(fields, 3), field(fields, 4)));
+            } catch (RuntimeException e) {
+                throw new IOException(String.format("Invalid arrival in line %s: %s", lineNumber, line), e);
+            }
+        }
+        return new ArrivalTrace(arrivals);
+    }
+
+    /**
+     * Reads the requests of a trace recorded by {@link SessionTraceRecorder}. Offsets are relative to the first
+     * request, and sessions last from their assignment until they ended. Requests that were never assigned and
+     * sessions that did not end before the recording stopped get a session of 0 ms.
+     */
+    public static ArrivalTrace fromSessionTrace(Reader reader) throws IOException {
+        Map<String, String[]> requests = new LinkedHashMap<>();
+        Map<String, Long> assigned = new HashMap<>();
+        Map<String, Long> ended = new HashMap<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(",", -1);
+            if (fields.length < 3) {
+                throw new IOException(String.format("Invalid event in line %s: %s", lineNumber, line));
+            }
+            switch (fields[1]) {
+                case SessionTraceRecorder.REQUEST:
+                    requests.putIfAbsent(fields[2], fields);
+                    break;
+                case SessionTraceRecorder.ASSIGNED:
+                    assigned.put(fields[2], Long.parseLong(fields[0]));
+                    break;
+                case SessionTraceRecorder.SESSION_END:
+                    ended.put(fields[2], Long.parseLong(fields[0]));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        List<Arrival> arrivals = new ArrayList<>();
+        long firstRequest = requests.values().stream().mapToLong(fields -> Long.parseLong(fields[0])).min().orElse(0);
+        requests.forEach((requestId, fields) -> {
+            Long assignedAt = assigned.get(requestId);
+            Long endedAt = ended.get(requestId);
+            long sessionMillis = assignedAt != null && endedAt != null ? Math.max(0, endedAt - assignedAt) : 0;
+            arrivals.add(new Arrival(Long.parseLong(fields[0]) - firstRequest, field(fields, 3), sessionMillis,
+                    field(fields, 6), field(fields, 7)));
+        });
+        return new ArrivalTrace(arrivals);
+    }
+
+    public List<Arrival> getArrivals() {
+        return arrivals;
+    }
+
+    private static String field(String[] fields, int index) {
+        return fields.length > index && !fields[index].trim().isEmpty() ? fields[index].trim() : null;
+    }
+
+    public static final class Arrival {
+        private final long offsetMillis;
+        private final String browserName;
+        private final long sessionMillis;
+        private final String screenResolution;
+        private final String timeZone;
+
+        public Arrival(long offsetMillis, String browserName, long sessionMillis, String screenResolution,
+                       String timeZone) {
+            this.offsetMillis = offsetMillis;
+            this.browserName = browserName;
+            this.sessionMillis = sessionMillis;
+            this.screenResolution = screenResolution;
+            this.timeZone = timeZone;
+        }
+
+        public long getOffsetMillis() {
+            return offsetMillis;
+        }
+
+        public String getBrowserName() {
+            return browserName;
+        }
+
+        public long getSessionMillis() {
+            return sessionMillis;
+        }
+
+        public String getScreenResolution() {
+            return screenResolution;
+        }
+
+        public String getTimeZone() {
+            return timeZone;
+        }
+
+        /**
+         * @return a new map each time, requests are told apart by identity as in the hub.
+         */
+        public Map<String, Object> toCapabilities() {
+            Map<String, Object> capabilities = new HashMap<>();
+            capabilities.put(CapabilityType.BROWSER_NAME, browserName);
+            capabilities.put(CapabilityType.PLATFORM_NAME, Platform.ANY);
+            if (screenResolution != null) {
+                capabilities.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, screenResolution);
+            }
+            if (timeZone != null) {
+                capabilities.put(ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX, timeZone);
+            }
+            return capabilities;
+        }
+    }
+}
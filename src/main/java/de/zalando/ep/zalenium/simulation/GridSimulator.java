@@ -0,0 +1,591 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.common.exception.GridException;
+import org.openqa.grid.internal.SessionTerminationReason;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.grid.internal.utils.configuration.GridHubConfiguration;
+import org.openqa.grid.internal.utils.configuration.GridNodeConfiguration;
+import org.openqa.grid.web.Hub;
+import org.openqa.selenium.MutableCapabilities;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.zalando.ep.zalenium.container.ContainerClient;
+import de.zalando.ep.zalenium.container.ContainerClientRegistration;
+import de.zalando.ep.zalenium.container.ContainerCreationStatus;
+import de.zalando.ep.zalenium.container.ContainerTerminationListener;
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+import de.zalando.ep.zalenium.proxy.AutoStartProxySet;
+import de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy;
+import de.zalando.ep.zalenium.proxy.DockeredSeleniumStarter;
+import de.zalando.ep.zalenium.proxy.PredictiveWarmPoolPolicy;
+import de.zalando.ep.zalenium.proxy.ProxySetScheduler;
+import de.zalando.ep.zalenium.registry.ZaleniumRegistry;
+import de.zalando.ep.zalenium.streams.InputStreamGroupIterator;
+import de.zalando.ep.zalenium.util.MockedRequestHandler;
+
+/**
+ * Discrete-event simulation of the hub queue and the container autoscaling, to try out the settings of
+ * {@link AutoStartProxySet} against an {@link ArrivalTrace} without docker. Hours of traffic are simulated in
+ * seconds, since time only moves from one event to the next.
+ *
+ * The requests go through a real {@link ZaleniumRegistry} and {@link AutoStartProxySet}, the proxy set runs on a
+ * {@link SimulatedClock}: its containers check, provisioning passes and container creations are events of the
+ * simulation, see {@link ProxySetScheduler}. The {@link DockeredSeleniumStarter} starts the containers through a fake
+ * {@link ContainerClient}, whose containers take the configured start, cleanup and stop latencies. The nodes
+ * registering from them are {@link DockerSeleniumRemoteProxy} instances whose sessions and idle time follow the
+ * simulated clock. The matchers and the releases of the registry run in their own threads as in the hub, the clock
+ * only moves on once the registry is idle, see {@link ZaleniumRegistry#isIdle()}.
+ *
+ * The admission control and the deadlines of the registry follow the system clock, so they do not take part: a
+ * request leaves the queue once it waited newSessionWaitTimeout in simulated time, and the requests the registry
+ * rejects, such as the ones for browsers that docker-selenium does not provide, are counted as not served.
+ */
+@SuppressWarnings("WeakerAccess")
+public class GridSimulator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GridSimulator.class.getName());
+    // Requests still waiting this long after the last arrival are left unserved.
+    private static final long MAX_DRAIN_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final long IDLE_CHECK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final SimulationConfig config;
+    private final SimulatedClock clock = new SimulatedClock(0);
+    private final Random random;
+    private final PriorityQueue<Event> events = new PriorityQueue<>(
+            Comparator.comparingLong((Event event) -> event.time).thenComparingLong(event -> event.sequence));
+    private final Map<String, SimulatedContainer> containers = new LinkedHashMap<>();
+    private final List<Long> queueWaits = new ArrayList<>();
+    private final SimulatedContainerClient containerClient = new SimulatedContainerClient();
+    private ZaleniumRegistry registry;
+    private long sequence;
+    private int pendingArrivals;
+    private int waitingRequests;
+    private int runningSessions;
+    private int sessionsCompleted;
+    private int requestsExpired;
+    private int requestsNotServed;
+    private int containersTookTooLongToStart;
+
+    public GridSimulator(SimulationConfig config) {
+        this.config = config;
+        this.random = new Random(config.getSeed());
+    }
+
+    /**
+     * Runs the simulation until all the requests got a session and the sessions ended. A simulator runs only once.
+     */
+    public SimulationReport run(ArrivalTrace trace) {
+        AutoStartProxySet proxySet = new AutoStartProxySet(true, config.getMinContainers(),
+                config.getMaxContainers(), config.getTimeToWaitToStart(), config.isWaitForAvailableNodes(),
+                new DockeredSeleniumStarter(containerClient), clock, new SimulatedScheduler());
+        if (config.isPredictiveWarmPool()) {
+            proxySet.setWarmPoolPolicy(new PredictiveWarmPoolPolicy(config.getWarmPoolTargetWait(),
+                    config.getWarmPoolScaleDownDelay()));
+        }
+        proxySet.watchContainers(config.getContainerReconcileInterval());
+        Hub hub = new Hub(new GridHubConfiguration());
+        registry = (ZaleniumRegistry) ZaleniumRegistry.newInstance(hub, proxySet);
+        try {
+            return simulate(trace);
+        } finally {
+            // Tears the proxy set down too
+            registry.stop();
+            // The hub creates its own registry, which is not used
+            hub.getRegistry().stop();
+        }
+    }
+
+    private SimulationReport simulate(ArrivalTrace trace) {
+        long lastArrival = 0;
+        for (ArrivalTrace.Arrival arrival : trace.getArrivals()) {
+            schedule(arrival.getOffsetMillis(), () -> requestArrived(arrival));
+            lastArrival = Math.max(lastArrival, arrival.getOffsetMillis());
+        }
+        pendingArrivals = trace.getArrivals().size();
+
+        Event event;
+        while ((event = nextEvent()) != null) {
+            if (event.time > lastArrival + MAX_DRAIN_MILLIS) {
+                LOGGER.warn("{} requests were still waiting {} ms after the last arrival.", waitingRequests,
+                        MAX_DRAIN_MILLIS);
+                break;
+            }
+            clock.advanceTo(event.time);
+            event.action.run();
+            awaitRegistry();
+            if (pendingArrivals == 0 && waitingRequests == 0 && runningSessions == 0) {
+                break;
+            }
+        }
+
+        long now = clock.millis();
+        long containerMillis = containers.values().stream()
+                .mapToLong(container -> (container.stoppedAt < 0 ? now : container.stoppedAt) - container.createdAt)
+                .sum();
+        return new SimulationReport(queueWaits.stream().mapToLong(Long::longValue).toArray(),
+                trace.getArrivals().size(), sessionsCompleted, requestsExpired, requestsNotServed, containers.size(),
+                containersTookTooLongToStart, containerMillis, now);
+    }
+
+    /*
+        The matchers and the releases run in the threads of the registry, they are done with an event before the
+        clock moves on.
+     */
+    private void awaitRegistry() {
+        while (!registry.isIdle()) {
+            LockSupport.parkNanos(IDLE_CHECK_NANOS);
+        }
+    }
+
+    private void requestArrived(ArrivalTrace.Arrival arrival) {
+        pendingArrivals--;
+        SimulatedRequest request = new SimulatedRequest(arrival);
+        // Counted before the matcher can see it
+        waitingRequests++;
+        try {
+            registry.addNewSessionRequest(request);
+        } catch (GridException e) {
+            // The hub answers right away, e.g. when no node provides the browser
+            waitingRequests--;
+            requestsNotServed++;
+            return;
+        }
+        if (config.getNewSessionWaitTimeout() > 0) {
+            schedule(clock.millis() + config.getNewSessionWaitTimeout(), () -> {
+                if (registry.removeNewSessionRequest(request)) {
+                    waitingRequests--;
+                    requestsExpired++;
+                }
+            });
+        }
+    }
+
+    /*
+        Called by the matcher of the registry.
+     */
+    private synchronized void sessionStarted(SimulatedRequest request, TestSession session) {
+        waitingRequests--;
+        runningSessions++;
+        queueWaits.add(clock.millis() - request.arrivedAt);
+        schedule(clock.millis() + request.sessionMillis, () -> clientStopped(session));
+    }
+
+    private void clientStopped(TestSession session) {
+        runningSessions--;
+        sessionsCompleted++;
+        ((SimulatedNode) session.getSlot().getProxy()).sessionStopped(session);
+    }
+
+    private synchronized Event nextEvent() {
+        return events.poll();
+    }
+
+    private synchronized void schedule(long time, Runnable action) {
+        events.add(new Event(time, sequence++, action));
+    }
+
+    private synchronized long sample(LatencyDistribution latency) {
+        return latency.sample(random);
+    }
+
+    /**
+     * Usage: GridSimulator traceFile [name=value ...], see {@link SimulationConfig.SimulationConfigBuilder#withSettings}
+     * for the settings.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: GridSimulator traceFile [minContainers=1] [maxContainers=10] "
+                    + "[startLatency=lognormal:8000:0.5] ...");
+            System.exit(1);
+        }
+        Map<String, String> settings = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String[] setting = args[i].split("=", 2);
+            if (setting.length != 2) {
+                throw new IllegalArgumentException("Expected name=value, got " + args[i]);
+            }
+            settings.put(setting[0], setting[1]);
+        }
+        SimulationConfig config = new SimulationConfig.SimulationConfigBuilder().withSettings(settings).build();
+        try (Reader reader = new FileReader(args[0])) {
+            System.out.println(new GridSimulator(config).run(ArrivalTrace.parse(reader)));
+        }
+    }
+
+    /*
+        Runs the checks and the provisioning passes as events. The creations take createLatency and at most
+        containerStartThreads of them run at the same time, the others wait for a thread, as in the thread pool of
+        the proxy set. Provisioning is signalled by the matcher of the registry, the rest runs in the events.
+     */
+    private final class SimulatedScheduler implements ProxySetScheduler {
+        private final Deque<Runnable> waitingCreations = new ArrayDeque<>();
+        private Runnable provisioning;
+        private boolean provisioningPending;
+        private int creationsRunning;
+        private volatile boolean stopped;
+
+        @Override
+        public void start(Runnable containersCheck, Runnable provisioning) {
+            this.provisioning = provisioning;
+            schedule(clock.millis(), () -> checkContainers(containersCheck));
+        }
+
+        private void checkContainers(Runnable containersCheck) {
+            if (!stopped) {
+                containersCheck.run();
+                schedule(clock.millis() + config.getCheckContainersInterval(), () -> checkContainers(containersCheck));
+            }
+        }
+
+        @Override
+        public synchronized void signalProvisioning() {
+            if (!provisioningPending && !stopped) {
+                provisioningPending = true;
+                schedule(clock.millis(), this::provision);
+            }
+        }
+
+        private void provision() {
+            synchronized (this) {
+                provisioningPending = false;
+            }
+            provisioning.run();
+        }
+
+        @Override
+        public void createContainer(Runnable creation) {
+            if (stopped) {
+                throw new RejectedExecutionException("The simulation is over");
+            }
+            if (creationsRunning < config.getContainerStartThreads()) {
+                runCreation(creation);
+            } else {
+                waitingCreations.add(creation);
+            }
+        }
+
+        private void runCreation(Runnable creation) {
+            creationsRunning++;
+            schedule(clock.millis() + sample(config.getCreateLatency()), () -> {
+                creation.run();
+                creationsRunning--;
+                Runnable next = waitingCreations.poll();
+                if (next != null) {
+                    runCreation(next);
+                }
+            });
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+
+    /*
+        Stands in for docker: the node of a container registers startLatency after its creation, cleaning up after a
+        session takes cleanupLatency and a stopped container terminates after stopLatency.
+     */
+    private final class SimulatedContainerClient implements ContainerClient {
+        private volatile ContainerTerminationListener terminationListener;
+
+        @Override
+        public void setNodeId(String nodeId) {
+            // Nothing is logged by the simulated containers
+        }
+
+        @Override
+        public ContainerClientRegistration registerNode(String zaleniumContainerName, URL remoteHost) {
+            ContainerClientRegistration registration = new ContainerClientRegistration();
+            registration.setContainerId(remoteHost.getHost());
+            registration.setIpAddress(remoteHost.getHost());
+            registration.setNoVncPort(remoteHost.getPort() + DockeredSeleniumStarter.NO_VNC_PORT_GAP);
+            return registration;
+        }
+
+        @Override
+        public InputStreamGroupIterator copyFiles(String containerId, String folderName) {
+            // Simulated containers record neither videos nor logs
+            return null;
+        }
+
+        @Override
+        public void stopContainer(String containerId) {
+            SimulatedContainer container = containers.get(containerId);
+            if (container == null || container.stoppedAt >= 0) {
+                return;
+            }
+            if (!container.registered) {
+                // Only containers that did not start in time are stopped before their node registers
+                containersTookTooLongToStart++;
+            }
+            container.stoppedAt = clock.millis() + sample(config.getStopLatency());
+            schedule(container.stoppedAt, () -> {
+                ContainerTerminationListener listener = terminationListener;
+                if (listener != null) {
+                    listener.containerTerminated(containerId);
+                }
+            });
+        }
+
+        @Override
+        public void executeCommand(String containerId, String[] command, boolean waitForExecution) {
+            // The cleanup after a session is simulated by cleanUp()
+        }
+
+        /*
+            Stands in for the cleanup commands executed in the container after a session.
+         */
+        void cleanUp(String containerId, Runnable cleanedUp) {
+            schedule(clock.millis() + sample(config.getCleanupLatency()), cleanedUp);
+        }
+
+        @Override
+        public String getLatestDownloadedImage(String imageName) {
+            return imageName;
+        }
+
+        @Override
+        public ContainerCreationStatus createContainer(String zaleniumContainerName, String image,
+                                                       Map<String, String> envVars, String nodePort) {
+            SimulatedContainer container = new SimulatedContainer("simulated-selenium-" + (containers.size() + 1),
+                    Integer.parseInt(nodePort), clock.millis(),
+                    envVars.get("SCREEN_WIDTH") + "x" + envVars.get("SCREEN_HEIGHT"), envVars.get("TZ"));
+            containers.put(container.id, container);
+            schedule(clock.millis() + sample(config.getStartLatency()), () -> containerBooted(container));
+            return new ContainerCreationStatus(true, container.id, container.id, nodePort);
+        }
+
+        private void containerBooted(SimulatedContainer container) {
+            // A stopped container never registers its node
+            if (container.stoppedAt < 0) {
+                container.registered = true;
+                registry.add(new SimulatedNode(container));
+            }
+        }
+
+        @Override
+        public void initialiseContainerEnvironment() {
+            // There are no containers left over from a previous run
+        }
+
+        @Override
+        public String getContainerIp(String containerName) {
+            return containerName;
+        }
+
+        @Override
+        public boolean isReady(ContainerCreationStatus creationStatus) {
+            SimulatedContainer container = containers.get(creationStatus.getContainerId());
+            return container != null && container.registered;
+        }
+
+        @Override
+        public boolean isTerminated(ContainerCreationStatus creationStatus) {
+            SimulatedContainer container = containers.get(creationStatus.getContainerId());
+            return container == null || (container.stoppedAt >= 0 && container.stoppedAt <= clock.millis());
+        }
+
+        @Override
+        public boolean watchContainers(ContainerTerminationListener listener) {
+            terminationListener = listener;
+            return true;
+        }
+
+        @Override
+        public void stopWatching() {
+            terminationListener = null;
+        }
+    }
+
+    /*
+        A new session request of a client, which holds its session for the recorded duration.
+     */
+    private final class SimulatedRequest extends MockedRequestHandler {
+        private final long arrivedAt = clock.millis();
+        private final long sessionMillis;
+
+        private SimulatedRequest(ArrivalTrace.Arrival arrival) {
+            super(new TraceReplayer.ReplayedRequest(registry, arrival.toCapabilities()),
+                    TraceReplayer.newProxy(HttpServletResponse.class), registry);
+            this.sessionMillis = arrival.getSessionMillis();
+        }
+
+        @Override
+        public void bindSession(TestSession session) {
+            super.bindSession(session);
+            sessionStarted(this, session);
+        }
+    }
+
+    /*
+        A docker-selenium node that follows the simulated clock. The slot is released once the container cleaned up
+        after the session, as the release of the hub waits for the cleanup too, and the node is idle after
+        idleTimeout without sessions. Sessions never get stuck, so a node is only stale when it reached
+        maxTestSessions.
+     */
+    private final class SimulatedNode extends DockerSeleniumRemoteProxy {
+        // BaseRemoteProxy has its own config field
+        private final SimulationConfig simulation = GridSimulator.this.config;
+        private int testsRun;
+        private volatile boolean cleaningUp;
+        private volatile boolean cleaningUpBeforeNextSession;
+        private volatile long lastUsed;
+
+        private SimulatedNode(SimulatedContainer container) {
+            super(registrationRequest(container), registry, containerClient);
+            this.lastUsed = clock.millis();
+        }
+
+        @Override
+        public synchronized TestSession getNewSession(Map<String, Object> requestedCapability) {
+            if (isTimedOut() || cleaningUp || isBusy() || testsRun >= simulation.getMaxTestSessions()
+                    || !hasCapability(requestedCapability)) {
+                return null;
+            }
+            for (TestSlot testSlot : getTestSlots()) {
+                TestSession session = testSlot.matches(requestedCapability) ?
+                        testSlot.getNewSession(requestedCapability) : null;
+                if (session != null) {
+                    testsRun++;
+                    return session;
+                }
+            }
+            return null;
+        }
+
+        private void sessionStopped(TestSession session) {
+            cleaningUp = true;
+            cleaningUpBeforeNextSession = !isTestSessionLimitReached();
+            containerClient.cleanUp(getContainerId(),
+                    () -> registry.terminate(session, SessionTerminationReason.CLIENT_STOPPED_SESSION));
+        }
+
+        /*
+            Called by the release of the registry, the container already cleaned up.
+         */
+        @Override
+        public void afterSession(TestSession session) {
+            lastUsed = clock.millis();
+            cleaningUp = false;
+            cleaningUpBeforeNextSession = false;
+        }
+
+        @Override
+        public boolean isCleaningUpBeforeNextSession() {
+            return cleaningUpBeforeNextSession;
+        }
+
+        @Override
+        public boolean shutdownIfIdle() {
+            boolean idle = !isBusy() && clock.millis() - lastUsed > simulation.getIdleTimeout();
+            return (idle || isTestSessionLimitReached() && !isBusy()) && shutdown();
+        }
+
+        @Override
+        public boolean shutdownIfStale() {
+            return isTestSessionLimitReached() && !isBusy() && shutdown();
+        }
+
+        @Override
+        public synchronized boolean isTestSessionLimitReached() {
+            return testsRun >= simulation.getMaxTestSessions();
+        }
+
+        @Override
+        protected synchronized int getAmountOfExecutedTests() {
+            return testsRun;
+        }
+
+        /*
+            Same steps as shutdownNode(), which runs right after the check: the container is stopped and the node
+            unregisters.
+         */
+        private boolean shutdown() {
+            markDown();
+            schedule(clock.millis(), () -> {
+                containerClient.stopContainer(getContainerId());
+                registry.removeIfPresent(this);
+            });
+            return true;
+        }
+    }
+
+    private static RegistrationRequest registrationRequest(SimulatedContainer container) {
+        GridNodeConfiguration nodeConfiguration = new GridNodeConfiguration();
+        nodeConfiguration.role = "node";
+        nodeConfiguration.host = container.id;
+        nodeConfiguration.port = container.port;
+        nodeConfiguration.maxSession = 1;
+        nodeConfiguration.capabilities = new ArrayList<>(Arrays.asList(
+                nodeCapabilities(BrowserType.CHROME, container), nodeCapabilities(BrowserType.FIREFOX, container)));
+        return RegistrationRequest.build(nodeConfiguration);
+    }
+
+    private static MutableCapabilities nodeCapabilities(String browserName, SimulatedContainer container) {
+        MutableCapabilities capabilities = new MutableCapabilities();
+        capabilities.setCapability(CapabilityType.BROWSER_NAME, browserName);
+        capabilities.setCapability(CapabilityType.PLATFORM_NAME, Platform.LINUX);
+        capabilities.setCapability(RegistrationRequest.MAX_INSTANCES, 1);
+        capabilities.setCapability(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, container.screenResolution);
+        capabilities.setCapability(ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX, container.timeZone);
+        return capabilities;
+    }
+
+    private static final class Event {
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+
+        private Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+    }
+
+    private static final class SimulatedContainer {
+        private final String id;
+        private final int port;
+        private final long createdAt;
+        private final String screenResolution;
+        private final String timeZone;
+        private boolean registered;
+        private long stoppedAt = -1;
+
+        private SimulatedContainer(String id, int port, long createdAt, String screenResolution, String timeZone) {
+            this.id = id;
+            this.port = port;
+            this.createdAt = createdAt;
+            this.screenResolution = screenResolution;
+            this.timeZone = timeZone;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.util.Random;
+
+/**
+ * Latency of a simulated container operation, in milliseconds.
+ */
+@FunctionalInterface
+@SuppressWarnings("WeakerAccess")
+public interface LatencyDistribution {
+
+    long sample(Random random);
+
+    static LatencyDistribution fixed(long millis) {
+        return random -> millis;
+    }
+
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * Long tailed latency, as container starts on a busy docker daemon.
+     *
+     * @param medianMillis half of the samples are below this value.
+     * @param sigma        standard deviation of the underlying normal distribution, 0.5 gives a p95 around 2.3 times
+     *                     the median.
+     */
+    static LatencyDistribution logNormal(long medianMillis, double sigma) {
+        return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    /**
+     * Parses "fixed:5000", "uniform:2000:8000" or "lognormal:8000:0.5".
+     */
+    static LatencyDistribution parse(String value) {
+        String[] parts = value.trim().split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "fixed":
+                    return fixed(Long.parseLong(parts[1]));
+                case "uniform":
+                    return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                case "lognormal":
+                    return logNormal(Long.parseLong(parts[1]), Double.parseDouble(parts[2]));
+                default:
+                    break;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid latency distribution " + value, e);
+        }
+        throw new IllegalArgumentException("Invalid latency distribution " + value);
+    }
+}
@@ -0,0 +1,234 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
+import de.zalando.ep.zalenium.matcher.CapabilityShape;
+import de.zalando.ep.zalenium.util.ZaleniumConfiguration;
+import io.prometheus.client.Counter;
+
+/**
+ * Appends the lifecycle of the test sessions to a trace file, one event per line:
+ * <pre>
+ * epochMillis,REQUEST,requestId,browserName,version,platform,screenResolution,timeZone
+ * epochMillis,ASSIGNED,requestId,nodeId
+ * epochMillis,FIRST_COMMAND,requestId
+ * epochMillis,SESSION_END,requestId
+ * epochMillis,CONTAINER_START,containerName
+ * epochMillis,CONTAINER_STOP,containerName
+ * </pre>
+ * Requests are identified by the request id of their {@link CanonicalCapabilities}, which the registry and the proxies
+ * share. Callers only queue the event, a single thread formats and writes it. When the queue is full the event is
+ * dropped rather than slowing down the hub.
+ *
+ * The trace is recorded when ZALENIUM_SESSION_TRACE_FILE is set, see {@link ArrivalTrace#fromSessionTrace} and
+ * {@link TraceReplayer} to use it.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SessionTraceRecorder {
+
+    public static final String REQUEST = "REQUEST";
+    public static final String ASSIGNED = "ASSIGNED";
+    public static final String FIRST_COMMAND = "FIRST_COMMAND";
+    public static final String SESSION_END = "SESSION_END";
+    public static final String CONTAINER_START = "CONTAINER_START";
+    public static final String CONTAINER_STOP = "CONTAINER_STOP";
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionTraceRecorder.class.getName());
+    private static final int QUEUE_SIZE = 10000;
+    private static final Counter seleniumSessionTraceDroppedEvents = Counter.build()
+            .name("selenium_session_trace_dropped_events_total")
+            .help("The number of session trace events dropped because the trace writer could not keep up.")
+            .register();
+    private static final SessionTraceRecorder DISABLED = new SessionTraceRecorder(null, Clock.systemUTC());
+    private static volatile SessionTraceRecorder instance;
+
+    private final Writer writer;
+    private final Clock clock;
+    private final BlockingQueue<Event> events = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread writerThread;
+    private volatile boolean stopped;
+
+    SessionTraceRecorder(Writer writer, Clock clock) {
+        this.writer = writer;
+        this.clock = clock;
+        if (writer == null) {
+            writerThread = null;
+            return;
+        }
+        writerThread = new Thread(this::writeEvents, "Session trace writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * @return a recorder writing to ZALENIUM_SESSION_TRACE_FILE, or one that records nothing when it is not set or
+     * the file cannot be opened.
+     */
+    public static SessionTraceRecorder getInstance() {
+        SessionTraceRecorder recorder = instance;
+        if (recorder == null) {
+            synchronized (SessionTraceRecorder.class) {
+                if (instance == null) {
+                    instance = create(ZaleniumConfiguration.getSessionTraceFile());
+                }
+                recorder = instance;
+            }
+        }
+        return recorder;
+    }
+
+    private static SessionTraceRecorder create(String traceFile) {
+        if (traceFile.isEmpty()) {
+            return DISABLED;
+        }
+        try {
+            LOGGER.info("Recording the session trace in {}", traceFile);
+            return new SessionTraceRecorder(new BufferedWriter(new FileWriter(traceFile, true)),
+                    Clock.systemUTC());
+        } catch (IOException e) {
+            LOGGER.warn("Session trace file {} cannot be opened, the trace will not be recorded.", traceFile, e);
+            return DISABLED;
+        }
+    }
+
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    public void requestArrived(Map<String, Object> requestedCapabilities) {
+        if (!isEnabled()) {
+            return;
+        }
+        record(REQUEST, CanonicalCapabilities.of(requestedCapabilities).getRequestId(),
+                CapabilityShape.fromCapabilities(requestedCapabilities));
+    }
+
+    public void sessionAssigned(Map<String, Object> requestedCapabilities, String nodeId) {
+        recordSessionEvent(ASSIGNED, requestedCapabilities, nodeId);
+    }
+
+    public void firstCommand(Map<String, Object> requestedCapabilities) {
+        recordSessionEvent(FIRST_COMMAND, requestedCapabilities, null);
+    }
+
+    public void sessionEnded(Map<String, Object> requestedCapabilities) {
+        recordSessionEvent(SESSION_END, requestedCapabilities, null);
+    }
+
+    /**
+     * @param containerName name of a container the proxy set created, recorded once per container.
+     */
+    public void containerStarted(String containerName) {
+        if (isEnabled()) {
+            record(CONTAINER_START, containerName, null);
+        }
+    }
+
+    /**
+     * @param containerName name of a container the proxy set stopped tracking, because it terminated or it did not
+     *                      start in time.
+     */
+    public void containerStopped(String containerName) {
+        if (isEnabled()) {
+            record(CONTAINER_STOP, containerName, null);
+        }
+    }
+
+    /**
+     * Writes the events queued so far and closes the trace.
+     */
+    public void stop() {
+        if (!isEnabled() || stopped) {
+            return;
+        }
+        stopped = true;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recordSessionEvent(String type, Map<String, Object> requestedCapabilities, Object details) {
+        if (!isEnabled() || requestedCapabilities == null) {
+            return;
+        }
+        record(type, CanonicalCapabilities.of(requestedCapabilities).getRequestId(), details);
+    }
+
+    private void record(String type, Object key, Object details) {
+        if (stopped || !events.offer(new Event(clock.millis(), type, key, details))) {
+            seleniumSessionTraceDroppedEvents.inc();
+        }
+    }
+
+    private void writeEvents() {
+        try {
+            while (!stopped || !events.isEmpty()) {
+                Event event = events.poll(500, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    writer.write(event.toLine());
+                }
+                if (events.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Session trace could not be written, the recording stops.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped = true;
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOGGER.debug("Session trace could not be closed.", e);
+            }
+        }
+    }
+
+    private static final class Event {
+        private final long time;
+        private final String type;
+        private final Object key;
+        private final Object details;
+
+        private Event(long time, String type, Object key, Object details) {
+            this.time = time;
+            this.type = type;
+            this.key = key;
+            this.details = details;
+        }
+
+        private String toLine() {
+            StringBuilder line = new StringBuilder().append(time).append(',').append(type).append(',')
+                    .append(field(key));
+            if (details instanceof CapabilityShape) {
+                CapabilityShape shape = (CapabilityShape) details;
+                line.append(',').append(field(shape.getBrowserName()))
+                        .append(',').append(field(shape.getVersion()))
+                        .append(',').append(field(shape.getPlatform()))
+                        .append(',').append(field(shape.getScreenResolution()))
+                        .append(',').append(field(shape.getTimeZone()));
+            } else if (details != null) {
+                line.append(',').append(field(details));
+            }
+            return line.append(System.lineSeparator()).toString();
+        }
+
+        private static String field(Object value) {
+            return value == null ? "" : value.toString().replaceAll("[,\\r\\n]", " ");
+        }
+    }
+}
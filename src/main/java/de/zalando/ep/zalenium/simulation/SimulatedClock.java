@@ -0,0 +1,47 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Clock that only moves when the simulation advances it.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SimulatedClock extends Clock {
+
+    private volatile long millis;
+
+    public SimulatedClock(long startMillis) {
+        this.millis = startMillis;
+    }
+
+    public void advanceTo(long millis) {
+        if (millis < this.millis) {
+            throw new IllegalArgumentException(String.format("Cannot go back in time from %s to %s", this.millis,
+                    millis));
+        }
+        this.millis = millis;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+}
@@ -0,0 +1,320 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy;
+import de.zalando.ep.zalenium.util.ZaleniumConfiguration;
+
+/**
+ * Settings of a simulated grid, the defaults are the ones of the hub. The screen resolution and time zone of the
+ * containers are the ones configured for the hub, see
+ * {@link de.zalando.ep.zalenium.proxy.DockeredSeleniumStarter}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SimulationConfig {
+
+    private final long minContainers;
+    private final long maxContainers;
+    private final long timeToWaitToStart;
+    private final long checkContainersInterval;
+    private final boolean waitForAvailableNodes;
+    private final int containerStartThreads;
+    private final long containerReconcileInterval;
+    private final boolean predictiveWarmPool;
+    private final long warmPoolTargetWait;
+    private final long warmPoolScaleDownDelay;
+    private final int maxTestSessions;
+    private final long idleTimeout;
+    private final long newSessionWaitTimeout;
+    private final LatencyDistribution createLatency;
+    private final LatencyDistribution startLatency;
+    private final LatencyDistribution stopLatency;
+    private final LatencyDistribution cleanupLatency;
+    private final long seed;
+
+    private SimulationConfig(SimulationConfigBuilder builder) {
+        this.minContainers = builder.minContainers;
+        this.maxContainers = builder.maxContainers;
+        this.timeToWaitToStart = builder.timeToWaitToStart;
+        this.checkContainersInterval = builder.checkContainersInterval;
+        this.waitForAvailableNodes = builder.waitForAvailableNodes;
+        this.containerStartThreads = builder.containerStartThreads;
+        this.containerReconcileInterval = builder.containerReconcileInterval;
+        this.predictiveWarmPool = builder.predictiveWarmPool;
+        this.warmPoolTargetWait = builder.warmPoolTargetWait;
+        this.warmPoolScaleDownDelay = builder.warmPoolScaleDownDelay;
+        this.maxTestSessions = builder.maxTestSessions;
+        this.idleTimeout = builder.idleTimeout;
+        this.newSessionWaitTimeout = builder.newSessionWaitTimeout;
+        this.createLatency = builder.createLatency;
+        this.startLatency = builder.startLatency;
+        this.stopLatency = builder.stopLatency;
+        this.cleanupLatency = builder.cleanupLatency;
+        this.seed = builder.seed;
+    }
+
+    public long getMinContainers() {
+        return minContainers;
+    }
+
+    public long getMaxContainers() {
+        return maxContainers;
+    }
+
+    public long getTimeToWaitToStart() {
+        return timeToWaitToStart;
+    }
+
+    public long getCheckContainersInterval() {
+        return checkContainersInterval;
+    }
+
+    public boolean isWaitForAvailableNodes() {
+        return waitForAvailableNodes;
+    }
+
+    public int getContainerStartThreads() {
+        return containerStartThreads;
+    }
+
+    public long getContainerReconcileInterval() {
+        return containerReconcileInterval;
+    }
+
+    public boolean isPredictiveWarmPool() {
+        return predictiveWarmPool;
+    }
+
+    public long getWarmPoolTargetWait() {
+        return warmPoolTargetWait;
+    }
+
+    public long getWarmPoolScaleDownDelay() {
+        return warmPoolScaleDownDelay;
+    }
+
+    public int getMaxTestSessions() {
+        return maxTestSessions;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public long getNewSessionWaitTimeout() {
+        return newSessionWaitTimeout;
+    }
+
+    /**
+     * @return how long a container creation keeps one of the container start threads busy.
+     */
+    public LatencyDistribution getCreateLatency() {
+        return createLatency;
+    }
+
+    /**
+     * @return how long the node of a created container takes to register.
+     */
+    public LatencyDistribution getStartLatency() {
+        return startLatency;
+    }
+
+    public LatencyDistribution getStopLatency() {
+        return stopLatency;
+    }
+
+    public LatencyDistribution getCleanupLatency() {
+        return cleanupLatency;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @SuppressWarnings("UnusedReturnValue")
+    public static class SimulationConfigBuilder {
+        private long minContainers = ZaleniumConfiguration.DEFAULT_AMOUNT_DESIRED_CONTAINERS;
+        private long maxContainers = ZaleniumConfiguration.DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING;
+        private long timeToWaitToStart = ZaleniumConfiguration.DEFAULT_TIME_TO_WAIT_TO_START;
+        private long checkContainersInterval = ZaleniumConfiguration.DEFAULT_CHECK_CONTAINERS_INTERVAL;
+        private boolean waitForAvailableNodes = true;
+        private int containerStartThreads = ZaleniumConfiguration.DEFAULT_CONTAINER_START_THREADS;
+        private long containerReconcileInterval = ZaleniumConfiguration.DEFAULT_CONTAINER_RECONCILE_INTERVAL;
+        private boolean predictiveWarmPool = false;
+        private long warmPoolTargetWait = ZaleniumConfiguration.DEFAULT_WARM_POOL_TARGET_WAIT;
+        private long warmPoolScaleDownDelay = ZaleniumConfiguration.DEFAULT_WARM_POOL_SCALE_DOWN_DELAY;
+        private int maxTestSessions = 1;
+        private long idleTimeout = TimeUnit.SECONDS.toMillis(DockerSeleniumRemoteProxy.DEFAULT_MAX_TEST_IDLE_TIME_SECS);
+        private long newSessionWaitTimeout = 0;
+        private LatencyDistribution createLatency = LatencyDistribution.fixed(1000);
+        private LatencyDistribution startLatency = LatencyDistribution.logNormal(8000, 0.5);
+        private LatencyDistribution stopLatency = LatencyDistribution.fixed(2000);
+        private LatencyDistribution cleanupLatency = LatencyDistribution.fixed(1000);
+        private long seed = 42;
+
+        public SimulationConfigBuilder withMinContainers(long minContainers) {
+            this.minContainers = minContainers;
+            return this;
+        }
+
+        public SimulationConfigBuilder withMaxContainers(long maxContainers) {
+            this.maxContainers = maxContainers;
+            return this;
+        }
+
+        public SimulationConfigBuilder withTimeToWaitToStart(long timeToWaitToStart) {
+            this.timeToWaitToStart = timeToWaitToStart;
+            return this;
+        }
+
+        public SimulationConfigBuilder withCheckContainersInterval(long checkContainersInterval) {
+            this.checkContainersInterval = checkContainersInterval;
+            return this;
+        }
+
+        public SimulationConfigBuilder withWaitForAvailableNodes(boolean waitForAvailableNodes) {
+            this.waitForAvailableNodes = waitForAvailableNodes;
+            return this;
+        }
+
+        public SimulationConfigBuilder withContainerStartThreads(int containerStartThreads) {
+            this.containerStartThreads = containerStartThreads;
+            return this;
+        }
+
+        public SimulationConfigBuilder withContainerReconcileInterval(long containerReconcileInterval) {
+            this.containerReconcileInterval = containerReconcileInterval;
+            return this;
+        }
+
+        public SimulationConfigBuilder withPredictiveWarmPool(boolean predictiveWarmPool) {
+            this.predictiveWarmPool = predictiveWarmPool;
+            return this;
+        }
+
+        public SimulationConfigBuilder withWarmPoolTargetWait(long warmPoolTargetWait) {
+            this.warmPoolTargetWait = warmPoolTargetWait;
+            return this;
+        }
+
+        public SimulationConfigBuilder withWarmPoolScaleDownDelay(long warmPoolScaleDownDelay) {
+            this.warmPoolScaleDownDelay = warmPoolScaleDownDelay;
+            return this;
+        }
+
+        public SimulationConfigBuilder withMaxTestSessions(int maxTestSessions) {
+            this.maxTestSessions = maxTestSessions;
+            return this;
+        }
+
+        public SimulationConfigBuilder withIdleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public SimulationConfigBuilder withNewSessionWaitTimeout(long newSessionWaitTimeout) {
+            this.newSessionWaitTimeout = newSessionWaitTimeout;
+            return this;
+        }
+
+        public SimulationConfigBuilder withCreateLatency(LatencyDistribution createLatency) {
+            this.createLatency = createLatency;
+            return this;
+        }
+
+        public SimulationConfigBuilder withStartLatency(LatencyDistribution startLatency) {
+            this.startLatency = startLatency;
+            return this;
+        }
+
+        public SimulationConfigBuilder withStopLatency(LatencyDistribution stopLatency) {
+            this.stopLatency = stopLatency;
+            return this;
+        }
+
+        public SimulationConfigBuilder withCleanupLatency(LatencyDistribution cleanupLatency) {
+            this.cleanupLatency = cleanupLatency;
+            return this;
+        }
+
+        public SimulationConfigBuilder withSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Sets the values given as name=value, as passed in the command line. Times are in milliseconds.
+         */
+        public SimulationConfigBuilder withSettings(Map<String, String> settings) {
+            settings.forEach((name, value) -> {
+                switch (name) {
+                    case "minContainers":
+                        withMinContainers(Long.parseLong(value));
+                        break;
+                    case "maxContainers":
+                        withMaxContainers(Long.parseLong(value));
+                        break;
+                    case "timeToWaitToStart":
+                        withTimeToWaitToStart(Long.parseLong(value));
+                        break;
+                    case "checkContainersInterval":
+                        withCheckContainersInterval(Long.parseLong(value));
+                        break;
+                    case "waitForAvailableNodes":
+                        withWaitForAvailableNodes(Boolean.parseBoolean(value));
+                        break;
+                    case "containerStartThreads":
+                        withContainerStartThreads(Integer.parseInt(value));
+                        break;
+                    case "containerReconcileInterval":
+                        withContainerReconcileInterval(Long.parseLong(value));
+                        break;
+                    case "predictiveWarmPool":
+                        withPredictiveWarmPool(Boolean.parseBoolean(value));
+                        break;
+                    case "warmPoolTargetWait":
+                        withWarmPoolTargetWait(Long.parseLong(value));
+                        break;
+                    case "warmPoolScaleDownDelay":
+                        withWarmPoolScaleDownDelay(Long.parseLong(value));
+                        break;
+                    case "maxTestSessions":
+                        withMaxTestSessions(Integer.parseInt(value));
+                        break;
+                    case "idleTimeout":
+                        withIdleTimeout(Long.parseLong(value));
+                        break;
+                    case "newSessionWaitTimeout":
+                        withNewSessionWaitTimeout(Long.parseLong(value));
+                        break;
+                    case "createLatency":
+                        withCreateLatency(LatencyDistribution.parse(value));
+                        break;
+                    case "startLatency":
+                        withStartLatency(LatencyDistribution.parse(value));
+                        break;
+                    case "stopLatency":
+                        withStopLatency(LatencyDistribution.parse(value));
+                        break;
+                    case "cleanupLatency":
+                        withCleanupLatency(LatencyDistribution.parse(value));
+                        break;
+                    case "seed":
+                        withSeed(Long.parseLong(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown simulation setting " + name);
+                }
+            });
+            return this;
+        }
+
+        public SimulationConfig build() {
+            if (checkContainersInterval <= 0 || containerStartThreads <= 0) {
+                throw new IllegalArgumentException("checkContainersInterval and containerStartThreads must be positive");
+            }
+            return new SimulationConfig(this);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a simulation: how long requests waited, how much container time was used and how many sessions ran.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SimulationReport {
+
+    private final long[] sortedQueueWaits;
+    private final int requests;
+    private final int sessionsCompleted;
+    private final int requestsExpired;
+    private final int requestsNotServed;
+    private final int containersStarted;
+    private final int containersTookTooLongToStart;
+    private final long containerMillis;
+    private final long simulatedMillis;
+
+    SimulationReport(long[] queueWaits, int requests, int sessionsCompleted, int requestsExpired,
+                     int requestsNotServed, int containersStarted, int containersTookTooLongToStart,
+                     long containerMillis, long simulatedMillis) {
+        this.sortedQueueWaits = queueWaits.clone();
+        Arrays.sort(this.sortedQueueWaits);
+        this.requests = requests;
+        this.sessionsCompleted = sessionsCompleted;
+        this.requestsExpired = requestsExpired;
+        this.requestsNotServed = requestsNotServed;
+        this.containersStarted = containersStarted;
+        this.containersTookTooLongToStart = containersTookTooLongToStart;
+        this.containerMillis = containerMillis;
+        this.simulatedMillis = simulatedMillis;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return queue wait in milliseconds of the requests that got a session, nearest rank.
+     */
+    public long getQueueWaitPercentile(double percentile) {
+        if (sortedQueueWaits.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedQueueWaits.length);
+        return sortedQueueWaits[Math.min(Math.max(rank, 1), sortedQueueWaits.length) - 1];
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public int getSessionsStarted() {
+        return sortedQueueWaits.length;
+    }
+
+    public int getSessionsCompleted() {
+        return sessionsCompleted;
+    }
+
+    public int getRequestsExpired() {
+        return requestsExpired;
+    }
+
+    /**
+     * @return requests docker-selenium cannot serve, they would go to a cloud testing provider.
+     */
+    public int getRequestsNotServed() {
+        return requestsNotServed;
+    }
+
+    public int getContainersStarted() {
+        return containersStarted;
+    }
+
+    public int getContainersTookTooLongToStart() {
+        return containersTookTooLongToStart;
+    }
+
+    public double getContainerSeconds() {
+        return containerMillis / 1000.0;
+    }
+
+    public long getSimulatedMillis() {
+        return simulatedMillis;
+    }
+
+    /**
+     * @return completed sessions per minute of simulated time.
+     */
+    public double getThroughputPerMinute() {
+        return simulatedMillis == 0 ? 0 : sessionsCompleted / (simulatedMillis / (double) TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Simulated %.1f minutes%n", simulatedMillis / (double) TimeUnit.MINUTES.toMillis(1))
+                + String.format("Requests: %s, sessions started: %s, completed: %s, expired: %s, not served: %s%n",
+                requests, getSessionsStarted(), sessionsCompleted, requestsExpired, requestsNotServed)
+                + String.format("Queue wait ms: p50 %s, p90 %s, p95 %s, p99 %s, max %s%n",
+                getQueueWaitPercentile(50), getQueueWaitPercentile(90), getQueueWaitPercentile(95),
+                getQueueWaitPercentile(99), getQueueWaitPercentile(100))
+                + String.format("Containers started: %s, took too long to start: %s, container-seconds: %.0f%n",
+                containersStarted, containersTookTooLongToStart, getContainerSeconds())
+                + String.format("Throughput: %.2f sessions/minute", getThroughputPerMinute());
+    }
+}
@@ -0,0 +1,261 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.common.exception.CapabilityNotPresentOnTheGridException;
+import org.openqa.grid.internal.BaseRemoteProxy;
+import org.openqa.grid.internal.ExternalSessionKey;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.ProxySet;
+import org.openqa.grid.internal.SessionTerminationReason;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.utils.configuration.GridHubConfiguration;
+import org.openqa.grid.internal.utils.configuration.GridNodeConfiguration;
+import org.openqa.grid.web.Hub;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.grid.web.servlet.handler.RequestType;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.openqa.selenium.MutableCapabilities;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.CapabilityType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.zalando.ep.zalenium.registry.ZaleniumRegistry;
+import de.zalando.ep.zalenium.util.MockedRequestHandler;
+
+/**
+ * Replays the arrivals of a trace against a {@link ZaleniumRegistry} running in process, with mock nodes that
+ * accept sessions without starting a browser. Each request is processed like a new session request of the hub, its
+ * session is held for the recorded duration and then terminated by the client.
+ *
+ * Unlike the {@link GridSimulator}, the replay runs on the system clock, so it also exercises the parts of the
+ * registry that follow it: the admission control and the deadlines of the requests. The trace can be replayed
+ * faster with the speed setting, queue waits are scaled back to trace time in the report. The amount of mock nodes
+ * for each browser of the trace is fixed, containers are not started or stopped.
+ */
+@SuppressWarnings("WeakerAccess")
+public class TraceReplayer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TraceReplayer.class.getName());
+
+    private final int nodesPerBrowser;
+    private final double speed;
+    private final int newSessionWaitTimeout;
+
+    /**
+     * @param nodesPerBrowser       mock nodes registered for each browser found in the trace.
+     * @param speed                 how much faster than recorded the trace is replayed.
+     * @param newSessionWaitTimeout milliseconds, in replay time, a request waits for a node before failing.
+     */
+    public TraceReplayer(int nodesPerBrowser, double speed, int newSessionWaitTimeout) {
+        if (nodesPerBrowser < 0 || speed <= 0 || newSessionWaitTimeout <= 0) {
+            throw new IllegalArgumentException("nodes cannot be negative, speed and newSessionWaitTimeout "
+                    + "must be positive");
+        }
+        this.nodesPerBrowser = nodesPerBrowser;
+        this.speed = speed;
+        this.newSessionWaitTimeout = newSessionWaitTimeout;
+    }
+
+    /**
+     * Replays the trace and waits until every request got its session and the session ended, or failed.
+     */
+    public SimulationReport run(ArrivalTrace trace) throws InterruptedException {
+        GridHubConfiguration hubConfiguration = new GridHubConfiguration();
+        hubConfiguration.newSessionWaitTimeout = newSessionWaitTimeout;
+        Hub hub = new Hub(hubConfiguration);
+        GridRegistry registry = ZaleniumRegistry.newInstance(hub, new ProxySet(false));
+
+        Set<String> browsers = new LinkedHashSet<>();
+        trace.getArrivals().forEach(arrival -> browsers.add(arrival.getBrowserName()));
+        int nodes = 0;
+        for (String browser : browsers) {
+            for (int i = 0; i < nodesPerBrowser; i++) {
+                registry.add(new MockNode(registry, browser, ++nodes));
+            }
+        }
+
+        List<Long> queueWaits = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger sessionsCompleted = new AtomicInteger();
+        AtomicInteger requestsExpired = new AtomicInteger();
+        AtomicInteger requestsNotServed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(trace.getArrivals().size());
+        ScheduledExecutorService arrivals = Executors.newSingleThreadScheduledExecutor(
+                runnable -> newDaemonThread(runnable, "Trace replay arrivals"));
+        ExecutorService clients = Executors.newCachedThreadPool(
+                runnable -> newDaemonThread(runnable, "Trace replay client"));
+        long started = System.currentTimeMillis();
+        try {
+            for (ArrivalTrace.Arrival arrival : trace.getArrivals()) {
+                arrivals.schedule(() -> clients.execute(() -> {
+                    try {
+                        RequestHandler handler = new MockedRequestHandler(
+                                new ReplayedRequest(registry, arrival.toCapabilities()), newProxy(
+                                HttpServletResponse.class), registry);
+                        handler.process();
+                        TestSession session = handler.getSession();
+                        queueWaits.add(toTraceTime(
+                                System.currentTimeMillis() - handler.getRequest().getCreationTime()));
+                        Thread.sleep(toReplayTime(arrival.getSessionMillis()));
+                        registry.terminate(session, SessionTerminationReason.CLIENT_STOPPED_SESSION);
+                        sessionsCompleted.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        // The handler wraps the reason of the failure
+                        if (e instanceof CapabilityNotPresentOnTheGridException
+                                || e.getCause() instanceof CapabilityNotPresentOnTheGridException) {
+                            requestsNotServed.incrementAndGet();
+                        } else {
+                            LOGGER.debug("Replayed request failed", e);
+                            requestsExpired.incrementAndGet();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }), toReplayTime(arrival.getOffsetMillis()), TimeUnit.MILLISECONDS);
+            }
+            done.await();
+        } finally {
+            arrivals.shutdownNow();
+            clients.shutdownNow();
+            registry.stop();
+            // The hub creates its own registry, which is not used
+            hub.getRegistry().stop();
+        }
+
+        long replayedMillis = toTraceTime(System.currentTimeMillis() - started);
+        return new SimulationReport(queueWaits.stream().mapToLong(Long::longValue).toArray(),
+                trace.getArrivals().size(), sessionsCompleted.get(), requestsExpired.get(), requestsNotServed.get(),
+                nodes, 0, nodes * replayedMillis, replayedMillis);
+    }
+
+    private long toReplayTime(long traceMillis) {
+        return (long) (traceMillis / speed);
+    }
+
+    private long toTraceTime(long replayMillis) {
+        return (long) (replayMillis * speed);
+    }
+
+    private static Thread newDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /*
+        The request handler only needs the capabilities of the request, the servlet request and response are never
+        read, since nothing is forwarded to the mock nodes. Also used by the GridSimulator.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T newProxy(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class) {
+                return false;
+            }
+            if (returnType == int.class) {
+                return 0;
+            }
+            if (returnType == long.class) {
+                return 0L;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Usage: TraceReplayer traceFile [nodes=10] [speed=1] [newSessionWaitTimeout=600000] [recorded=false], where
+     * recorded tells that the trace was recorded by the hub with ZALENIUM_SESSION_TRACE_FILE instead of being an
+     * {@link ArrivalTrace}.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceReplayer traceFile [nodes=10] [speed=1] "
+                    + "[newSessionWaitTimeout=600000] [recorded=false]");
+            System.exit(1);
+        }
+        Map<String, String> settings = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String[] setting = args[i].split("=", 2);
+            if (setting.length != 2) {
+                throw new IllegalArgumentException("Expected name=value, got " + args[i]);
+            }
+            settings.put(setting[0], setting[1]);
+        }
+        TraceReplayer replayer = new TraceReplayer(Integer.parseInt(settings.getOrDefault("nodes", "10")),
+                Double.parseDouble(settings.getOrDefault("speed", "1")),
+                Integer.parseInt(settings.getOrDefault("newSessionWaitTimeout", "600000")));
+        try (Reader reader = new FileReader(args[0])) {
+            ArrivalTrace trace = Boolean.parseBoolean(settings.getOrDefault("recorded", "false")) ?
+                    ArrivalTrace.fromSessionTrace(reader) : ArrivalTrace.parse(reader);
+            System.out.println(replayer.run(trace));
+        }
+    }
+
+    static final class ReplayedRequest extends SeleniumBasedRequest {
+        ReplayedRequest(GridRegistry registry, Map<String, Object> capabilities) {
+            super(newProxy(HttpServletRequest.class), registry, RequestType.START_SESSION, capabilities);
+        }
+
+        @Override
+        public RequestType extractRequestType() {
+            return RequestType.START_SESSION;
+        }
+
+        @Override
+        public ExternalSessionKey extractSession() {
+            return null;
+        }
+
+        @Override
+        public Map<String, Object> extractDesiredCapability() {
+            return getDesiredCapabilities();
+        }
+    }
+
+    /*
+        A node with a single slot for the given browser. It does not poll the remote host, since there is none.
+     */
+    private static final class MockNode extends BaseRemoteProxy {
+        private MockNode(GridRegistry registry, String browserName, int number) {
+            super(registrationRequest(browserName, number), registry);
+        }
+
+        private static RegistrationRequest registrationRequest(String browserName, int number) {
+            GridNodeConfiguration nodeConfiguration = new GridNodeConfiguration();
+            nodeConfiguration.role = "node";
+            nodeConfiguration.host = "replay-node-" + number;
+            nodeConfiguration.port = 5555;
+            nodeConfiguration.maxSession = 1;
+            MutableCapabilities capabilities = new MutableCapabilities();
+            capabilities.setCapability(CapabilityType.BROWSER_NAME, browserName);
+            capabilities.setCapability(CapabilityType.PLATFORM_NAME, Platform.LINUX);
+            capabilities.setCapability(RegistrationRequest.MAX_INSTANCES, 1);
+            nodeConfiguration.capabilities = new ArrayList<>(Collections.singletonList(capabilities));
+            return RegistrationRequest.build(nodeConfiguration);
+        }
+    }
+}
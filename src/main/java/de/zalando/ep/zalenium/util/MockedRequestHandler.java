@@ -10,7 +10,7 @@ import javax.servlet.http.HttpServletResponse;
 
 public class MockedRequestHandler extends RequestHandler {
 
-    MockedRequestHandler(
+    public MockedRequestHandler(
             SeleniumBasedRequest request,
             HttpServletResponse response,
             GridRegistry registry) {
@@ -1,32 +1,20 @@
 package de.zalando.ep.zalenium.util;
 
-import java.util.Map;
-
 public class ProcessedCapabilities {
-    private Map<String, Object> requestedCapability;
-    private int identityHashCode;
+    private final long requestId;
     private long lastProcessedTime;
-    private int processedTimes;
+    private int containersStarted;
     private final long firstProcessedTime;
 
-    public ProcessedCapabilities(Map<String, Object> requestedCapability, int identityHashCode) {
-        this.requestedCapability = requestedCapability;
-        this.identityHashCode = identityHashCode;
-        this.lastProcessedTime = System.currentTimeMillis();
-        this.firstProcessedTime = this.lastProcessedTime;
-        this.processedTimes = 1;
-    }
-
-    public Map<String, Object> getRequestedCapability() {
-        return requestedCapability;
-    }
-
-    public void setRequestedCapability(Map<String, Object> requestedCapability) {
-        this.requestedCapability = requestedCapability;
+    public ProcessedCapabilities(long requestId, long processedTime) {
+        this.requestId = requestId;
+        this.lastProcessedTime = processedTime;
+        this.firstProcessedTime = processedTime;
+        this.containersStarted = 1;
     }
 
-    public int getIdentityHashCode() {
-        return identityHashCode;
+    public long getRequestId() {
+        return requestId;
     }
 
     public long getLastProcessedTime() {
@@ -37,12 +25,12 @@ public class ProcessedCapabilities {
         this.lastProcessedTime = lastProcessedTime;
     }
 
-    public int getProcessedTimes() {
-        return processedTimes;
+    public int getContainersStarted() {
+        return containersStarted;
     }
 
-    public void setProcessedTimes(int processedTimes) {
-        this.processedTimes = processedTimes;
+    public void setContainersStarted(int containersStarted) {
+        this.containersStarted = containersStarted;
     }
 
     public long getFirstProcessedTime() {
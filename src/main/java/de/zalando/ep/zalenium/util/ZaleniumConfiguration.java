@@ -2,6 +2,12 @@ package de.zalando.ep.zalenium.util;
 
 
 import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Common configuration for Zalenium.
@@ -9,6 +15,7 @@ import com.google.common.annotations.VisibleForTesting;
 @SuppressWarnings("WeakerAccess")
 public class ZaleniumConfiguration {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZaleniumConfiguration.class.getName());
 
     @VisibleForTesting
     public static final int DEFAULT_AMOUNT_DESIRED_CONTAINERS = 1;
@@ -17,10 +24,20 @@ public class ZaleniumConfiguration {
     @VisibleForTesting
     public static final int DEFAULT_TIME_TO_WAIT_TO_START = 180000;
     @VisibleForTesting
-    public static final int DEFAULT_TIMES_TO_PROCESS_REQUEST = 30;
-    @VisibleForTesting
     public static final int DEFAULT_CHECK_CONTAINERS_INTERVAL = 5000;
     @VisibleForTesting
+    public static final int DEFAULT_RELEASE_THREADS = 10;
+    @VisibleForTesting
+    public static final int DEFAULT_RELEASE_QUEUE_SIZE = 1000;
+    @VisibleForTesting
+    public static final int DEFAULT_WARM_POOL_TARGET_WAIT = 2000;
+    @VisibleForTesting
+    public static final int DEFAULT_WARM_POOL_SCALE_DOWN_DELAY = 300000;
+    @VisibleForTesting
+    public static final int DEFAULT_CONTAINER_START_THREADS = 10;
+    @VisibleForTesting
+    public static final int DEFAULT_CONTAINER_RECONCILE_INTERVAL = 60000;
+    @VisibleForTesting
     public static final String ZALENIUM_DESIRED_CONTAINERS = "ZALENIUM_DESIRED_CONTAINERS";
     @VisibleForTesting
     public static final String ZALENIUM_SWARM_OVERLAY_NETWORK = "ZALENIUM_SWARM_OVERLAY_NETWORK";
@@ -28,8 +45,26 @@ public class ZaleniumConfiguration {
     public static final String ZALENIUM_MAX_DOCKER_SELENIUM_CONTAINERS = "ZALENIUM_MAX_DOCKER_SELENIUM_CONTAINERS";
     private static final String WAIT_FOR_AVAILABLE_NODES = "WAIT_FOR_AVAILABLE_NODES";
     private static final String TIME_TO_WAIT_TO_START = "TIME_TO_WAIT_TO_START";
+    // Deprecated, it is ignored
     private static final String MAX_TIMES_TO_PROCESS_REQUEST = "MAX_TIMES_TO_PROCESS_REQUEST";
     private static final String CHECK_CONTAINERS_INTERVAL = "CHECK_CONTAINERS_INTERVAL";
+    private static final String ZALENIUM_SHARDED_MATCHER = "ZALENIUM_SHARDED_MATCHER";
+    private static final String ZALENIUM_RELEASE_THREADS = "ZALENIUM_RELEASE_THREADS";
+    private static final String ZALENIUM_RELEASE_QUEUE_SIZE = "ZALENIUM_RELEASE_QUEUE_SIZE";
+    private static final String ZALENIUM_MAX_QUEUED_REQUESTS = "ZALENIUM_MAX_QUEUED_REQUESTS";
+    private static final String ZALENIUM_MAX_ESTIMATED_WAIT = "ZALENIUM_MAX_ESTIMATED_WAIT";
+    private static final String ZALENIUM_MAX_QUEUED_REQUESTS_PER_BUILD = "ZALENIUM_MAX_QUEUED_REQUESTS_PER_BUILD";
+    private static final String ZALENIUM_ASYNC_NEW_SESSION_REQUESTS = "ZALENIUM_ASYNC_NEW_SESSION_REQUESTS";
+    private static final String ZALENIUM_NEW_SESSION_WAIT_TIMEOUT = "ZALENIUM_NEW_SESSION_WAIT_TIMEOUT";
+    private static final String ZALENIUM_FAIR_SHARE_SCHEDULING = "ZALENIUM_FAIR_SHARE_SCHEDULING";
+    private static final String ZALENIUM_BUILD_WEIGHTS = "ZALENIUM_BUILD_WEIGHTS";
+    private static final String ZALENIUM_MAX_SESSIONS_PER_BUILD = "ZALENIUM_MAX_SESSIONS_PER_BUILD";
+    private static final String ZALENIUM_SESSION_TRACE_FILE = "ZALENIUM_SESSION_TRACE_FILE";
+    private static final String ZALENIUM_PREDICTIVE_WARM_POOL = "ZALENIUM_PREDICTIVE_WARM_POOL";
+    private static final String ZALENIUM_WARM_POOL_TARGET_WAIT = "ZALENIUM_WARM_POOL_TARGET_WAIT";
+    private static final String ZALENIUM_WARM_POOL_SCALE_DOWN_DELAY = "ZALENIUM_WARM_POOL_SCALE_DOWN_DELAY";
+    private static final String ZALENIUM_CONTAINER_START_THREADS = "ZALENIUM_CONTAINER_START_THREADS";
+    private static final String ZALENIUM_CONTAINER_RECONCILE_INTERVAL = "ZALENIUM_CONTAINER_RECONCILE_INTERVAL";
 
     // Intended to start Zalenium locally for debugging or development. See ZaleniumRegistryTest#runLocally
     @VisibleForTesting
@@ -43,8 +78,24 @@ public class ZaleniumConfiguration {
     private static String swarmOverlayNetwork;
     private static boolean waitForAvailableNodes;
     private static int timeToWaitToStart;
-    private static int maxTimesToProcessRequest;
     private static int checkContainersInterval;
+    private static boolean shardedMatcher;
+    private static int releaseThreads;
+    private static int releaseQueueSize;
+    private static int maxQueuedRequests;
+    private static int maxEstimatedWait;
+    private static int maxQueuedRequestsPerBuild;
+    private static boolean asyncNewSessionRequests;
+    private static int newSessionWaitTimeout;
+    private static boolean fairShareScheduling;
+    private static Map<String, Integer> buildWeights = Collections.emptyMap();
+    private static int maxSessionsPerBuild;
+    private static String sessionTraceFile;
+    private static boolean predictiveWarmPool;
+    private static int warmPoolTargetWait;
+    private static int warmPoolScaleDownDelay;
+    private static int containerStartThreads;
+    private static int containerReconcileInterval;
     private static String currentUser;
     private static String HOST_UID;
     private static String HOST_GID;
@@ -77,12 +128,67 @@ public class ZaleniumConfiguration {
         int timeToWait = env.getIntEnvVariable(TIME_TO_WAIT_TO_START, DEFAULT_TIME_TO_WAIT_TO_START);
         setTimeToWaitToStart(timeToWait);
 
-        int maxTimes = env.getIntEnvVariable(MAX_TIMES_TO_PROCESS_REQUEST, DEFAULT_TIMES_TO_PROCESS_REQUEST);
-        setMaxTimesToProcessRequest(maxTimes);
+        if (!env.getStringEnvVariable(MAX_TIMES_TO_PROCESS_REQUEST, "").isEmpty()) {
+            LOGGER.warn("{} is deprecated and ignored, requests waiting for a node share the containers being started.",
+                    MAX_TIMES_TO_PROCESS_REQUEST);
+        }
 
         int checkContainers = env.getIntEnvVariable(CHECK_CONTAINERS_INTERVAL, DEFAULT_CHECK_CONTAINERS_INTERVAL);
         setCheckContainersInterval(checkContainers);
 
+        boolean sharded = env.getBooleanEnvVariable(ZALENIUM_SHARDED_MATCHER, false);
+        setShardedMatcher(sharded);
+
+        int threads = env.getIntEnvVariable(ZALENIUM_RELEASE_THREADS, DEFAULT_RELEASE_THREADS);
+        setReleaseThreads(threads);
+
+        int queueSize = env.getIntEnvVariable(ZALENIUM_RELEASE_QUEUE_SIZE, DEFAULT_RELEASE_QUEUE_SIZE);
+        setReleaseQueueSize(queueSize);
+
+        int maxQueued = env.getIntEnvVariable(ZALENIUM_MAX_QUEUED_REQUESTS, 0);
+        setMaxQueuedRequests(maxQueued);
+
+        int maxWait = env.getIntEnvVariable(ZALENIUM_MAX_ESTIMATED_WAIT, 0);
+        setMaxEstimatedWait(maxWait);
+
+        int maxQueuedPerBuild = env.getIntEnvVariable(ZALENIUM_MAX_QUEUED_REQUESTS_PER_BUILD, 0);
+        setMaxQueuedRequestsPerBuild(maxQueuedPerBuild);
+
+        boolean async = env.getBooleanEnvVariable(ZALENIUM_ASYNC_NEW_SESSION_REQUESTS, false);
+        setAsyncNewSessionRequests(async);
+
+        int waitTimeout = env.getIntEnvVariable(ZALENIUM_NEW_SESSION_WAIT_TIMEOUT, 0);
+        setNewSessionWaitTimeout(waitTimeout);
+
+        boolean fairShare = env.getBooleanEnvVariable(ZALENIUM_FAIR_SHARE_SCHEDULING, false);
+        setFairShareScheduling(fairShare);
+
+        Map<String, String> weights = env.getMapEnvVariable(ZALENIUM_BUILD_WEIGHTS, Collections.emptyMap());
+        setBuildWeights(weights);
+
+        int maxSessionsForBuild = env.getIntEnvVariable(ZALENIUM_MAX_SESSIONS_PER_BUILD, 0);
+        setMaxSessionsPerBuild(maxSessionsForBuild);
+
+        String traceFile = env.getStringEnvVariable(ZALENIUM_SESSION_TRACE_FILE, "");
+        setSessionTraceFile(traceFile);
+
+        boolean predictive = env.getBooleanEnvVariable(ZALENIUM_PREDICTIVE_WARM_POOL, false);
+        setPredictiveWarmPool(predictive);
+
+        int targetWait = env.getIntEnvVariable(ZALENIUM_WARM_POOL_TARGET_WAIT, DEFAULT_WARM_POOL_TARGET_WAIT);
+        setWarmPoolTargetWait(targetWait);
+
+        int scaleDownDelay = env.getIntEnvVariable(ZALENIUM_WARM_POOL_SCALE_DOWN_DELAY,
+                DEFAULT_WARM_POOL_SCALE_DOWN_DELAY);
+        setWarmPoolScaleDownDelay(scaleDownDelay);
+
+        int startThreads = env.getIntEnvVariable(ZALENIUM_CONTAINER_START_THREADS, DEFAULT_CONTAINER_START_THREADS);
+        setContainerStartThreads(startThreads);
+
+        int reconcileInterval = env.getIntEnvVariable(ZALENIUM_CONTAINER_RECONCILE_INTERVAL,
+                DEFAULT_CONTAINER_RECONCILE_INTERVAL);
+        setContainerReconcileInterval(reconcileInterval);
+
         currentUser = System.getProperty("user.name", "seluser");
         HOST_GID = env.getStringEnvVariable("HOST_GID", "1000");
         HOST_UID = env.getStringEnvVariable("HOST_UID", "1000");
@@ -97,13 +203,164 @@ public class ZaleniumConfiguration {
                 DEFAULT_CHECK_CONTAINERS_INTERVAL : checkContainersInterval;
     }
 
-    public static int getMaxTimesToProcessRequest() {
-        return maxTimesToProcessRequest;
+    public static boolean isShardedMatcher() {
+        return shardedMatcher;
+    }
+
+    public static void setShardedMatcher(boolean shardedMatcher) {
+        ZaleniumConfiguration.shardedMatcher = shardedMatcher;
+    }
+
+    public static int getReleaseThreads() {
+        return releaseThreads;
+    }
+
+    public static void setReleaseThreads(int releaseThreads) {
+        ZaleniumConfiguration.releaseThreads = releaseThreads < 1 ? DEFAULT_RELEASE_THREADS : releaseThreads;
+    }
+
+    public static int getReleaseQueueSize() {
+        return releaseQueueSize;
+    }
+
+    public static void setReleaseQueueSize(int releaseQueueSize) {
+        ZaleniumConfiguration.releaseQueueSize = releaseQueueSize < 1 ? DEFAULT_RELEASE_QUEUE_SIZE : releaseQueueSize;
+    }
+
+    /*
+        The admission limits are disabled when set to 0.
+     */
+    public static int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    public static void setMaxQueuedRequests(int maxQueuedRequests) {
+        ZaleniumConfiguration.maxQueuedRequests = Math.max(0, maxQueuedRequests);
+    }
+
+    public static int getMaxEstimatedWait() {
+        return maxEstimatedWait;
+    }
+
+    public static void setMaxEstimatedWait(int maxEstimatedWait) {
+        ZaleniumConfiguration.maxEstimatedWait = Math.max(0, maxEstimatedWait);
+    }
+
+    public static int getMaxQueuedRequestsPerBuild() {
+        return maxQueuedRequestsPerBuild;
+    }
+
+    public static void setMaxQueuedRequestsPerBuild(int maxQueuedRequestsPerBuild) {
+        ZaleniumConfiguration.maxQueuedRequestsPerBuild = Math.max(0, maxQueuedRequestsPerBuild);
+    }
+
+    public static boolean isAsyncNewSessionRequests() {
+        return asyncNewSessionRequests;
+    }
+
+    public static void setAsyncNewSessionRequests(boolean asyncNewSessionRequests) {
+        ZaleniumConfiguration.asyncNewSessionRequests = asyncNewSessionRequests;
+    }
+
+    public static int getNewSessionWaitTimeout() {
+        return newSessionWaitTimeout;
+    }
+
+    public static void setNewSessionWaitTimeout(int newSessionWaitTimeout) {
+        ZaleniumConfiguration.newSessionWaitTimeout = Math.max(0, newSessionWaitTimeout);
+    }
+
+    public static boolean isFairShareScheduling() {
+        return fairShareScheduling;
+    }
+
+    public static void setFairShareScheduling(boolean fairShareScheduling) {
+        ZaleniumConfiguration.fairShareScheduling = fairShareScheduling;
+    }
+
+    public static Map<String, Integer> getBuildWeights() {
+        return buildWeights;
+    }
+
+    /*
+        Weights that are not positive numbers are ignored, those builds get the default weight.
+     */
+    public static void setBuildWeights(Map<String, String> buildWeights) {
+        Map<String, Integer> weights = new HashMap<>();
+        buildWeights.forEach((build, weight) -> {
+            try {
+                int value = Integer.parseInt(weight.trim());
+                if (value > 0) {
+                    weights.put(build.trim(), value);
+                }
+            } catch (NumberFormatException e) {
+                // Ignored, the build gets the default weight
+            }
+        });
+        ZaleniumConfiguration.buildWeights = Collections.unmodifiableMap(weights);
+    }
+
+    public static int getMaxSessionsPerBuild() {
+        return maxSessionsPerBuild;
+    }
+
+    public static void setMaxSessionsPerBuild(int maxSessionsPerBuild) {
+        ZaleniumConfiguration.maxSessionsPerBuild = Math.max(0, maxSessionsPerBuild);
+    }
+
+    /*
+        Session lifecycle events are not recorded when empty.
+     */
+    public static String getSessionTraceFile() {
+        return sessionTraceFile;
+    }
+
+    public static void setSessionTraceFile(String sessionTraceFile) {
+        ZaleniumConfiguration.sessionTraceFile = sessionTraceFile == null ? "" : sessionTraceFile.trim();
+    }
+
+    public static boolean isPredictiveWarmPool() {
+        return predictiveWarmPool;
+    }
+
+    public static void setPredictiveWarmPool(boolean predictiveWarmPool) {
+        ZaleniumConfiguration.predictiveWarmPool = predictiveWarmPool;
+    }
+
+    public static int getWarmPoolTargetWait() {
+        return warmPoolTargetWait;
+    }
+
+    public static void setWarmPoolTargetWait(int warmPoolTargetWait) {
+        ZaleniumConfiguration.warmPoolTargetWait = warmPoolTargetWait < 0 ?
+                DEFAULT_WARM_POOL_TARGET_WAIT : warmPoolTargetWait;
+    }
+
+    public static int getWarmPoolScaleDownDelay() {
+        return warmPoolScaleDownDelay;
+    }
+
+    public static void setWarmPoolScaleDownDelay(int warmPoolScaleDownDelay) {
+        ZaleniumConfiguration.warmPoolScaleDownDelay = warmPoolScaleDownDelay < 0 ?
+                DEFAULT_WARM_POOL_SCALE_DOWN_DELAY : warmPoolScaleDownDelay;
+    }
+
+    public static int getContainerStartThreads() {
+        return containerStartThreads;
+    }
+
+    public static void setContainerStartThreads(int containerStartThreads) {
+        ZaleniumConfiguration.containerStartThreads = containerStartThreads <= 0 ?
+                DEFAULT_CONTAINER_START_THREADS : containerStartThreads;
+    }
+
+    public static int getContainerReconcileInterval() {
+        return containerReconcileInterval;
     }
 
-    public static void setMaxTimesToProcessRequest(int maxTimesToProcessRequest) {
-        ZaleniumConfiguration.maxTimesToProcessRequest = maxTimesToProcessRequest < 0 ?
-                    DEFAULT_TIMES_TO_PROCESS_REQUEST : maxTimesToProcessRequest;
+    public static void setContainerReconcileInterval(int containerReconcileInterval) {
+        ZaleniumConfiguration.containerReconcileInterval = containerReconcileInterval < 1000 ?
+                DEFAULT_CONTAINER_RECONCILE_INTERVAL : containerReconcileInterval;
     }
 
     public static String getCurrentUser() {
@@ -1,7 +1,16 @@
 package de.zalando.ep.zalenium.container;
 
 import de.zalando.ep.zalenium.util.DockerContainerMock;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.EventsParam;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.awaitility.Awaitility;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.testng.Assert;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Parameters;
 import org.testng.annotations.Test;
@@ -30,4 +39,27 @@ public class DockerContainerClientTest {
             envVars,
             "40000");
   }
-}
\ No newline at end of file
+
+  @Test(timeOut = 10000)
+  public void containersAreWatchedByASingleThreadUntilStopped() throws Exception {
+    // Reading the events blocks until the watcher is interrupted.
+    List<Thread> watchers = new CopyOnWriteArrayList<>();
+    DockerClient dockerClient = Mockito.mock(DockerClient.class);
+    Mockito.when(dockerClient.events(ArgumentMatchers.<EventsParam>any(), ArgumentMatchers.<EventsParam>any(),
+        ArgumentMatchers.<EventsParam>any(), ArgumentMatchers.<EventsParam>any())).thenAnswer(invocation -> {
+          watchers.add(Thread.currentThread());
+          TimeUnit.HOURS.sleep(1);
+          return null;
+        });
+    DockerContainerClient client = new DockerContainerClient();
+    client.setContainerClient(dockerClient);
+
+    Assert.assertTrue(client.watchContainers(containerId -> { }));
+    Assert.assertTrue(client.watchContainers(containerId -> { }));
+    Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> !watchers.isEmpty());
+    client.stopWatching();
+
+    Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> !watchers.get(0).isAlive());
+    Assert.assertEquals(watchers.size(), 1);
+  }
+}
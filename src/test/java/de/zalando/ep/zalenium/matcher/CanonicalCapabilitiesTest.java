@@ -0,0 +1,101 @@
+package de.zalando.ep.zalenium.matcher;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.selenium.Dimension;
+
+public class CanonicalCapabilitiesTest {
+
+    @Test
+    public void prefixedAndNonPrefixedCapabilitiesAreParsed() {
+        Map<String, Object> requested = new HashMap<>();
+        requested.put(ZaleniumCapabilityType.TEST_NAME_NO_PREFIX, "loginTest");
+        requested.put(ZaleniumCapabilityType.BUILD_NAME, "build-1");
+        requested.put(ZaleniumCapabilityType.IDLE_TIMEOUT_NO_PREFIX, "200");
+        requested.put(ZaleniumCapabilityType.RECORD_VIDEO, false);
+        requested.put(ZaleniumCapabilityType.RESOLUTION_NO_PREFIX, "1280x760");
+        requested.put(ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX, "America/Montreal");
+
+        CanonicalCapabilities capabilities = CanonicalCapabilities.of(requested);
+
+        Assert.assertEquals("loginTest", capabilities.getTestName());
+        Assert.assertEquals("build-1", capabilities.getBuildName());
+        Assert.assertEquals(Long.valueOf(200), capabilities.getIdleTimeout());
+        Assert.assertEquals(Boolean.FALSE, capabilities.getRecordVideo());
+        Assert.assertEquals("1280x760", capabilities.getScreenResolution());
+        Assert.assertEquals(new Dimension(1280, 760), capabilities.getScreenSize());
+        Assert.assertEquals(TimeZone.getTimeZone("America/Montreal"), capabilities.getTimeZone());
+        // The requested capabilities are left untouched
+        Assert.assertEquals(6, requested.size());
+        Assert.assertTrue(requested.containsKey(ZaleniumCapabilityType.TEST_NAME_NO_PREFIX));
+    }
+
+    @Test
+    public void invalidValuesAreIgnored() {
+        Map<String, Object> requested = new HashMap<>();
+        requested.put(ZaleniumCapabilityType.IDLE_TIMEOUT_NO_PREFIX, "notANumber");
+        requested.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, "-1300x800");
+        requested.put(ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX, "ABC_NON_STANDARD_TIME_ZONE");
+
+        CanonicalCapabilities capabilities = CanonicalCapabilities.of(requested);
+
+        Assert.assertNull(capabilities.getIdleTimeout());
+        Assert.assertNull(capabilities.getRecordVideo());
+        Assert.assertNull(capabilities.getScreenSize());
+        Assert.assertEquals("-1300x800", capabilities.getScreenResolution());
+        Assert.assertNull(capabilities.getTimeZone());
+        Assert.assertEquals("ABC_NON_STANDARD_TIME_ZONE", capabilities.getTimeZoneId());
+    }
+
+    @Test
+    public void newSessionWaitTimeoutIsParsedLikeTheIdleTimeout() {
+        Map<String, Object> requested = new HashMap<>();
+        requested.put(ZaleniumCapabilityType.NEW_SESSION_WAIT_TIMEOUT_SECONDS_NO_PREFIX, 120.0);
+        requested.put(ZaleniumCapabilityType.NEW_SESSION_WAIT_TIMEOUT_SECONDS, 30);
+        requested.put(ZaleniumCapabilityType.IDLE_TIMEOUT, "0");
+
+        CanonicalCapabilities capabilities = CanonicalCapabilities.of(requested);
+
+        Assert.assertEquals(Long.valueOf(120), capabilities.getNewSessionWaitTimeout());
+        Assert.assertNull(capabilities.getIdleTimeout());
+    }
+
+    @Test
+    public void requestsAreNormalizedOnce() {
+        Map<String, Object> requested = new HashMap<>();
+        requested.put(ZaleniumCapabilityType.TEST_NAME_NO_PREFIX, "loginTest");
+
+        CanonicalCapabilities normalized = CanonicalCapabilities.of(requested);
+
+        Assert.assertSame(normalized, CanonicalCapabilities.of(requested));
+        Assert.assertNotSame(normalized, CanonicalCapabilities.of(new HashMap<>(requested)));
+        Assert.assertNotEquals(normalized.getRequestId(), CanonicalCapabilities.of(new HashMap<>(requested)).getRequestId());
+    }
+
+    @Test
+    public void changesAfterTheFirstLookupAreNotSeen() {
+        Map<String, Object> requested = new HashMap<>();
+        requested.put(ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX, "build-1");
+
+        CanonicalCapabilities normalized = CanonicalCapabilities.of(requested);
+        requested.put(ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX, "build-2");
+
+        Assert.assertEquals("build-1", CanonicalCapabilities.of(requested).getBuildName());
+        Assert.assertEquals(normalized.getFingerprint(), CanonicalCapabilities.of(requested).getFingerprint());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nodeCapabilitiesHaveNoRequestId() {
+        Map<String, Object> node = new HashMap<>();
+        node.put(ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX, "Europe/Berlin");
+
+        CanonicalCapabilities normalized = CanonicalCapabilities.ofNode(node);
+
+        Assert.assertEquals(TimeZone.getTimeZone("Europe/Berlin"), normalized.getTimeZone());
+        normalized.getRequestId();
+    }
+}
@@ -0,0 +1,89 @@
+package de.zalando.ep.zalenium.matcher;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.zalando.ep.zalenium.proxy.DockeredSeleniumStarter;
+
+public class CapabilityMatchCacheTest {
+
+    @Test
+    public void verdictsAreFoundByCapabilityContent() {
+        CapabilityMatchCache<Boolean> cache = new CapabilityMatchCache<>(10);
+        cache.put(capabilities("chrome"), capabilities("chrome"), true);
+
+        Assert.assertEquals(Boolean.TRUE, cache.get(capabilities("chrome"), capabilities("chrome")));
+        Assert.assertNull(cache.get(capabilities("chrome"), capabilities("firefox")));
+    }
+
+    @Test
+    public void requestsOnlyDifferingInTheirMetadataShareTheirVerdicts() {
+        CapabilityMatchCache<Boolean> cache = new CapabilityMatchCache<>(10);
+        cache.put(capabilities("chrome"), capabilities("chrome"), true);
+        Map<String, Object> requested = capabilities("chrome");
+        requested.put(ZaleniumCapabilityType.TEST_NAME, "test");
+        requested.put(ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX, "build");
+
+        Assert.assertEquals(Boolean.TRUE, cache.get(capabilities("chrome"), requested));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        CapabilityMatchCache<Boolean> cache = new CapabilityMatchCache<>(10);
+        for (int i = 0; i < 100; i++) {
+            cache.put(capabilities("chrome"), capabilities("browser " + i), false);
+        }
+
+        Assert.assertTrue(cache.size() <= 10);
+        cache.forgetNode(capabilities("chrome"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void verdictsOfARemovedNodeAreForgotten() {
+        CapabilityMatchCache<Boolean> cache = new CapabilityMatchCache<>(10);
+        cache.put(capabilities("chrome"), capabilities("chrome"), true);
+        cache.put(capabilities("firefox"), capabilities("chrome"), false);
+
+        cache.forgetNode(capabilities("chrome"));
+
+        Assert.assertNull(cache.get(capabilities("chrome"), capabilities("chrome")));
+        Assert.assertEquals(Boolean.FALSE, cache.get(capabilities("firefox"), capabilities("chrome")));
+    }
+
+    @Test
+    public void matcherReusesVerdictsForTheSameCapabilities() {
+        DockerSeleniumCapabilityMatcher matcher = new DockerSeleniumCapabilityMatcher();
+        String screenResolution = String.format("%sx%s", DockeredSeleniumStarter.getConfiguredScreenSize().getWidth(),
+                DockeredSeleniumStarter.getConfiguredScreenSize().getHeight());
+        String timeZone = DockeredSeleniumStarter.getConfiguredTimeZone().getID();
+        Map<String, Object> node = new HashMap<>();
+        node.put("browserName", "chrome");
+        node.put("platformName", "LINUX");
+        node.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, screenResolution);
+        node.put(ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX, timeZone);
+        Map<String, Object> requested = capabilities("chrome");
+        requested.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, screenResolution);
+        requested.put(ZaleniumCapabilityType.TIME_ZONE_NO_PREFIX, timeZone);
+        requested.put(ZaleniumCapabilityType.TEST_NAME_NO_PREFIX, "test");
+
+        Assert.assertTrue(matcher.matches(node, requested));
+        int cachedVerdicts = DockerSeleniumCapabilityMatcher.getCachedVerdicts();
+        Assert.assertTrue(matcher.matches(node, requested));
+        Assert.assertEquals(cachedVerdicts, DockerSeleniumCapabilityMatcher.getCachedVerdicts());
+        Assert.assertFalse(requested.containsKey(ZaleniumCapabilityType.TEST_NAME));
+
+        DockerSeleniumCapabilityMatcher.forgetNode(node);
+        Assert.assertTrue(matcher.matches(node, requested));
+    }
+
+    private static Map<String, Object> capabilities(String browserName) {
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put("browserName", browserName);
+        return capabilities;
+    }
+}
@@ -0,0 +1,44 @@
+package de.zalando.ep.zalenium.matcher;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+public class DockerSeleniumClassifierTest {
+
+    @Test
+    public void dockerSeleniumBrowsersAreNotRoutedToCloudProviders() {
+        ZaleniumCapabilityMatcher matcher = new ZaleniumCapabilityMatcher();
+
+        Assert.assertFalse(matcher.matches(null, capabilities(BrowserType.CHROME, Platform.ANY)));
+        Assert.assertFalse(matcher.matches(null, capabilities(BrowserType.FIREFOX, Platform.LINUX)));
+        Assert.assertTrue(matcher.matches(null, capabilities(BrowserType.SAFARI, Platform.MAC)));
+        Assert.assertTrue(matcher.matches(null, capabilities(BrowserType.CHROME, Platform.WIN10)));
+    }
+
+    @Test
+    public void decisionsAreKeptForTheSameRequest() {
+        Map<String, Object> requested = capabilities(BrowserType.CHROME, Platform.ANY);
+        DockerSeleniumClassifier classifier = DockerSeleniumClassifier.current();
+
+        Assert.assertTrue(classifier.isSupportedByDockerSelenium(requested));
+        // Only a new evaluation would see the change, the decision is looked up by identity of the request
+        requested.put(CapabilityType.BROWSER_NAME, BrowserType.SAFARI);
+        requested.put(CapabilityType.PLATFORM_NAME, Platform.MAC);
+        Assert.assertTrue(classifier.isSupportedByDockerSelenium(requested));
+        Assert.assertFalse(classifier.isSupportedByDockerSelenium(capabilities(BrowserType.SAFARI, Platform.MAC)));
+        Assert.assertSame(classifier, DockerSeleniumClassifier.current());
+    }
+
+    private static Map<String, Object> capabilities(String browserName, Platform platform) {
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put(CapabilityType.BROWSER_NAME, browserName);
+        capabilities.put(CapabilityType.PLATFORM_NAME, platform);
+        return capabilities;
+    }
+}
@@ -0,0 +1,81 @@
+package de.zalando.ep.zalenium.prometheus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.prometheus.client.Histogram;
+
+public class SessionStartPhasesTest {
+
+    private final Histogram histogram = Histogram.build()
+            .name("test_session_start_phase_seconds")
+            .help("Test histogram")
+            .labelNames("phase")
+            .create();
+    private final SessionStartPhases phases = new SessionStartPhases(histogram);
+
+    @Test
+    public void phasesAreCorrelatedByContainerName() {
+        phases.containerCreated("zalenium_1", 1000, 3000);
+        phases.containerStarted("zalenium_1", 7000);
+        phases.nodeRegistered("zalenium_1", "http://172.17.0.3:40000", 8000);
+        phases.sessionAssigned("http://172.17.0.3:40000", 500, 9000);
+        phases.sessionCreated("http://172.17.0.3:40000", 12000);
+
+        Assert.assertEquals(2, getSum("container_create"), 0);
+        Assert.assertEquals(4, getSum("container_start"), 0);
+        Assert.assertEquals(1, getSum("node_registration"), 0);
+        Assert.assertEquals(8.5, getSum("queue_wait"), 0);
+        Assert.assertEquals(3, getSum("session_create"), 0);
+    }
+
+    @Test
+    public void containerPhasesAreObservedOnce() {
+        phases.containerCreated("zalenium_1", 1000, 3000);
+        phases.containerStarted("zalenium_1", 7000);
+        phases.containerStarted("zalenium_1", 9000);
+        phases.nodeRegistered("zalenium_1", "node", 10000);
+        phases.nodeRegistered("zalenium_1", "node", 11000);
+
+        Assert.assertEquals(1, getCount("container_start"), 0);
+        Assert.assertEquals(1, getCount("node_registration"), 0);
+    }
+
+    @Test
+    public void sessionsOutsideOfContainersOnlyObserveTheQueueWait() {
+        phases.sessionAssigned(null, 1000, 2000);
+        phases.sessionCreated("https://cloud.provider", 3000);
+
+        Assert.assertEquals(1, getCount("queue_wait"), 0);
+        Assert.assertEquals(0, getCount("session_create"), 0);
+    }
+
+    @Test
+    public void firstCommandIsObservedFromTheSessionCreation() {
+        phases.firstCommand(12000, 12500);
+
+        Assert.assertEquals(0.5, getSum("first_command"), 0);
+    }
+
+    @Test
+    public void removedContainersAreForgotten() {
+        phases.containerCreated("zalenium_1", 1000, 3000);
+        phases.nodeRegistered("zalenium_1", "node", 4000);
+
+        phases.containerRemoved("zalenium_1");
+        phases.sessionAssigned("node", 4000, 5000);
+        phases.sessionCreated("node", 6000);
+
+        Assert.assertEquals(0, phases.getTrackedContainers());
+        Assert.assertEquals(0, getCount("session_create"), 0);
+    }
+
+    private double getSum(String phase) {
+        return histogram.labels(phase).get().sum;
+    }
+
+    private double getCount(String phase) {
+        double[] buckets = histogram.labels(phase).get().buckets;
+        return buckets[buckets.length - 1];
+    }
+}
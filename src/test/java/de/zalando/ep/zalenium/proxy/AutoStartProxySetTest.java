@@ -3,10 +3,14 @@ package de.zalando.ep.zalenium.proxy;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -18,6 +22,7 @@ import org.openqa.selenium.remote.CapabilityType;
 import org.testng.Assert;
 
 import de.zalando.ep.zalenium.container.ContainerCreationStatus;
+import de.zalando.ep.zalenium.container.ContainerTerminationListener;
 
 @SuppressWarnings("Duplicates")
 public class AutoStartProxySetTest {
@@ -31,7 +36,7 @@ public class AutoStartProxySetTest {
         ContainerCreationStatus containerCreationStatus = new ContainerCreationStatus(true, "name", "id", "40000");
         Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenReturn(containerCreationStatus);
 
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
 
         // When a new session is requested.
         TestSession session = autoStartProxySet.getNewSession(Collections.emptyMap());
@@ -52,7 +57,7 @@ public class AutoStartProxySetTest {
         ContainerCreationStatus containerCreationStatus = new ContainerCreationStatus(true, "name", "id", "40000");
         Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenReturn(containerCreationStatus);
 
-        new AutoStartProxySet(false, 5, 5, 1000, false, starter, clock, 30, 30000);
+        new AutoStartProxySet(false, 5, 5, 1000, false, starter, clock, 30000);
 
         // And a request should have been made to start a proxy.
         Mockito.verify(starter, Mockito.timeout(5000).times(5)).startDockerSeleniumContainer(Collections.emptyMap());
@@ -75,7 +80,7 @@ public class AutoStartProxySetTest {
         supportedCapability.put("screenResolution", screenResolution);
 
 
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
 
         // When a new session is requested.
         TestSession session = autoStartProxySet.getNewSession(supportedCapability);
@@ -102,7 +107,7 @@ public class AutoStartProxySetTest {
         supportedCapability.put(CapabilityType.PLATFORM_NAME, Platform.ANY);
         supportedCapability.put("tz", timeZone.getID());
 
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
 
         // When a new session is requested.
         TestSession session = autoStartProxySet.getNewSession(supportedCapability);
@@ -129,7 +134,7 @@ public class AutoStartProxySetTest {
         supportedCapability.put(CapabilityType.PLATFORM_NAME, Platform.ANY);
         supportedCapability.put("resolution", "-1300x800");
 
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
 
         // When a new session is requested.
         TestSession session = autoStartProxySet.getNewSession(supportedCapability);
@@ -157,7 +162,7 @@ public class AutoStartProxySetTest {
         supportedCapability.put(CapabilityType.PLATFORM_NAME, Platform.ANY);
         supportedCapability.put("resolution", "notAValidScreenResolution");
 
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
 
         // When a new session is requested.
         TestSession session = autoStartProxySet.getNewSession(supportedCapability);
@@ -179,7 +184,7 @@ public class AutoStartProxySetTest {
         Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenReturn(containerCreationStatus);
 
         // Given a proxy set that contains a busy proxy.
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
         autoStartProxySet.add(proxy("busy_container", true));
 
         // When a new session is requested.
@@ -208,7 +213,7 @@ public class AutoStartProxySetTest {
         Mockito.when(starter.startDockerSeleniumContainer(session2))
                 .thenReturn(new ContainerCreationStatus(true, "name", "id_2", "40000"));
 
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 2, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 2, 1000, false, starter, clock, 30000);
 
         // When a new session is requested.
         Assert.assertNull(autoStartProxySet.getNewSession(session1));
@@ -222,6 +227,104 @@ public class AutoStartProxySetTest {
         Mockito.verify(starter, Mockito.times(0)).startDockerSeleniumContainer(session3);
     }
 
+    @Test
+    public void containersAreCreatedConcurrently() throws InterruptedException {
+        Map<String, Object> session1 = Collections.singletonMap("session", "1");
+        Map<String, Object> session2 = Collections.singletonMap("session", "2");
+        Map<String, Object> session3 = Collections.singletonMap("session", "3");
+
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(10000), ZoneId.systemDefault());
+
+        // Given a container client that hangs until it is released.
+        CountDownLatch creationsReleased = new CountDownLatch(1);
+        DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
+        Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenAnswer(invocation -> {
+            creationsReleased.await();
+            return new ContainerCreationStatus(true, "name", "id_" + invocation.getArgument(0).hashCode(), "40000");
+        });
+
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000, 3);
+
+        // When three sessions are requested.
+        autoStartProxySet.getNewSession(session1);
+        autoStartProxySet.getNewSession(session2);
+        autoStartProxySet.getNewSession(session3);
+
+        // Then the three containers are being created at the same time.
+        Mockito.verify(starter, Mockito.timeout(1000)).startDockerSeleniumContainer(session1);
+        Mockito.verify(starter, Mockito.timeout(1000)).startDockerSeleniumContainer(session2);
+        Mockito.verify(starter, Mockito.timeout(1000)).startDockerSeleniumContainer(session3);
+        Assert.assertEquals(autoStartProxySet.getContainersBeingCreated(), 3);
+
+        // And a request waiting for its container does not get another one.
+        autoStartProxySet.getNewSession(session1);
+        creationsReleased.countDown();
+        Mockito.verify(starter, Mockito.timeout(1000).times(3)).startDockerSeleniumContainer(Mockito.any());
+        Thread.sleep(100);
+        Mockito.verify(starter, Mockito.times(1)).startDockerSeleniumContainer(session1);
+        Assert.assertEquals(autoStartProxySet.getStartedContainers().size(), 3);
+        Assert.assertEquals(autoStartProxySet.getContainersBeingCreated(), 0);
+    }
+
+    @Test
+    public void containersBeingCreatedAreCapped() {
+        Map<String, Object> session1 = Collections.singletonMap("session", "1");
+        Map<String, Object> session2 = Collections.singletonMap("session", "2");
+        Map<String, Object> session3 = Collections.singletonMap("session", "3");
+
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(10000), ZoneId.systemDefault());
+
+        // Given a container client that never finishes a creation.
+        CountDownLatch creationsReleased = new CountDownLatch(1);
+        DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
+        Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenAnswer(invocation -> {
+            creationsReleased.await();
+            return null;
+        });
+
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 2, 1000, false, starter, clock, 30000, 5);
+
+        // When more sessions than the maximum are requested.
+        autoStartProxySet.getNewSession(session1);
+        autoStartProxySet.getNewSession(session2);
+        Mockito.verify(starter, Mockito.timeout(1000).times(2)).startDockerSeleniumContainer(Mockito.any());
+        autoStartProxySet.getNewSession(session3);
+
+        // Then the creations in flight count towards the maximum.
+        Mockito.verify(starter, Mockito.after(200).never()).startDockerSeleniumContainer(session3);
+        creationsReleased.countDown();
+    }
+
+    @Test
+    public void containersAreSharedByRequestsOfTheSameShape() {
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(10000), ZoneId.systemDefault());
+
+        DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
+        Mockito.when(starter.startDockerSeleniumContainer(Mockito.any()))
+                .thenAnswer(invocation -> new ContainerCreationStatus(true, "name", "id", "40000"));
+
+        Map<String, Object> firefox = new HashMap<>();
+        firefox.put(CapabilityType.BROWSER_NAME, BrowserType.FIREFOX);
+        Map<String, Object> chrome = new HashMap<>();
+        chrome.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        Map<String, Object> smallChrome = new HashMap<>(chrome);
+        smallChrome.put("screenResolution", "1280x720");
+
+        // Given a container started for a request.
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
+        autoStartProxySet.requestContainers(Collections.singletonList(firefox));
+        Mockito.verify(starter, Mockito.timeout(1000)).startDockerSeleniumContainer(firefox);
+
+        // When the request got a session somewhere else, and two more requests arrive.
+        autoStartProxySet.requestLeft(firefox);
+        autoStartProxySet.requestContainers(Arrays.asList(chrome, smallChrome));
+
+        // Then the container being started is used for the request with the same screen resolution and time zone.
+        Mockito.verify(starter, Mockito.timeout(1000)).startDockerSeleniumContainer(smallChrome);
+        Mockito.verify(starter, Mockito.after(200).never()).startDockerSeleniumContainer(chrome);
+        Assert.assertEquals(autoStartProxySet.getStartedContainers().size(), 2);
+    }
+
     @Test
     public void requestsAreFiltered() {
         // Given a proxy set that will not autostart containers.
@@ -231,7 +334,7 @@ public class AutoStartProxySetTest {
         ContainerCreationStatus containerCreationStatus = new ContainerCreationStatus(true, "name", "id", "40000");
         Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenReturn(containerCreationStatus);
 
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
 
         // When a new session is requested.
         TestSession session = autoStartProxySet.getNewSession(Collections.emptyMap());
@@ -259,7 +362,7 @@ public class AutoStartProxySetTest {
                 "40000");
         Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenReturn(containerCreationStatus);
 
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
 
         // When a new session is requested.
         TestSession session = autoStartProxySet.getNewSession(Collections.emptyMap());
@@ -289,7 +392,7 @@ public class AutoStartProxySetTest {
                 "40000");
         Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenReturn(containerCreationStatus);
         
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
 
         autoStartProxySet.getNewSession(Collections.emptyMap());
         Mockito.verify(starter, Mockito.timeout(1000)).startDockerSeleniumContainer(Collections.emptyMap());
@@ -300,11 +403,101 @@ public class AutoStartProxySetTest {
         Mockito.verify(starter).stopContainer("container_id");
     }
 
+    @Test
+    public void reportedTerminatedContainersAreRemoved() {
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(10000), ZoneId.systemDefault());
+        DockerSeleniumRemoteProxy proxy = proxy("container_id", false);
+        Mockito.when(proxy.getId()).thenReturn("proxy_id");
+        DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
+        ContainerCreationStatus containerCreationStatus = new ContainerCreationStatus(true, "name", "container_id",
+                "40000");
+        Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenReturn(containerCreationStatus);
+        AtomicReference<ContainerTerminationListener> listener = new AtomicReference<>();
+        Mockito.when(starter.watchContainers(Mockito.any())).thenAnswer(invocation -> {
+            listener.set(invocation.getArgument(0));
+            return true;
+        });
+
+        // Given a registered container, and a container client reporting the terminated containers.
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
+        autoStartProxySet.watchContainers(60000);
+        autoStartProxySet.getNewSession(Collections.emptyMap());
+        Mockito.verify(starter, Mockito.timeout(1000)).startDockerSeleniumContainer(Collections.emptyMap());
+        autoStartProxySet.add(proxy);
+
+        // When the container terminates, or another one that is not tracked.
+        listener.get().containerTerminated("other_container_id");
+        listener.get().containerTerminated("container_id");
+
+        // Then the container is removed right away, and its node marked down.
+        Assert.assertTrue(autoStartProxySet.getStartedContainers().isEmpty());
+        Mockito.verify(proxy).markDown();
+        Mockito.verify(starter).releasePort(containerCreationStatus);
+    }
+
+    @Test
+    public void registeredContainersThatDiedAreRemovedWhenReconciling() {
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(10000), ZoneId.systemDefault());
+        DockerSeleniumRemoteProxy proxy = proxy("container_id", false);
+        Mockito.when(proxy.getId()).thenReturn("proxy_id");
+        DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
+        ContainerCreationStatus containerCreationStatus = new ContainerCreationStatus(true, "name", "container_id",
+                "40000");
+        Mockito.when(starter.startDockerSeleniumContainer(Mockito.any())).thenReturn(containerCreationStatus);
+        AtomicBoolean containerDied = new AtomicBoolean(false);
+        Mockito.when(starter.containerHasFinished(containerCreationStatus)).thenAnswer(invocation -> containerDied.get());
+
+        // Given a registered container, and no notifications from the container client.
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 100);
+        autoStartProxySet.getNewSession(Collections.emptyMap());
+        Mockito.verify(starter, Mockito.timeout(1000)).startDockerSeleniumContainer(Collections.emptyMap());
+        autoStartProxySet.add(proxy);
+
+        // When the container dies without the hub noticing.
+        containerDied.set(true);
+
+        // Then the next check removes it, and its node is marked down.
+        Mockito.verify(proxy, Mockito.timeout(1000)).markDown();
+        Mockito.verify(starter, Mockito.timeout(1000)).releasePort(containerCreationStatus);
+        Assert.assertTrue(autoStartProxySet.getStartedContainers().isEmpty());
+    }
+
+    @Test
+    public void teardownStopsWatchingTheContainers() {
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(10000), ZoneId.systemDefault());
+        DockerSeleniumRemoteProxy proxy = proxy("container_id", false);
+        Mockito.when(proxy.getId()).thenReturn("proxy_id");
+        DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
+        Mockito.when(starter.startDockerSeleniumContainer(Mockito.any()))
+                .thenReturn(new ContainerCreationStatus(true, "name", "container_id", "40000"));
+        AtomicReference<ContainerTerminationListener> listener = new AtomicReference<>();
+        Mockito.when(starter.watchContainers(Mockito.any())).thenAnswer(invocation -> {
+            listener.set(invocation.getArgument(0));
+            return true;
+        });
+
+        // Given a watched container.
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
+        autoStartProxySet.watchContainers(60000);
+        autoStartProxySet.getNewSession(Collections.emptyMap());
+        Mockito.verify(starter, Mockito.timeout(1000)).startDockerSeleniumContainer(Collections.emptyMap());
+        autoStartProxySet.add(proxy);
+
+        // When the proxy set is torn down, and a termination is still delivered afterwards.
+        autoStartProxySet.teardown();
+        listener.get().containerTerminated("container_id");
+
+        // Then the container client stops watching, and the late termination is ignored.
+        Mockito.verify(starter).stopWatching();
+        Assert.assertEquals(autoStartProxySet.getStartedContainers().size(), 1);
+        Mockito.verify(proxy, Mockito.never()).markDown();
+    }
+
     @Test
     public void orphanedContainersAreMarkedDown() {
         Clock clock = Clock.fixed(Instant.ofEpochMilli(10000), ZoneId.systemDefault());
         DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(false, 0, 5, 1000, false, starter, clock, 30000);
 
         DockerSeleniumRemoteProxy proxy = proxy("container_id", false);
 
@@ -0,0 +1,74 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.Map.Entry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import de.zalando.ep.zalenium.container.ContainerCreationStatus;
+import de.zalando.ep.zalenium.proxy.AutoStartProxySet.ContainerStatus;
+import de.zalando.ep.zalenium.proxy.ContainerInventory.State;
+
+public class ContainerInventoryTest {
+
+    @Test
+    public void containersAreFoundByIdAndName() {
+        ContainerInventory inventory = new ContainerInventory();
+        ContainerCreationStatus creationStatus = new ContainerCreationStatus(true, "name", "id", "40000");
+        inventory.add(creationStatus, new ContainerStatus("name", 0));
+
+        Assert.assertSame(creationStatus, inventory.find("name").map(Entry::getKey).orElse(null));
+        Assert.assertSame(creationStatus, inventory.find("id").map(Entry::getKey).orElse(null));
+        Assert.assertFalse(inventory.find("other").isPresent());
+        Assert.assertFalse(inventory.find(null).isPresent());
+    }
+
+    @Test
+    public void containersMoveThroughTheLifecycleStates() {
+        ContainerInventory inventory = new ContainerInventory();
+        ContainerCreationStatus creationStatus = new ContainerCreationStatus(true, "name", "id", "40000");
+        inventory.add(creationStatus, new ContainerStatus("name", 0));
+        Assert.assertEquals(1, inventory.count(State.CREATED));
+
+        inventory.markStarted(creationStatus, 10);
+        Assert.assertEquals(0, inventory.count(State.CREATED));
+        Assert.assertEquals(1, inventory.count(State.STARTED));
+
+        inventory.markRegistered(creationStatus, Mockito.mock(DockerSeleniumRemoteProxy.class));
+        Assert.assertEquals(0, inventory.count(State.STARTED));
+        Assert.assertEquals(creationStatus, inventory.inState(State.REGISTERED).get(0).getKey());
+
+        inventory.markShuttingDown(creationStatus);
+        Assert.assertEquals(0, inventory.count(State.REGISTERED));
+        Assert.assertEquals(1, inventory.count(State.SHUTTING_DOWN));
+    }
+
+    @Test
+    public void nodesRegisteringBeforeTheContainerIsSeenRunningAreStillCreated() {
+        ContainerInventory inventory = new ContainerInventory();
+        ContainerCreationStatus creationStatus = new ContainerCreationStatus(true, "name", "id", "40000");
+        inventory.add(creationStatus, new ContainerStatus("name", 0));
+
+        inventory.markRegistered(creationStatus, Mockito.mock(DockerSeleniumRemoteProxy.class));
+
+        Assert.assertEquals(1, inventory.count(State.CREATED));
+        inventory.markStarted(creationStatus, 10);
+        Assert.assertEquals(1, inventory.count(State.REGISTERED));
+    }
+
+    @Test
+    public void removedContainersAreForgotten() {
+        ContainerInventory inventory = new ContainerInventory();
+        ContainerCreationStatus creationStatus = new ContainerCreationStatus(true, "name", "id", "40000");
+        inventory.add(creationStatus, new ContainerStatus("name", 0));
+
+        Assert.assertNotNull(inventory.remove(creationStatus));
+
+        Assert.assertEquals(0, inventory.size());
+        Assert.assertEquals(0, inventory.count(State.CREATED));
+        Assert.assertFalse(inventory.find("id").isPresent());
+        Assert.assertTrue(inventory.asMap().isEmpty());
+        Assert.assertNull(inventory.remove(creationStatus));
+    }
+}
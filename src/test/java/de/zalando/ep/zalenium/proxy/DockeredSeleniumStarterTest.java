@@ -221,7 +221,6 @@ public class DockeredSeleniumStarterTest {
         ZaleniumConfiguration.setMaxDockerSeleniumContainers(-1);
         ZaleniumConfiguration.setTimeToWaitToStart(-10);
         ZaleniumConfiguration.setWaitForAvailableNodes(true);
-        ZaleniumConfiguration.setMaxTimesToProcessRequest(-10);
         ZaleniumConfiguration.setCheckContainersInterval(500);
         DockeredSeleniumStarter.setBrowserTimeout(-100);
         DockeredSeleniumStarter.setConfiguredScreenSize(new Dimension(-1, -1));
@@ -235,8 +234,6 @@ public class DockeredSeleniumStarterTest {
                 DockeredSeleniumStarter.getConfiguredScreenSize().getHeight());
         Assert.assertEquals(ZaleniumConfiguration.DEFAULT_TIME_TO_WAIT_TO_START,
                 ZaleniumConfiguration.getTimeToWaitToStart());
-        Assert.assertEquals(ZaleniumConfiguration.DEFAULT_TIMES_TO_PROCESS_REQUEST,
-                ZaleniumConfiguration.getMaxTimesToProcessRequest());
         Assert.assertEquals(ZaleniumConfiguration.DEFAULT_CHECK_CONTAINERS_INTERVAL,
                 ZaleniumConfiguration.getCheckContainersInterval());
         Assert.assertTrue(ZaleniumConfiguration.isWaitForAvailableNodes());
@@ -0,0 +1,57 @@
+package de.zalando.ep.zalenium.proxy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PortAllocatorTest {
+
+    @Test
+    public void portsAreAllocatedAfterTheLastOne() {
+        PortAllocator portAllocator = new PortAllocator(40000, 40002);
+
+        Assert.assertEquals(40000, portAllocator.allocate());
+        Assert.assertEquals(40001, portAllocator.allocate());
+        portAllocator.release(40000);
+
+        // Released ports are reused only after the rest of the range
+        Assert.assertEquals(40002, portAllocator.allocate());
+        Assert.assertEquals(40000, portAllocator.allocate());
+    }
+
+    @Test
+    public void noPortIsReturnedWhenTheRangeIsFull() {
+        PortAllocator portAllocator = new PortAllocator(40000, 40001);
+
+        portAllocator.allocate();
+        portAllocator.allocate();
+
+        Assert.assertEquals(-1, portAllocator.allocate());
+        portAllocator.release(40001);
+        Assert.assertEquals(40001, portAllocator.allocate());
+    }
+
+    @Test
+    public void unknownPortsAreIgnoredOnRelease() {
+        PortAllocator portAllocator = new PortAllocator(40000, 40003);
+        portAllocator.allocate();
+
+        portAllocator.release(39999);
+        portAllocator.release(40004);
+        portAllocator.release(40001);
+        portAllocator.release(40001);
+
+        Assert.assertEquals(0.25, portAllocator.getUtilization(), 0.0);
+    }
+
+    @Test
+    public void utilizationFollowsTheAllocatedPorts() {
+        PortAllocator portAllocator = new PortAllocator(40000, 40003);
+
+        Assert.assertEquals(0, portAllocator.getUtilization(), 0.0);
+        portAllocator.allocate();
+        portAllocator.allocate();
+        Assert.assertEquals(0.5, portAllocator.getUtilization(), 0.0);
+        portAllocator.release(40000);
+        Assert.assertEquals(0.25, portAllocator.getUtilization(), 0.0);
+    }
+}
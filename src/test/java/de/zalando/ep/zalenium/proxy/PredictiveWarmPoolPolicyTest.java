@@ -0,0 +1,102 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+
+public class PredictiveWarmPoolPolicyTest {
+
+    private static final long SCALE_DOWN_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    @Test
+    public void fixedPolicyKeepsTheMinimum() {
+        WarmPoolPolicy policy = WarmPoolPolicy.fixed();
+
+        policy.requestArrived(chrome(), 0);
+
+        Assert.assertEquals(3, policy.getContainersToKeep(3, 0));
+    }
+
+    @Test
+    public void poolIsTheMinimumWithoutDemand() {
+        PredictiveWarmPoolPolicy policy = new PredictiveWarmPoolPolicy(2000, SCALE_DOWN_DELAY);
+
+        Assert.assertEquals(2, policy.getContainersToKeep(2, 0));
+    }
+
+    @Test
+    public void poolGrowsWithTheDemand() {
+        PredictiveWarmPoolPolicy policy = new PredictiveWarmPoolPolicy(2000, SCALE_DOWN_DELAY);
+
+        long now = sessionEverySecond(policy, chrome(), 0);
+
+        // One session per second during one minute keeps about sixty containers busy
+        Assert.assertTrue(policy.getContainersToKeep(1, now) > 30);
+    }
+
+    @Test
+    public void requestsWithOtherScreenResolutionsAreNotPooled() {
+        PredictiveWarmPoolPolicy policy = new PredictiveWarmPoolPolicy(2000, SCALE_DOWN_DELAY);
+        Map<String, Object> capabilities = chrome();
+        capabilities.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, "1280x720");
+
+        long now = sessionEverySecond(policy, capabilities, 0);
+
+        Assert.assertEquals(1, policy.getContainersToKeep(1, now));
+    }
+
+    @Test
+    public void poolShrinksOnlyAfterTheScaleDownDelay() {
+        PredictiveWarmPoolPolicy policy = new PredictiveWarmPoolPolicy(2000, SCALE_DOWN_DELAY);
+        long now = sessionEverySecond(policy, chrome(), 0);
+        long busyPool = policy.getContainersToKeep(1, now);
+
+        // The demand goes down, the pool is kept during the delay
+        long quietSince = now + TimeUnit.MINUTES.toMillis(2);
+        Assert.assertEquals(busyPool, policy.getContainersToKeep(1, quietSince));
+        Assert.assertEquals(busyPool, policy.getContainersToKeep(1, quietSince + SCALE_DOWN_DELAY - 1));
+
+        long shrunk = policy.getContainersToKeep(1, quietSince + SCALE_DOWN_DELAY);
+        Assert.assertTrue(shrunk < busyPool);
+        Assert.assertTrue(shrunk >= 1);
+    }
+
+    @Test
+    public void containersAreSizedForTheQueueWait() {
+        Assert.assertEquals(1, PredictiveWarmPoolPolicy.containersFor(0.01, 60000, 2000));
+        long containers = PredictiveWarmPoolPolicy.containersFor(10, 60000, 2000);
+        Assert.assertTrue(containers > 10);
+        Assert.assertTrue(PredictiveWarmPoolPolicy.containersFor(100, 60000, 2000) > containers);
+        // A longer accepted wait needs less containers
+        Assert.assertTrue(PredictiveWarmPoolPolicy.containersFor(10, 60000, 60000) <= containers);
+    }
+
+    /*
+        One request per second during ten minutes, with sessions of one minute.
+     */
+    private static long sessionEverySecond(PredictiveWarmPoolPolicy policy, Map<String, Object> capabilities,
+                                           long start) {
+        long now = start;
+        for (int i = 0; i < 600; i++) {
+            now = start + TimeUnit.SECONDS.toMillis(i);
+            policy.requestArrived(capabilities, now);
+            if (i >= 60) {
+                policy.sessionEnded(capabilities, TimeUnit.MINUTES.toMillis(1), now);
+            }
+        }
+        return now;
+    }
+
+    private static Map<String, Object> chrome() {
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        return capabilities;
+    }
+}
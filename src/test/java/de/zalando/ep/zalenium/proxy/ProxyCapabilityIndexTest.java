@@ -0,0 +1,132 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+
+public class ProxyCapabilityIndexTest {
+
+    @Test
+    public void onlyProxiesWithMatchingBrowserAreCandidates() {
+        ProxyCapabilityIndex index = new ProxyCapabilityIndex();
+        RemoteProxy chrome = proxy(BrowserType.CHROME, Platform.LINUX, defaultResolution(), 0);
+        RemoteProxy firefox = proxy(BrowserType.FIREFOX, Platform.LINUX, defaultResolution(), 0);
+        index.add(chrome);
+        index.add(firefox);
+
+        List<RemoteProxy> candidates = index.getCandidates(request(BrowserType.CHROME, Platform.LINUX));
+
+        Assert.assertEquals(Collections.singletonList(chrome), candidates);
+    }
+
+    @Test
+    public void androidProxiesAreNotCandidatesForLinux() {
+        ProxyCapabilityIndex index = new ProxyCapabilityIndex();
+        RemoteProxy android = proxy(BrowserType.CHROME, Platform.ANDROID, defaultResolution(), 0);
+        index.add(android);
+
+        Assert.assertTrue(index.getCandidates(request(BrowserType.CHROME, Platform.LINUX)).isEmpty());
+        Assert.assertEquals(1, index.getCandidates(request(BrowserType.CHROME, Platform.ANY)).size());
+    }
+
+    @Test
+    public void proxiesWithCustomResolutionAreOnlyUsedWhenRequested() {
+        ProxyCapabilityIndex index = new ProxyCapabilityIndex();
+        RemoteProxy custom = proxy(BrowserType.CHROME, Platform.LINUX, "1280x760", 0);
+        index.add(custom);
+
+        Assert.assertTrue(index.getCandidates(request(BrowserType.CHROME, Platform.LINUX)).isEmpty());
+
+        // Requests are normalized once, so the requested resolution is set before the first lookup
+        Map<String, Object> requested = request(BrowserType.CHROME, Platform.LINUX);
+        requested.put("screenResolution", "1280x760");
+        Assert.assertEquals(Collections.singletonList(custom), index.getCandidates(requested));
+    }
+
+    @Test
+    public void resolutionIsReadLikeTheMatcherDoes() {
+        ProxyCapabilityIndex index = new ProxyCapabilityIndex();
+        RemoteProxy custom = proxy(BrowserType.CHROME, Platform.LINUX, "1280x760", 0);
+        index.add(custom);
+
+        // The non prefixed name wins, as in CanonicalCapabilities
+        Map<String, Object> requested = request(BrowserType.CHROME, Platform.LINUX);
+        requested.put(ZaleniumCapabilityType.SCREEN_RESOLUTION, defaultResolution());
+        requested.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, "1280x760");
+
+        Assert.assertEquals(Collections.singletonList(custom), index.getCandidates(requested));
+    }
+
+    @Test
+    public void candidatesAreSortedByResourceUsage() {
+        ProxyCapabilityIndex index = new ProxyCapabilityIndex();
+        RemoteProxy busy = proxy(BrowserType.CHROME, Platform.LINUX, defaultResolution(), 100);
+        RemoteProxy free = proxy(BrowserType.CHROME, Platform.LINUX, defaultResolution(), 0);
+        index.add(busy);
+        index.add(free);
+
+        List<RemoteProxy> candidates = index.getCandidates(request(BrowserType.CHROME, Platform.LINUX));
+
+        Assert.assertEquals(free, candidates.get(0));
+        Assert.assertEquals(busy, candidates.get(1));
+    }
+
+    @Test
+    public void removedProxiesAreNotCandidates() {
+        ProxyCapabilityIndex index = new ProxyCapabilityIndex();
+        RemoteProxy chrome = proxy(BrowserType.CHROME, Platform.LINUX, defaultResolution(), 0);
+        index.add(chrome);
+        index.remove(chrome);
+
+        Assert.assertTrue(index.getCandidates(request(BrowserType.CHROME, Platform.LINUX)).isEmpty());
+        Assert.assertTrue(index.getShapes().isEmpty());
+    }
+
+    @Test
+    public void proxiesWithoutSlotsAreAlwaysCandidates() {
+        ProxyCapabilityIndex index = new ProxyCapabilityIndex();
+        RemoteProxy cloudProxy = Mockito.mock(RemoteProxy.class);
+        index.add(cloudProxy);
+
+        Assert.assertEquals(Collections.singletonList(cloudProxy),
+                index.getCandidates(request(BrowserType.SAFARI, Platform.MAC)));
+    }
+
+    private static String defaultResolution() {
+        return String.format("%sx%s", DockeredSeleniumStarter.getConfiguredScreenSize().getWidth(),
+                DockeredSeleniumStarter.getConfiguredScreenSize().getHeight());
+    }
+
+    private static Map<String, Object> request(String browser, Platform platform) {
+        Map<String, Object> requested = new HashMap<>();
+        requested.put(CapabilityType.BROWSER_NAME, browser);
+        requested.put(CapabilityType.PLATFORM_NAME, platform);
+        return requested;
+    }
+
+    private static RemoteProxy proxy(String browser, Platform platform, String screenResolution, float usage) {
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put(CapabilityType.BROWSER_NAME, browser);
+        capabilities.put(CapabilityType.PLATFORM_NAME, platform);
+        capabilities.put("screenResolution", screenResolution);
+        capabilities.put("tz", DockeredSeleniumStarter.getConfiguredTimeZone().getID());
+        TestSlot testSlot = Mockito.mock(TestSlot.class);
+        Mockito.when(testSlot.getCapabilities()).thenReturn(capabilities);
+        DockerSeleniumRemoteProxy proxy = Mockito.mock(DockerSeleniumRemoteProxy.class);
+        Mockito.when(proxy.getTestSlots()).thenReturn(Collections.singletonList(testSlot));
+        Mockito.when(proxy.getResourceUsageInPercent()).thenReturn(usage);
+        return proxy;
+    }
+}
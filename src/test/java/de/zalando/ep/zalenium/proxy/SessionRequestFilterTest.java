@@ -0,0 +1,84 @@
+package de.zalando.ep.zalenium.proxy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import de.zalando.ep.zalenium.simulation.SimulatedClock;
+
+public class SessionRequestFilterTest {
+
+    @Test
+    public void requestsAreToldApartByTheirId() {
+        SessionRequestFilter filter = new SessionRequestFilter(new SimulatedClock(0));
+        Map<String, Object> request = chrome();
+        Map<String, Object> sameCapabilities = chrome();
+
+        filter.requestHasBeenProcessed(request);
+        filter.testSessionHasStarted(sameCapabilities);
+
+        Assert.assertEquals(1, filter.getTrackedRequests());
+        filter.testSessionHasStarted(request);
+        Assert.assertEquals(0, filter.getTrackedRequests());
+    }
+
+    @Test
+    public void onlyRequestsNotProcessedLatelyAreCleaned() {
+        SimulatedClock clock = new SimulatedClock(0);
+        SessionRequestFilter filter = new SessionRequestFilter(clock);
+        Map<String, Object> oldRequest = chrome();
+        Map<String, Object> retriedRequest = chrome();
+        Map<String, Object> newRequest = chrome();
+
+        filter.requestHasBeenProcessed(oldRequest);
+        filter.requestHasBeenProcessed(retriedRequest);
+        clock.advanceTo(30000);
+        filter.requestHasBeenProcessed(retriedRequest);
+        filter.requestHasBeenProcessed(newRequest);
+        clock.advanceTo(60000);
+        filter.cleanProcessedCapabilities();
+
+        Assert.assertEquals(2, filter.getTrackedRequests());
+        filter.testSessionHasStarted(retriedRequest);
+        filter.testSessionHasStarted(newRequest);
+        Assert.assertEquals(0, filter.getTrackedRequests());
+    }
+
+    @Test
+    public void startedSessionsAreForgotten() {
+        SessionRequestFilter filter = new SessionRequestFilter(new SimulatedClock(0));
+        Map<String, Object> request = chrome();
+
+        filter.requestHasBeenProcessed(request);
+        filter.requestHasBeenProcessed(request);
+        filter.testSessionHasStarted(request);
+
+        Assert.assertEquals(0, filter.getTrackedRequests());
+    }
+
+    @Test
+    public void trackedRequestsAreBounded() {
+        SessionRequestFilter filter = new SessionRequestFilter(new SimulatedClock(0));
+        Map<String, Object> firstRequest = chrome();
+        filter.requestHasBeenProcessed(firstRequest);
+
+        for (int i = 0; i < SessionRequestFilter.MAX_TRACKED_REQUESTS; i++) {
+            filter.requestHasBeenProcessed(chrome());
+        }
+
+        Assert.assertEquals(SessionRequestFilter.MAX_TRACKED_REQUESTS, filter.getTrackedRequests());
+        // The first request was already forgotten
+        filter.testSessionHasStarted(firstRequest);
+        Assert.assertEquals(SessionRequestFilter.MAX_TRACKED_REQUESTS, filter.getTrackedRequests());
+    }
+
+    private static Map<String, Object> chrome() {
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        return capabilities;
+    }
+}
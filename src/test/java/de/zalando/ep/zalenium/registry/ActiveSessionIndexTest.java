@@ -0,0 +1,92 @@
+package de.zalando.ep.zalenium.registry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openqa.grid.internal.ExternalSessionKey;
+import org.openqa.grid.internal.TestSession;
+
+public class ActiveSessionIndexTest {
+
+    @Test
+    public void sessionsAreFoundByInternalAndExternalKey() {
+        ActiveSessionIndex index = new ActiveSessionIndex();
+        TestSession session = session("internal", null);
+        index.add(session);
+        Assert.assertEquals(session, index.findByInternalKey("internal"));
+        Assert.assertNull(index.findByExternalKey(new ExternalSessionKey("external")));
+
+        // The node assigns the external key after the session was added
+        Mockito.when(session.getExternalKey()).thenReturn(new ExternalSessionKey("external"));
+
+        Assert.assertEquals(session, index.findByExternalKey(new ExternalSessionKey("external")));
+        Assert.assertEquals(session, index.findByExternalKey(new ExternalSessionKey("external")));
+    }
+
+    @Test
+    public void reportedExternalKeysAreIndexed() {
+        ActiveSessionIndex index = new ActiveSessionIndex();
+        TestSession session = session("internal", null);
+        index.add(session);
+        Mockito.when(session.getExternalKey()).thenReturn(new ExternalSessionKey("external"));
+
+        index.externalKeyAssigned(session);
+
+        Assert.assertEquals(session, index.findByExternalKey(new ExternalSessionKey("external")));
+    }
+
+    @Test
+    public void unknownExternalKeysDoNotScanTheIndexedSessions() {
+        ActiveSessionIndex index = new ActiveSessionIndex();
+        TestSession session = session("internal", null);
+        index.add(session);
+        Mockito.when(session.getExternalKey()).thenReturn(new ExternalSessionKey("external"));
+        index.externalKeyAssigned(session);
+        Mockito.clearInvocations(session);
+
+        Assert.assertNull(index.findByExternalKey(new ExternalSessionKey("expired")));
+        Mockito.verify(session, Mockito.never()).getExternalKey();
+    }
+
+    @Test
+    public void reportingTheKeyOfARemovedSessionDoesNotIndexIt() {
+        ActiveSessionIndex index = new ActiveSessionIndex();
+        TestSession session = session("internal", null);
+        index.add(session);
+        index.remove(session);
+        Mockito.when(session.getExternalKey()).thenReturn(new ExternalSessionKey("external"));
+
+        index.externalKeyAssigned(session);
+
+        Assert.assertNull(index.findByExternalKey(new ExternalSessionKey("external")));
+    }
+
+    @Test
+    public void removedSessionsAreNotFound() {
+        ActiveSessionIndex index = new ActiveSessionIndex();
+        TestSession session = session("internal", new ExternalSessionKey("external"));
+        index.add(session);
+
+        index.remove(session);
+
+        Assert.assertNull(index.findByInternalKey("internal"));
+        Assert.assertNull(index.findByExternalKey(new ExternalSessionKey("external")));
+        Assert.assertEquals(0, index.size());
+    }
+
+    @Test
+    public void nullKeysAreNotFound() {
+        ActiveSessionIndex index = new ActiveSessionIndex();
+        index.add(session("internal", null));
+
+        Assert.assertNull(index.findByInternalKey(null));
+        Assert.assertNull(index.findByExternalKey(null));
+    }
+
+    private static TestSession session(String internalKey, ExternalSessionKey externalKey) {
+        TestSession session = Mockito.mock(TestSession.class);
+        Mockito.when(session.getInternalKey()).thenReturn(internalKey);
+        Mockito.when(session.getExternalKey()).thenReturn(externalKey);
+        return session;
+    }
+}
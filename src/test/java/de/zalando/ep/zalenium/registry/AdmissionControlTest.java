@@ -0,0 +1,94 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+
+public class AdmissionControlTest {
+
+    private final Clock clock = Clock.fixed(Instant.parse("2019-01-01T10:00:00Z"), ZoneId.of("UTC"));
+
+    @Test
+    public void requestsAreAdmittedWhenLimitsAreDisabled() {
+        AdmissionControl admissionControl = new AdmissionControl(0, 0, 0, clock);
+
+        admissionControl.admit(handler("build"), 1000);
+    }
+
+    @Test
+    public void requestsAreRejectedWhenTheQueueIsFull() {
+        AdmissionControl admissionControl = new AdmissionControl(10, 0, 0, clock);
+        RequestHandler handler = handler("build");
+
+        admissionControl.admit(handler("build"), 9);
+        try {
+            admissionControl.admit(handler, 10);
+            Assert.fail("The request should have been rejected");
+        } catch (SessionRequestRejectedException e) {
+            Assert.assertTrue(e.getRetryAfterSeconds() > 0);
+            Mockito.verify(handler.getRequest()).setAttribute(SessionRequestRejectedException.RETRY_AFTER_ATTRIBUTE,
+                    e.getRetryAfterSeconds());
+        }
+    }
+
+    @Test
+    public void requestsAreRejectedWhenTheEstimatedWaitIsTooLong() {
+        AdmissionControl admissionControl = new AdmissionControl(0, 30, 0, clock);
+        // Nothing to base an estimation on yet
+        admissionControl.admit(handler("build"), 100);
+
+        // Two sessions per minute, 30 seconds per request
+        admissionControl.requestAssigned(handler("build"));
+        admissionControl.requestAssigned(handler("build"));
+        Assert.assertEquals(30, admissionControl.getEstimatedWaitSeconds(1));
+
+        admissionControl.admit(handler("build"), 0);
+        try {
+            admissionControl.admit(handler("build"), 1);
+            Assert.fail("The request should have been rejected");
+        } catch (SessionRequestRejectedException e) {
+            Assert.assertEquals(30, e.getRetryAfterSeconds());
+        }
+    }
+
+    @Test
+    public void requestsAreRejectedWhenTheirBuildHasTooManyRequestsWaiting() {
+        AdmissionControl admissionControl = new AdmissionControl(0, 0, 2, clock);
+        RequestHandler first = handler("build one");
+        admissionControl.admit(first, 0);
+        admissionControl.admit(handler("build one"), 1);
+        admissionControl.admit(handler("build two"), 2);
+        try {
+            admissionControl.admit(handler("build one"), 3);
+            Assert.fail("The request should have been rejected");
+        } catch (SessionRequestRejectedException e) {
+            Assert.assertTrue(e.getMessage().contains("build one"));
+        }
+
+        admissionControl.requestLeft(first);
+        admissionControl.admit(handler("build one"), 2);
+    }
+
+    private static RequestHandler handler(String build) {
+        Map<String, Object> desiredCapabilities = new HashMap<>();
+        desiredCapabilities.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        desiredCapabilities.put(ZaleniumCapabilityType.BUILD_NAME, build);
+        SeleniumBasedRequest request = Mockito.mock(SeleniumBasedRequest.class);
+        Mockito.when(request.getDesiredCapabilities()).thenReturn(desiredCapabilities);
+        RequestHandler handler = Mockito.mock(RequestHandler.class);
+        Mockito.when(handler.getRequest()).thenReturn(request);
+        return handler;
+    }
+}
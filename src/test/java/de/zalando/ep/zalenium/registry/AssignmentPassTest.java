@@ -0,0 +1,140 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
+import de.zalando.ep.zalenium.matcher.CapabilityFingerprint;
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+
+public class AssignmentPassTest {
+
+    @Test
+    public void exhaustedCapabilitiesAreNotMatchedAgainInTheSamePass() {
+        AtomicInteger attempts = new AtomicInteger();
+        AssignmentPass pass = new AssignmentPass(capabilities -> {
+            attempts.incrementAndGet();
+            return null;
+        }, (handler, session) -> Assert.fail("No session should be bound"));
+
+        Map<String, Object> first = request(BrowserType.CHROME, "test one");
+        Map<String, Object> second = request(BrowserType.CHROME, "test two");
+        Assert.assertFalse(pass.assign(handler(first)));
+        Assert.assertFalse(pass.assign(handler(second)));
+
+        Assert.assertEquals(1, attempts.get());
+        Assert.assertEquals(Arrays.asList(first, second), pass.getUnmatchedCapabilities());
+    }
+
+    @Test
+    public void requestsWithSessionsAreBound() {
+        TestSession session = Mockito.mock(TestSession.class);
+        List<RequestHandler> bound = new ArrayList<>();
+        AssignmentPass pass = new AssignmentPass(capabilities ->
+                BrowserType.FIREFOX.equals(capabilities.get(CapabilityType.BROWSER_NAME)) ? session : null,
+                (handler, testSession) -> bound.add(handler));
+
+        RequestHandler chrome = handler(request(BrowserType.CHROME, "chrome test"));
+        RequestHandler firefox = handler(request(BrowserType.FIREFOX, "firefox test"));
+        Assert.assertFalse(pass.assign(chrome));
+        Assert.assertTrue(pass.assign(firefox));
+
+        Assert.assertEquals(1, bound.size());
+        Assert.assertEquals(firefox, bound.get(0));
+        Assert.assertEquals(1, pass.getUnmatchedCapabilities().size());
+    }
+
+    @Test
+    public void requestsOutsideTheScopeAreNotMatched() {
+        AtomicInteger attempts = new AtomicInteger();
+        RequestHandler queued = handler(request(BrowserType.CHROME, "queued test"));
+        RequestHandler added = handler(request(BrowserType.FIREFOX, "added test"));
+        Set<RequestHandler> scope = Collections.newSetFromMap(new IdentityHashMap<>());
+        scope.add(added);
+        AssignmentPass pass = new AssignmentPass(capabilities -> {
+            attempts.incrementAndGet();
+            return null;
+        }, (handler, session) -> Assert.fail("No session should be bound"), scope);
+
+        Assert.assertFalse(pass.assign(queued));
+        Assert.assertFalse(pass.assign(added));
+
+        Assert.assertEquals(1, attempts.get());
+        Assert.assertEquals(1, pass.getUnmatchedCapabilities().size());
+    }
+
+    @Test
+    public void deferredRequestsOnlyGetTheSlotsLeftAtTheEndOfThePass() {
+        AtomicInteger freeSlots = new AtomicInteger(2);
+        List<RequestHandler> bound = new ArrayList<>();
+        AssignmentPass pass = new AssignmentPass(capabilities ->
+                freeSlots.getAndDecrement() > 0 ? Mockito.mock(TestSession.class) : null,
+                (handler, session) -> bound.add(handler));
+
+        RequestHandler firstCapped = handler(request(BrowserType.CHROME, "capped test one"));
+        RequestHandler secondCapped = handler(request(BrowserType.CHROME, "capped test two"));
+        RequestHandler other = handler(request(BrowserType.CHROME, "other test"));
+        Assert.assertFalse(pass.defer(firstCapped));
+        Assert.assertFalse(pass.defer(secondCapped));
+        Assert.assertTrue(pass.assign(other));
+
+        Assert.assertTrue(pass.hasDeferred());
+        Assert.assertFalse(pass.assignDeferred(other));
+        Assert.assertTrue(pass.assignDeferred(firstCapped));
+        Assert.assertFalse(pass.assignDeferred(secondCapped));
+
+        Assert.assertEquals(Arrays.asList(other, firstCapped), bound);
+        // Deferred requests are not provisioned
+        Assert.assertTrue(pass.getUnmatchedCapabilities().isEmpty());
+    }
+
+    @Test
+    public void matchingKeyIgnoresTestMetadataAndPrefixes() {
+        Map<String, Object> prefixed = request(BrowserType.CHROME, "test one");
+        prefixed.put(ZaleniumCapabilityType.SCREEN_RESOLUTION, "1280x760");
+        Map<String, Object> unprefixed = request(BrowserType.CHROME, "test two");
+        unprefixed.put(ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX, "build 42");
+        unprefixed.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, "1280x760");
+
+        Map<String, Object> otherResolution = request(BrowserType.CHROME, "test three");
+        otherResolution.put(ZaleniumCapabilityType.SCREEN_RESOLUTION_NO_PREFIX, "1920x1080");
+
+        Assert.assertEquals(fingerprint(prefixed), fingerprint(unprefixed));
+        Assert.assertNotEquals(fingerprint(prefixed), fingerprint(otherResolution));
+    }
+
+    private static CapabilityFingerprint fingerprint(Map<String, Object> capabilities) {
+        return CanonicalCapabilities.of(capabilities).getFingerprint();
+    }
+
+    private static Map<String, Object> request(String browser, String testName) {
+        Map<String, Object> requested = new HashMap<>();
+        requested.put(CapabilityType.BROWSER_NAME, browser);
+        requested.put(ZaleniumCapabilityType.TEST_NAME, testName);
+        return requested;
+    }
+
+    private static RequestHandler handler(Map<String, Object> desiredCapabilities) {
+        SeleniumBasedRequest request = Mockito.mock(SeleniumBasedRequest.class);
+        Mockito.when(request.getDesiredCapabilities()).thenReturn(desiredCapabilities);
+        RequestHandler handler = Mockito.mock(RequestHandler.class);
+        Mockito.when(handler.getRequest()).thenReturn(request);
+        return handler;
+    }
+}
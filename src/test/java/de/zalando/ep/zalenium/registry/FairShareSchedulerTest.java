@@ -0,0 +1,113 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.listeners.Prioritizer;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+
+public class FairShareSchedulerTest {
+
+    @Test
+    public void smallBuildsGoBeforeBuildsFloodingTheQueue() {
+        FairShareScheduler scheduler = new FairShareScheduler(true, Collections.emptyMap(), 0);
+        List<RequestHandler> queue = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            queue.add(handler("large"));
+        }
+        RequestHandler small = handler("small");
+        queue.add(small);
+        queue.forEach(scheduler::requestQueued);
+
+        List<RequestHandler> ordered = sort(queue, scheduler.withFairShare(null));
+
+        Assert.assertTrue(ordered.indexOf(small) <= 1);
+    }
+
+    @Test
+    public void runningSessionsAndWeightsAreConsidered() {
+        FairShareScheduler scheduler = new FairShareScheduler(true, Collections.singletonMap("heavy", 3), 0);
+        RequestHandler running = handler("light");
+        scheduler.requestQueued(running);
+        scheduler.sessionStarted(running, Mockito.mock(TestSession.class));
+        List<RequestHandler> queue = Arrays.asList(handler("light"), handler("heavy"), handler("heavy"),
+                handler("heavy"), handler("heavy"));
+        queue.forEach(scheduler::requestQueued);
+
+        List<String> builds = sort(queue, scheduler.withFairShare(null)).stream()
+                .map(handler -> handler.getRequest().getDesiredCapabilities()
+                        .get(ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX).toString())
+                .collect(Collectors.toList());
+
+        // light: 2 sessions / 1, heavy: 1/3, 2/3, 3/3, 4/3
+        Assert.assertEquals(Arrays.asList("heavy", "heavy", "heavy", "heavy", "light"), builds);
+    }
+
+    @Test
+    public void buildsOverTheirCapWaitWhileOthersAreQueued() {
+        FairShareScheduler scheduler = new FairShareScheduler(true, Collections.emptyMap(), 1);
+        RequestHandler first = handler("large");
+        scheduler.requestQueued(first);
+        TestSession session = Mockito.mock(TestSession.class);
+        scheduler.sessionStarted(first, session);
+        RequestHandler second = handler("large");
+        scheduler.requestQueued(second);
+
+        // No other build is waiting, the free slot can be borrowed
+        Assert.assertTrue(scheduler.mayStartSession(second));
+
+        RequestHandler other = handler("small");
+        scheduler.requestQueued(other);
+        Assert.assertFalse(scheduler.mayStartSession(second));
+        Assert.assertTrue(scheduler.mayStartSession(other));
+
+        scheduler.sessionEnded(session);
+        Assert.assertEquals(0, scheduler.getRunningSessions("large"));
+        Assert.assertTrue(scheduler.mayStartSession(second));
+    }
+
+    @Test
+    public void queueOrderIsKeptWhenDisabled() {
+        FairShareScheduler scheduler = new FairShareScheduler(false, Collections.emptyMap(), 1);
+        Prioritizer hubPrioritizer = (a, b) -> 0;
+        RequestHandler first = handler("large");
+        scheduler.requestQueued(first);
+        scheduler.sessionStarted(first, Mockito.mock(TestSession.class));
+        scheduler.requestQueued(handler("small"));
+
+        Assert.assertSame(hubPrioritizer, scheduler.withFairShare(hubPrioritizer));
+        Assert.assertTrue(scheduler.mayStartSession(handler("large")));
+    }
+
+    private static List<RequestHandler> sort(List<RequestHandler> queue, Prioritizer prioritizer) {
+        return queue.stream()
+                .sorted((a, b) -> prioritizer.compareTo(a.getRequest().getDesiredCapabilities(),
+                        b.getRequest().getDesiredCapabilities()))
+                .collect(Collectors.toList());
+    }
+
+    private static RequestHandler handler(String build) {
+        Map<String, Object> desiredCapabilities = new HashMap<>();
+        desiredCapabilities.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        desiredCapabilities.put(ZaleniumCapabilityType.BUILD_NAME_NO_PREFIX, build);
+        SeleniumBasedRequest request = Mockito.mock(SeleniumBasedRequest.class);
+        Mockito.when(request.getDesiredCapabilities()).thenReturn(desiredCapabilities);
+        RequestHandler handler = Mockito.mock(RequestHandler.class);
+        Mockito.when(handler.getRequest()).thenReturn(request);
+        return handler;
+    }
+}
@@ -0,0 +1,68 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HashedTimingWheelTest {
+
+    @Test
+    public void timeoutsExpireAtTheirDeadline() {
+        List<String> expired = new ArrayList<>();
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8, 0, expired::add);
+        wheel.schedule("first", 250);
+        wheel.schedule("second", 500);
+
+        wheel.advance(200);
+        Assert.assertTrue(expired.isEmpty());
+
+        wheel.advance(300);
+        Assert.assertEquals(Collections.singletonList("first"), expired);
+
+        wheel.advance(500);
+        Assert.assertEquals(Arrays.asList("first", "second"), expired);
+    }
+
+    @Test
+    public void timeoutsLongerThanOneTurnWaitForTheirTurn() {
+        List<String> expired = new ArrayList<>();
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8, 0, expired::add);
+        // Same bucket as tick 2, but two turns later
+        wheel.schedule("later", 1800);
+
+        wheel.advance(1000);
+        Assert.assertTrue(expired.isEmpty());
+
+        wheel.advance(1800);
+        Assert.assertEquals(Collections.singletonList("later"), expired);
+    }
+
+    @Test
+    public void cancelledTimeoutsDoNotExpire() {
+        List<String> expired = new ArrayList<>();
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8, 0, expired::add);
+        HashedTimingWheel.Timeout<String> timeout = wheel.schedule("cancelled", 300);
+
+        Assert.assertTrue(wheel.cancel(timeout));
+        wheel.advance(1000);
+
+        Assert.assertTrue(expired.isEmpty());
+        Assert.assertFalse(wheel.cancel(timeout));
+    }
+
+    @Test
+    public void timeoutsAreExpiredAfterLongPauses() {
+        List<String> expired = new ArrayList<>();
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8, 0, expired::add);
+        wheel.schedule("first", 300);
+        wheel.schedule("second", 1500);
+
+        wheel.advance(10000);
+
+        Assert.assertEquals(2, expired.size());
+    }
+}
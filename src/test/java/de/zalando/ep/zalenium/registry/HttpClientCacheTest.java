@@ -0,0 +1,92 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.io.Closeable;
+import java.net.URL;
+import java.time.Duration;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.openqa.selenium.remote.http.HttpClient;
+
+public class HttpClientCacheTest {
+
+    private final HttpClient.Factory factory = Mockito.mock(HttpClient.Factory.class);
+    private final HttpClient.Builder builder = Mockito.mock(HttpClient.Builder.class);
+
+    public HttpClientCacheTest() {
+        Mockito.when(factory.builder()).thenReturn(builder);
+        Mockito.when(builder.connectionTimeout(ArgumentMatchers.any(Duration.class))).thenReturn(builder);
+        Mockito.when(builder.readTimeout(ArgumentMatchers.any(Duration.class))).thenReturn(builder);
+    }
+
+    @Test
+    public void clientsAreReusedForTheSameNode() throws Exception {
+        Mockito.when(builder.createClient(ArgumentMatchers.any(URL.class)))
+                .thenAnswer(invocation -> Mockito.mock(HttpClient.class));
+        HttpClientCache cache = new HttpClientCache(factory);
+        URL node = new URL("http://10.0.0.1:40000");
+
+        HttpClient client = cache.getHttpClient(node, 10, 60);
+
+        Assert.assertSame(client, cache.getHttpClient(new URL("http://10.0.0.1:40000"), 10, 60));
+        Assert.assertNotSame(client, cache.getHttpClient(node, 10, 120));
+        Assert.assertNotSame(client, cache.getHttpClient(new URL("http://10.0.0.2:40000"), 10, 60));
+        Mockito.verify(builder, Mockito.times(3)).createClient(ArgumentMatchers.any(URL.class));
+    }
+
+    @Test
+    public void clientsAreEvictedWhenTheNodeIsGone() throws Exception {
+        Mockito.when(builder.createClient(ArgumentMatchers.any(URL.class)))
+                .thenAnswer(invocation -> Mockito.mock(HttpClient.class));
+        HttpClientCache cache = new HttpClientCache(factory);
+        cache.getHttpClient(new URL("http://10.0.0.1:40000/wd/hub"), 10, 60);
+        cache.getHttpClient(new URL("http://10.0.0.1:40000/wd/hub/session/4f2a/url"), 10, 120);
+        cache.getHttpClient(new URL("http://10.0.0.1:40001/wd/hub"), 10, 60);
+        cache.getHttpClient(new URL("http://10.0.0.2:40000/wd/hub"), 10, 60);
+
+        // Proxies are known by their remote host, without the path of the hub
+        cache.evict(new URL("http://10.0.0.1:40000"));
+
+        Assert.assertEquals(2, cache.size());
+        Mockito.verify(factory).cleanupIdleClients();
+    }
+
+    @Test
+    public void evictedClientsAreClosed() throws Exception {
+        HttpClient client = Mockito.mock(HttpClient.class, Mockito.withSettings().extraInterfaces(Closeable.class));
+        Mockito.when(builder.createClient(ArgumentMatchers.any(URL.class))).thenReturn(client);
+        HttpClientCache cache = new HttpClientCache(factory);
+        cache.getHttpClient(new URL("http://10.0.0.1:40000/wd/hub/session/4f2a/url"), 10, 60);
+
+        cache.evict(new URL("http://10.0.0.1:40000"));
+
+        ((Closeable) Mockito.verify(client)).close();
+    }
+
+    @Test
+    public void creationIsRetriedWithoutCachingFailures() throws Exception {
+        HttpClient client = Mockito.mock(HttpClient.class);
+        Mockito.when(builder.createClient(ArgumentMatchers.any(URL.class)))
+                .thenThrow(new AssertionError("Flaky"))
+                .thenReturn(client);
+        HttpClientCache cache = new HttpClientCache(factory);
+
+        Assert.assertSame(client, cache.getHttpClient(new URL("http://10.0.0.1:40000"), 10, 60));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void creationGivesUpAfterAFewAttempts() throws Exception {
+        Mockito.when(builder.createClient(ArgumentMatchers.any(URL.class)))
+                .thenThrow(new IllegalStateException("Broken"));
+        HttpClientCache cache = new HttpClientCache(factory);
+
+        try {
+            cache.getHttpClient(new URL("http://10.0.0.1:40000"), 10, 60);
+        } finally {
+            Assert.assertEquals(0, cache.size());
+            Mockito.verify(builder, Mockito.times(3)).createClient(ArgumentMatchers.any(URL.class));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package de.zalando.ep.zalenium.registry;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.openqa.grid.internal.GridRegistry;
+import org.openqa.grid.internal.SessionTerminationReason;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+
+public class ParkedNewSessionRequestTest {
+
+    private final SeleniumBasedRequest request = Mockito.mock(SeleniumBasedRequest.class);
+    private final GridRegistry registry = Mockito.mock(GridRegistry.class);
+    private final AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+
+    @Test
+    public void requestIsResumedOnceWhenTheSessionIsBound() {
+        ParkedNewSessionRequest parkedRequest = new ParkedNewSessionRequest(request,
+                Mockito.mock(HttpServletResponse.class), registry, asyncContext);
+        TestSession session = Mockito.mock(TestSession.class);
+
+        parkedRequest.bindSession(session);
+        parkedRequest.stop();
+
+        Assert.assertEquals(session, parkedRequest.getSession());
+        Mockito.verify(request).setAttribute(ArgumentMatchers.anyString(), ArgumentMatchers.eq(session));
+        Mockito.verify(asyncContext, Mockito.times(1)).dispatch();
+    }
+
+    @Test
+    public void timedOutRequestsAreRemovedAndResumed() {
+        ParkedNewSessionRequest parkedRequest = new ParkedNewSessionRequest(request,
+                Mockito.mock(HttpServletResponse.class), registry, asyncContext);
+        Mockito.when(registry.removeNewSessionRequest(parkedRequest)).thenReturn(true);
+
+        parkedRequest.onTimeout(null);
+
+        Mockito.verify(registry).removeNewSessionRequest(parkedRequest);
+        Mockito.verify(asyncContext, Mockito.times(1)).dispatch();
+    }
+
+    @Test
+    public void timedOutRequestsBeingBoundAreResumedByTheBinding() {
+        ParkedNewSessionRequest parkedRequest = new ParkedNewSessionRequest(request,
+                Mockito.mock(HttpServletResponse.class), registry, asyncContext, 5000);
+        TestSession session = Mockito.mock(TestSession.class);
+        // The matcher took the request out of the queue and binds it while the timeout is handled.
+        Mockito.when(registry.removeNewSessionRequest(parkedRequest)).thenAnswer(invocation -> {
+            new Thread(() -> parkedRequest.bindSession(session)).start();
+            return false;
+        });
+
+        parkedRequest.onTimeout(null);
+
+        Assert.assertEquals(session, parkedRequest.getSession());
+        Mockito.verify(asyncContext, Mockito.times(1)).dispatch();
+        Mockito.verify(registry, Mockito.never()).terminate(session, SessionTerminationReason.CLIENT_GONE);
+    }
+
+    @Test
+    public void sessionsBoundAfterTheTimeoutAreTerminated() {
+        ParkedNewSessionRequest parkedRequest = new ParkedNewSessionRequest(request,
+                Mockito.mock(HttpServletResponse.class), registry, asyncContext, 10);
+        TestSession session = Mockito.mock(TestSession.class);
+        Mockito.when(registry.removeNewSessionRequest(parkedRequest)).thenReturn(false);
+
+        parkedRequest.onTimeout(null);
+        parkedRequest.bindSession(session);
+
+        Mockito.verify(asyncContext, Mockito.times(1)).dispatch();
+        Mockito.verify(registry).terminate(session, SessionTerminationReason.CLIENT_GONE);
+    }
+}
@@ -0,0 +1,70 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SessionReleaseExecutorTest {
+
+    @Test
+    public void releasesAreExecutedWithTheGivenThreadName() throws InterruptedException {
+        SessionReleaseExecutor executor = new SessionReleaseExecutor(1, 1);
+        CountDownLatch released = new CountDownLatch(1);
+        String[] threadName = new String[1];
+        try {
+            executor.execute("Terminate Test Session test", () -> {
+                threadName[0] = Thread.currentThread().getName();
+                released.countDown();
+            });
+            Assert.assertTrue(released.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals("Terminate Test Session test", threadName[0]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void releasesAreNotRejectedWhenTheQueueIsFull() throws InterruptedException {
+        SessionReleaseExecutor executor = new SessionReleaseExecutor(1, 1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch overflowed = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(2);
+        Thread[] overflowThread = new Thread[1];
+        try {
+            // Occupies the only thread, the second release fills the queue and the third one overflows.
+            executor.execute("blocking release", () -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                released.countDown();
+            });
+            executor.execute("queued release", released::countDown);
+            Assert.assertTrue(executor.execute("overflowing release", () -> {
+                overflowThread[0] = Thread.currentThread();
+                overflowed.countDown();
+            }));
+
+            // The caller does not wait for the overflowing release, and it does not run it either
+            Assert.assertTrue(overflowed.await(5, TimeUnit.SECONDS));
+            Assert.assertNotSame(Thread.currentThread(), overflowThread[0]);
+            blocker.countDown();
+            Assert.assertTrue(released.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void releasesAreRejectedOnceShutDown() {
+        SessionReleaseExecutor executor = new SessionReleaseExecutor(1, 1);
+        executor.shutdown();
+        boolean[] ran = new boolean[1];
+
+        Assert.assertFalse(executor.execute("late release", () -> ran[0] = true));
+        Assert.assertFalse(ran[0]);
+    }
+}
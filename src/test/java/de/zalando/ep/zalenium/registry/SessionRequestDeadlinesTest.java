@@ -0,0 +1,138 @@
+package de.zalando.ep.zalenium.registry;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openqa.grid.internal.listeners.Prioritizer;
+import org.openqa.grid.web.servlet.handler.RequestHandler;
+import org.openqa.grid.web.servlet.handler.SeleniumBasedRequest;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityType;
+
+public class SessionRequestDeadlinesTest {
+
+    private final Clock clock = Mockito.mock(Clock.class);
+
+    @Test
+    public void requestsAreExpiredAfterTheirDeadline() {
+        Mockito.when(clock.millis()).thenReturn(0L);
+        List<RequestHandler> removed = new ArrayList<>();
+        SessionRequestDeadlines deadlines = new SessionRequestDeadlines(0, clock, (request, end) -> {
+            end.accept(request);
+            return removed.add(request);
+        });
+        RequestHandler withDeadline = handler(30);
+        RequestHandler withoutDeadline = handler(null);
+        deadlines.requestQueued(withDeadline);
+        deadlines.requestQueued(withoutDeadline);
+
+        Mockito.when(clock.millis()).thenReturn(29000L);
+        deadlines.tick();
+        Assert.assertTrue(removed.isEmpty());
+
+        Mockito.when(clock.millis()).thenReturn(30000L);
+        deadlines.tick();
+        Assert.assertEquals(1, removed.size());
+        Assert.assertEquals(withDeadline, removed.get(0));
+        Mockito.verify(withDeadline).stop();
+        Mockito.verify(withoutDeadline, Mockito.never()).stop();
+    }
+
+    @Test
+    public void requestsThatLeftTheQueueAreNotExpired() {
+        Mockito.when(clock.millis()).thenReturn(0L);
+        List<RequestHandler> removed = new ArrayList<>();
+        SessionRequestDeadlines deadlines = new SessionRequestDeadlines(10, clock, (request, end) -> {
+            end.accept(request);
+            return removed.add(request);
+        });
+        RequestHandler handler = handler(null);
+        deadlines.requestQueued(handler);
+        deadlines.requestLeft(handler, SessionRequestDeadlines.ASSIGNED);
+
+        Mockito.when(clock.millis()).thenReturn(60000L);
+        deadlines.tick();
+
+        Assert.assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    public void requestsBoundWhileExpiringAreNotStopped() {
+        Mockito.when(clock.millis()).thenReturn(0L);
+        // The remover finds the request gone, it got a session under the lock of the queue.
+        SessionRequestDeadlines deadlines = new SessionRequestDeadlines(0, clock, (request, end) -> false);
+        RequestHandler handler = handler(30);
+        deadlines.requestQueued(handler);
+
+        Mockito.when(clock.millis()).thenReturn(30000L);
+        deadlines.tick();
+
+        Mockito.verify(handler, Mockito.never()).stop();
+    }
+
+    @Test
+    public void requestsCloserToTheirDeadlineGoFirst() {
+        Mockito.when(clock.millis()).thenReturn(0L);
+        SessionRequestDeadlines deadlines = new SessionRequestDeadlines(0, clock, (request, end) -> true);
+        RequestHandler relaxed = handler(300);
+        RequestHandler urgent = handler(30);
+        RequestHandler unbounded = handler(null);
+        deadlines.requestQueued(relaxed);
+        deadlines.requestQueued(urgent);
+        deadlines.requestQueued(unbounded);
+
+        Prioritizer prioritizer = deadlines.withDeadlines(null);
+        Map<String, Object> relaxedCapabilities = relaxed.getRequest().getDesiredCapabilities();
+        Map<String, Object> urgentCapabilities = urgent.getRequest().getDesiredCapabilities();
+        Map<String, Object> unboundedCapabilities = unbounded.getRequest().getDesiredCapabilities();
+
+        Assert.assertTrue(prioritizer.compareTo(urgentCapabilities, relaxedCapabilities) < 0);
+        Assert.assertTrue(prioritizer.compareTo(relaxedCapabilities, unboundedCapabilities) < 0);
+    }
+
+    @Test
+    public void timeoutsSentAsDoublesAreUsed() {
+        Mockito.when(clock.millis()).thenReturn(0L);
+        List<RequestHandler> removed = new ArrayList<>();
+        SessionRequestDeadlines deadlines = new SessionRequestDeadlines(0, clock, (request, end) -> removed.add(request));
+        RequestHandler handler = handler(120.0);
+        deadlines.requestQueued(handler);
+
+        Mockito.when(clock.millis()).thenReturn(120000L);
+        deadlines.tick();
+
+        Assert.assertEquals(1, removed.size());
+    }
+
+    @Test
+    public void hubPrioritizerIsUsedWhenThereAreNoDeadlines() {
+        SessionRequestDeadlines deadlines = new SessionRequestDeadlines(0, Clock.fixed(Instant.EPOCH,
+                ZoneId.of("UTC")), (request, end) -> true);
+        Prioritizer hubPrioritizer = (a, b) -> 0;
+
+        Assert.assertSame(hubPrioritizer, deadlines.withDeadlines(hubPrioritizer));
+    }
+
+    private static RequestHandler handler(Number newSessionWaitTimeout) {
+        Map<String, Object> desiredCapabilities = new HashMap<>();
+        desiredCapabilities.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        if (newSessionWaitTimeout != null) {
+            desiredCapabilities.put(ZaleniumCapabilityType.NEW_SESSION_WAIT_TIMEOUT_SECONDS_NO_PREFIX, newSessionWaitTimeout);
+        }
+        SeleniumBasedRequest request = Mockito.mock(SeleniumBasedRequest.class);
+        Mockito.when(request.getDesiredCapabilities()).thenReturn(desiredCapabilities);
+        RequestHandler handler = Mockito.mock(RequestHandler.class);
+        Mockito.when(handler.getRequest()).thenReturn(request);
+        return handler;
+    }
+}
@@ -4,6 +4,7 @@ import de.zalando.ep.zalenium.proxy.AutoStartProxySet;
 import de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy;
 import de.zalando.ep.zalenium.proxy.DockeredSeleniumStarter;
 import de.zalando.ep.zalenium.util.TestUtils;
+import de.zalando.ep.zalenium.util.ZaleniumConfiguration;
 import org.awaitility.Duration;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -14,6 +15,7 @@ import org.openqa.grid.internal.GridRegistry;
 import org.openqa.grid.internal.ProxySet;
 import org.openqa.grid.internal.SessionTerminationReason;
 import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.TestSlot;
 import org.openqa.grid.internal.utils.configuration.GridHubConfiguration;
 import org.openqa.grid.web.Hub;
 import org.openqa.grid.web.servlet.handler.RequestHandler;
@@ -28,9 +30,14 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.fail;
 
 @SuppressWarnings("Duplicates")
@@ -99,6 +106,34 @@ public class ZaleniumRegistryTest {
         }
     }
 
+    @Test
+    public void registryIsIdleOnceTheSessionIsReleased() {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        requestedCapability.put(CapabilityType.PLATFORM_NAME, Platform.LINUX);
+
+        ZaleniumRegistry registry = (ZaleniumRegistry) ZaleniumRegistry.newInstance(
+                new Hub(new GridHubConfiguration()), new ProxySet(false));
+        RegistrationRequest req = TestUtils.getRegistrationRequestForTesting(40000, DockerSeleniumRemoteProxy.class.getCanonicalName());
+        req.getConfiguration().capabilities.clear();
+        req.getConfiguration().capabilities.addAll(TestUtils.getDockerSeleniumCapabilitiesForTesting());
+        DockerSeleniumRemoteProxy p1 = new DockerSeleniumRemoteProxy(req, registry);
+
+        try {
+            registry.add(p1);
+            RequestHandler newSessionRequest = TestUtils.createNewSessionHandler(registry, requestedCapability);
+            newSessionRequest.process();
+            TestSession session = newSessionRequest.getSession();
+            session.setExternalKey(new ExternalSessionKey(UUID.randomUUID().toString()));
+
+            registry.terminate(session, SessionTerminationReason.CLIENT_STOPPED_SESSION);
+            await().pollInterval(Duration.ONE_HUNDRED_MILLISECONDS).atMost(Duration.TWO_SECONDS).until(registry::isIdle);
+            assertEquals(0, registry.getActiveSessions().size());
+        } finally {
+            registry.stop();
+        }
+    }
+
     @Test(expected = GridException.class)
     public void requestIsRejectedWhenCapabilitiesAreNotSupported() {
         Map<String, Object> requestedCapability = new HashMap<>();
@@ -109,7 +144,7 @@ public class ZaleniumRegistryTest {
 
         DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
 
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(true, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(true, 0, 5, 1000, false, starter, clock, 30000);
         GridRegistry registry = ZaleniumRegistry.newInstance(new Hub(new GridHubConfiguration()), autoStartProxySet);
 
         try {
@@ -129,7 +164,7 @@ public class ZaleniumRegistryTest {
 
         Clock clock = Clock.fixed(Instant.ofEpochMilli(10000), ZoneId.systemDefault());
         DockeredSeleniumStarter starter = Mockito.mock(DockeredSeleniumStarter.class);
-        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(true, 0, 5, 1000, false, starter, clock, 30, 30000);
+        AutoStartProxySet autoStartProxySet = new AutoStartProxySet(true, 0, 5, 1000, false, starter, clock, 30000);
         GridRegistry registry = ZaleniumRegistry.newInstance(new Hub(new GridHubConfiguration()), autoStartProxySet);
 
         try {
@@ -140,4 +175,71 @@ public class ZaleniumRegistryTest {
             registry.stop();
         }
     }
+
+    @Test
+    public void requestsForDifferentBrowsersAreMatchedByDifferentShards() throws Exception {
+        boolean shardedMatcher = ZaleniumConfiguration.isShardedMatcher();
+        ZaleniumConfiguration.setShardedMatcher(true);
+        Map<String, String> matcherThreads = new ConcurrentHashMap<>();
+        CountDownLatch firefoxMatched = new CountDownLatch(1);
+        // Chrome is only matched once Firefox got a session, which never happens when both share a matcher.
+        ProxySet proxySet = new ProxySet(false) {
+            @Override
+            public TestSession getNewSession(Map<String, Object> desiredCapabilities) {
+                String browserName = desiredCapabilities.get(CapabilityType.BROWSER_NAME).toString();
+                matcherThreads.put(browserName, Thread.currentThread().getName());
+                try {
+                    if (BrowserType.CHROME.equals(browserName) && !firefoxMatched.await(5, TimeUnit.SECONDS)) {
+                        return null;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                TestSession session = super.getNewSession(desiredCapabilities);
+                if (BrowserType.FIREFOX.equals(browserName) && session != null) {
+                    firefoxMatched.countDown();
+                }
+                return session;
+            }
+        };
+        GridRegistry registry = ZaleniumRegistry.newInstance(new Hub(new GridHubConfiguration()), proxySet);
+
+        try {
+            for (int port : new int[] {40000, 40001}) {
+                RegistrationRequest req = TestUtils.getRegistrationRequestForTesting(port,
+                        DockerSeleniumRemoteProxy.class.getCanonicalName());
+                req.getConfiguration().capabilities.clear();
+                req.getConfiguration().capabilities.addAll(TestUtils.getDockerSeleniumCapabilitiesForTesting());
+                registry.add(new DockerSeleniumRemoteProxy(req, registry));
+            }
+            await().pollInterval(Duration.FIVE_HUNDRED_MILLISECONDS).atMost(Duration.TWO_SECONDS).until(() -> registry.getAllProxies().size() == 2);
+
+            RequestHandler chromeRequest = TestUtils.createNewSessionHandler(registry, requested(BrowserType.CHROME));
+            RequestHandler firefoxRequest = TestUtils.createNewSessionHandler(registry, requested(BrowserType.FIREFOX));
+            CompletableFuture<Void> chrome = CompletableFuture.runAsync(chromeRequest::process);
+            CompletableFuture<Void> firefox = CompletableFuture.runAsync(firefoxRequest::process);
+            CompletableFuture.allOf(chrome, firefox).get(10, TimeUnit.SECONDS);
+
+            assertEquals(BrowserType.CHROME, browserOf(chromeRequest.getSession().getSlot()));
+            assertEquals(BrowserType.FIREFOX, browserOf(firefoxRequest.getSession().getSlot()));
+            assertEquals("Matcher thread [chrome]", matcherThreads.get(BrowserType.CHROME));
+            assertEquals("Matcher thread [firefox]", matcherThreads.get(BrowserType.FIREFOX));
+            assertNotEquals(matcherThreads.get(BrowserType.CHROME), matcherThreads.get(BrowserType.FIREFOX));
+        } finally {
+            registry.stop();
+            ZaleniumConfiguration.setShardedMatcher(shardedMatcher);
+        }
+    }
+
+    private static Map<String, Object> requested(String browserName) {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, browserName);
+        requestedCapability.put(CapabilityType.PLATFORM_NAME, Platform.LINUX);
+        return requestedCapability;
+    }
+
+    private static Object browserOf(TestSlot slot) {
+        return slot.getCapabilities().get(CapabilityType.BROWSER_NAME);
+    }
 }
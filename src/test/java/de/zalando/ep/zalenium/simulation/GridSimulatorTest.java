@@ -0,0 +1,98 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GridSimulatorTest {
+
+    @Test
+    public void requestsWaitForContainersToStart() {
+        SimulationConfig config = new SimulationConfig.SimulationConfigBuilder()
+                .withMinContainers(0)
+                .withMaxContainers(10)
+                .withCreateLatency(LatencyDistribution.fixed(1000))
+                .withStartLatency(LatencyDistribution.fixed(5000))
+                .build();
+
+        SimulationReport report = new GridSimulator(config).run(burst(10, 60000, 30000));
+
+        Assert.assertEquals(10, report.getSessionsStarted());
+        Assert.assertEquals(10, report.getSessionsCompleted());
+        Assert.assertEquals(6000, report.getQueueWaitPercentile(50));
+        Assert.assertEquals(10, report.getContainersStarted());
+        Assert.assertTrue(report.getContainerSeconds() >= 10 * 35);
+    }
+
+    @Test
+    public void warmContainersServeRequestsRightAway() {
+        SimulationConfig config = new SimulationConfig.SimulationConfigBuilder()
+                .withMinContainers(10)
+                .withMaxContainers(10)
+                .withStartLatency(LatencyDistribution.fixed(5000))
+                .build();
+
+        SimulationReport report = new GridSimulator(config).run(burst(10, 60000, 30000));
+
+        Assert.assertEquals(10, report.getSessionsCompleted());
+        Assert.assertEquals(0, report.getQueueWaitPercentile(100));
+    }
+
+    @Test
+    public void maxContainersLimitsThroughput() {
+        SimulationConfig config = new SimulationConfig.SimulationConfigBuilder()
+                .withMinContainers(0)
+                .withMaxContainers(2)
+                .withStartLatency(LatencyDistribution.fixed(5000))
+                .build();
+
+        SimulationReport report = new GridSimulator(config).run(burst(10, 0, 30000));
+
+        Assert.assertEquals(10, report.getSessionsCompleted());
+        Assert.assertTrue(report.getQueueWaitPercentile(95) > 4 * 30000);
+    }
+
+    @Test
+    public void requestsForOtherBrowsersAreNotServed() throws IOException {
+        ArrivalTrace trace = ArrivalTrace.parse(new StringReader(
+                "# offsetMillis,browserName,sessionMillis\n"
+                        + "0,chrome,10000\n"
+                        + "\n"
+                        + "1000,safari,10000\n"
+                        + "2000,firefox,10000,1280x720,America/Montreal\n"));
+
+        SimulationReport report = new GridSimulator(new SimulationConfig.SimulationConfigBuilder().build()).run(trace);
+
+        Assert.assertEquals(3, report.getRequests());
+        Assert.assertEquals(1, report.getRequestsNotServed());
+        Assert.assertEquals(2, report.getSessionsCompleted());
+    }
+
+    @Test
+    public void requestsExpireAfterTheWaitTimeout() {
+        SimulationConfig config = new SimulationConfig.SimulationConfigBuilder()
+                .withMinContainers(0)
+                .withMaxContainers(1)
+                .withStartLatency(LatencyDistribution.fixed(5000))
+                .withNewSessionWaitTimeout(60000)
+                .build();
+
+        SimulationReport report = new GridSimulator(config).run(burst(3, 0, 120000));
+
+        Assert.assertEquals(1, report.getSessionsCompleted());
+        Assert.assertEquals(2, report.getRequestsExpired());
+    }
+
+    private static ArrivalTrace burst(int requests, long atMillis, long sessionMillis) {
+        List<ArrivalTrace.Arrival> arrivals = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            arrivals.add(new ArrivalTrace.Arrival(atMillis, i % 2 == 0 ? "chrome" : "firefox", sessionMillis,
+                    null, null));
+        }
+        return new ArrivalTrace(arrivals);
+    }
+}
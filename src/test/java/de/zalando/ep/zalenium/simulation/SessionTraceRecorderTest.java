@@ -0,0 +1,85 @@
+package de.zalando.ep.zalenium.simulation;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.selenium.remote.BrowserType;
+
+import de.zalando.ep.zalenium.matcher.CanonicalCapabilities;
+
+public class SessionTraceRecorderTest {
+
+    @Test
+    public void sessionLifecycleIsRecordedAndTurnedIntoArrivals() throws IOException {
+        StringWriter trace = new StringWriter();
+        SimulatedClock clock = new SimulatedClock(1000);
+        SessionTraceRecorder recorder = new SessionTraceRecorder(trace, clock);
+        Map<String, Object> chrome = new ArrivalTrace.Arrival(0, BrowserType.CHROME, 0, "1280x720", null)
+                .toCapabilities();
+        Map<String, Object> firefox = new ArrivalTrace.Arrival(0, BrowserType.FIREFOX, 0, null, null)
+                .toCapabilities();
+
+        recorder.requestArrived(chrome);
+        clock.advanceTo(3000);
+        recorder.requestArrived(firefox);
+        recorder.sessionAssigned(chrome, "http://node:40000");
+        recorder.containerStarted("container-1");
+        clock.advanceTo(13000);
+        recorder.firstCommand(chrome);
+        recorder.sessionEnded(chrome);
+        // Requests that were not recorded when they arrived are ignored when reading the trace
+        recorder.sessionEnded(new HashMap<>());
+        recorder.stop();
+
+        long requestId = CanonicalCapabilities.of(chrome).getRequestId();
+        String[] lines = trace.toString().split(System.lineSeparator());
+        Assert.assertEquals(7, lines.length);
+        Assert.assertEquals("1000,REQUEST," + requestId + ",chrome,,ANY,1280x720,", lines[0]);
+        Assert.assertEquals("3000,ASSIGNED," + requestId + ",http://node:40000", lines[2]);
+        Assert.assertEquals("13000,SESSION_END," + requestId, lines[5]);
+
+        List<ArrivalTrace.Arrival> arrivals = ArrivalTrace.fromSessionTrace(new StringReader(trace.toString()))
+                .getArrivals();
+        Assert.assertEquals(2, arrivals.size());
+        Assert.assertEquals(0, arrivals.get(0).getOffsetMillis());
+        Assert.assertEquals(BrowserType.CHROME, arrivals.get(0).getBrowserName());
+        Assert.assertEquals(10000, arrivals.get(0).getSessionMillis());
+        Assert.assertEquals("1280x720", arrivals.get(0).getScreenResolution());
+        Assert.assertEquals(2000, arrivals.get(1).getOffsetMillis());
+        Assert.assertEquals(0, arrivals.get(1).getSessionMillis());
+    }
+
+    @Test
+    public void nothingIsRecordedWhenDisabled() {
+        SessionTraceRecorder recorder = new SessionTraceRecorder(null, Clock.systemUTC());
+
+        recorder.requestArrived(new HashMap<>());
+        recorder.containerStopped("container-1");
+        recorder.stop();
+
+        Assert.assertFalse(recorder.isEnabled());
+    }
+
+    @Test
+    public void recordedTraceIsReplayedAgainstTheHub() throws InterruptedException {
+        List<ArrivalTrace.Arrival> arrivals = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            arrivals.add(new ArrivalTrace.Arrival(i * 100, BrowserType.CHROME, 2000, null, null));
+        }
+
+        SimulationReport report = new TraceReplayer(2, 10, 60000).run(new ArrivalTrace(arrivals));
+
+        Assert.assertEquals(6, report.getSessionsStarted());
+        Assert.assertEquals(6, report.getSessionsCompleted());
+        // Two nodes for six sessions of two seconds, the last ones wait for two rounds
+        Assert.assertTrue(report.getQueueWaitPercentile(100) >= 3000);
+    }
+}